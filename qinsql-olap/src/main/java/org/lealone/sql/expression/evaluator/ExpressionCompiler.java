@@ -44,6 +44,8 @@ import org.lealone.sql.expression.function.JavaFunction;
 import org.lealone.sql.expression.function.TableFunction;
 import org.lealone.sql.expression.subquery.SubQuery;
 import org.lealone.sql.expression.visitor.VoidExpressionVisitor;
+import org.lealone.sql.vector.ConstantSet;
+import org.lealone.sql.vector.LikePattern;
 
 public class ExpressionCompiler extends VoidExpressionVisitor {
 
@@ -369,7 +371,8 @@ public class ExpressionCompiler extends VoidExpressionVisitor {
     public Void visitConditionInConstantSet(ConditionInConstantSet e) {
         importSet.add(ValueNull.class.getName());
         importSet.add(ValueBoolean.class.getName());
-        evaluator.setValueSet(e.getValueSet());
+        ConstantSet set = ConstantSet.create(e.getValueSet(), e.getLeft().getType());
+        evaluator.addConstantSet(set);
 
         StringBuilder indent = indent((level + 1) * 4);
 
@@ -382,13 +385,14 @@ public class ExpressionCompiler extends VoidExpressionVisitor {
                 .append(" == ValueNull.INSTANCE) {\r\n");
         buff.append("    ").append(indent).append("    ").append(retVar).append(" = ").append(retVarLeft)
                 .append(";\r\n");
-        buff.append("    ").append(indent).append("} else if (evaluator.getValueSet().contains(")
-                .append(retVarLeft).append(")) {\r\n");
+        buff.append("    ").append(indent).append("} else if (evaluator.getConstantSet(")
+                .append(evaluator.getConstantSetListSize() - 1).append(").contains(").append(retVarLeft)
+                .append(")) {\r\n");
         buff.append("    ").append(indent).append("    ").append(retVar)
                 .append(" = ValueBoolean.TRUE;\r\n");
         buff.append("    ").append(indent).append("} else {\r\n");
         buff.append("    ").append(indent).append("    ").append(retVar);
-        if (e.getValueSet().contains(ValueNull.INSTANCE)) {
+        if (set.hasNull()) {
             buff.append(" = ValueNull.INSTANCE;\r\n");
         } else {
             buff.append(" = ValueBoolean.FALSE;\r\n");
@@ -442,7 +446,33 @@ public class ExpressionCompiler extends VoidExpressionVisitor {
 
     @Override
     public Void visitCompareLike(CompareLike e) {
-        visitExpression(e);
+        LikePattern pattern = LikePattern.create(e, evaluator.getSession());
+        if (pattern == null) {
+            visitExpression(e);
+            return null;
+        }
+        importSet.add(ValueNull.class.getName());
+        importSet.add(ValueBoolean.class.getName());
+        evaluator.addLikePattern(pattern);
+
+        StringBuilder indent = indent((level + 1) * 4);
+
+        buff.append(indent).append("{\r\n");
+        String retVarLeft = "lret" + (level + 1);
+        buff.append(indent).append("    Value ").append(retVarLeft).append(";\r\n");
+        e.getLeft().accept(copy(level + 1, retVarLeft));
+
+        buff.append("    ").append(indent).append("if (").append(retVarLeft)
+                .append(" == ValueNull.INSTANCE) {\r\n");
+        buff.append("    ").append(indent).append("    ").append(retVar).append(" = ").append(retVarLeft)
+                .append(";\r\n");
+        buff.append("    ").append(indent).append("} else {\r\n");
+        buff.append("    ").append(indent).append("    ").append(retVar)
+                .append(" = ValueBoolean.get(evaluator.getLikePattern(")
+                .append(evaluator.getLikePatternListSize() - 1).append(").matches(").append(retVarLeft)
+                .append(".getString()));\r\n");
+        buff.append("    ").append(indent).append("}\r\n");
+        buff.append(indent).append("}").append("\r\n");
         return null;
     }
 
@@ -6,12 +6,13 @@
 package org.lealone.sql.expression.evaluator;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 
 import org.lealone.db.session.ServerSession;
 import org.lealone.db.value.Value;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.ExpressionColumn;
+import org.lealone.sql.vector.ConstantSet;
+import org.lealone.sql.vector.LikePattern;
 
 //默认先解释执行，一旦发现是热点就采用编译执行
 public class HotSpotEvaluator implements ExpressionEvaluator {
@@ -29,16 +30,10 @@ public class HotSpotEvaluator implements ExpressionEvaluator {
     private boolean async;
     private int expressionCompileThreshold;
 
-    // 用于支持动态编译ConditionInConstantSet表达式
-    private HashSet<Value> valueSet;
-
-    public HashSet<Value> getValueSet() {
-        return valueSet;
-    }
-
-    public void setValueSet(HashSet<Value> valueSet) {
-        this.valueSet = valueSet;
-    }
+    // 用于支持动态编译ConditionInConstantSet表达式，INT/LONG不需要再用Value去HashSet中查找
+    private final ArrayList<ConstantSet> constantSetList = new ArrayList<>();
+    // 用于支持动态编译CompareLike表达式
+    private final ArrayList<LikePattern> likePatternList = new ArrayList<>();
 
     public HotSpotEvaluator(ServerSession session, Expression expression) {
         this(session, expression, true);
@@ -92,6 +87,30 @@ public class HotSpotEvaluator implements ExpressionEvaluator {
         return valueList.size();
     }
 
+    public void addConstantSet(ConstantSet set) {
+        constantSetList.add(set);
+    }
+
+    public ConstantSet getConstantSet(int index) {
+        return constantSetList.get(index);
+    }
+
+    public int getConstantSetListSize() {
+        return constantSetList.size();
+    }
+
+    public void addLikePattern(LikePattern pattern) {
+        likePatternList.add(pattern);
+    }
+
+    public LikePattern getLikePattern(int index) {
+        return likePatternList.get(index);
+    }
+
+    public int getLikePatternListSize() {
+        return likePatternList.size();
+    }
+
     @Override
     public boolean getBooleanValue() {
         if (!isJit && expressionCompileThreshold > 0 && count++ > expressionCompileThreshold) {
@@ -0,0 +1,44 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.expression.visitor;
+
+import java.util.LinkedHashSet;
+
+import org.lealone.db.table.Column;
+import org.lealone.sql.expression.Expression;
+import org.lealone.sql.expression.ExpressionColumn;
+import org.lealone.sql.expression.aggregate.Aggregate;
+import org.lealone.sql.optimizer.TableFilter;
+
+// 收集表达式中引用到的tableFilter的列，向量化算子用它在读出一批数据后一次性装载所有需要的列
+public class CollectColumnsVisitor extends VoidExpressionVisitor {
+
+    private final TableFilter tableFilter;
+    private final LinkedHashSet<Column> columns = new LinkedHashSet<>();
+
+    public CollectColumnsVisitor(TableFilter tableFilter) {
+        this.tableFilter = tableFilter;
+    }
+
+    public Column[] getColumns() {
+        return columns.toArray(new Column[0]);
+    }
+
+    @Override
+    public Void visitExpressionColumn(ExpressionColumn e) {
+        if (e.getTableFilter() == tableFilter)
+            columns.add(e.getColumn());
+        return null;
+    }
+
+    @Override
+    public Void visitAggregate(Aggregate e) {
+        Expression on = e.getOn();
+        if (on != null)
+            on.accept(this);
+        return null;
+    }
+}
@@ -6,16 +6,18 @@
 package org.lealone.sql.expression.visitor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 import org.lealone.common.exceptions.DbException;
-import org.lealone.common.util.Utils;
 import org.lealone.db.Mode;
 import org.lealone.db.api.ErrorCode;
 import org.lealone.db.result.Row;
 import org.lealone.db.session.ServerSession;
 import org.lealone.db.table.Column;
 import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
 import org.lealone.sql.expression.Alias;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.ExpressionColumn;
@@ -46,40 +48,141 @@ import org.lealone.sql.optimizer.TableFilter;
 import org.lealone.sql.query.Select;
 import org.lealone.sql.query.SelectUnion;
 import org.lealone.sql.vector.BooleanVector;
+import org.lealone.sql.vector.ConstantSet;
 import org.lealone.sql.vector.DefaultValueVector;
-import org.lealone.sql.vector.DefaultValueVectorFactory;
+import org.lealone.sql.vector.LikePattern;
+import org.lealone.sql.vector.SelectionVector;
 import org.lealone.sql.vector.SingleValueVector;
 import org.lealone.sql.vector.ValueVector;
 import org.lealone.sql.vector.ValueVectorArray;
+import org.lealone.sql.vector.ValueVectorFactories;
 import org.lealone.sql.vector.ValueVectorFactory;
+import org.lealone.sql.vector.ValueVectorPool;
+import org.lealone.sql.vector.function.VectorFunction;
+import org.lealone.sql.vector.function.VectorFunctions;
 
 public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
 
+    // 选中的行少于这个比例时才把列向量压缩成只包含选中的行，否则各个向量保持原样，按selection中的位置读取
+    private static final double COMPACT_THRESHOLD = 0.25;
+    private static final int[] NO_ROWS = new int[0];
+
     private final TableFilter tableFilter;
     private final ServerSession session;
-    private final ValueVector bvv;
     private final ArrayList<Row> batch;
     private final ValueVectorFactory valueVectorFactory;
-    private final HashMap<Column, ValueVector> vvMap = new HashMap<>();
+    private final HashMap<Column, ValueVector> columnVectors; // 没有压缩过的列向量
+    private final ValueVectorPool valueVectorPool; // 为null时每一批都重新创建列向量
+    private HashMap<Column, ValueVector> compactVectors;
+    private HashMap<Column, ValueVector> vvMap;
+    private SelectionVector selection; // 为null时表示所有行都被选中
+    private boolean compact;
+    private long[] unselected;
+    // 短路求值时用的子visitor，compactChild生成压缩的向量，alignedChild生成跟这一批数据对齐的向量，
+    // 第一次用到时创建，之后换一组选中的行继续用
+    private GetValueVectorVisitor compactChild;
+    private GetValueVectorVisitor alignedChild;
+    // 只在方法内部使用的临时数组，批与批之间重用
+    private int[] rowBuffer = new int[0];
+    private int[] allRows = new int[0];
+    private long[] maskBuffer = new long[0];
+    // IN (...)对应的ConstantSet和LIKE对应的LikePattern，可以由调用者传入，这样多个批次之间只需要构建一次
+    private IdentityHashMap<Expression, Object> compiledConditions = new IdentityHashMap<>();
 
     public GetValueVectorVisitor(TableFilter tableFilter, ServerSession session, ValueVector bvv,
             ArrayList<Row> batch) {
+        this(tableFilter, session, bvv, batch, null);
+    }
+
+    // 传入valueVectorPool时列向量在批与批之间重用，配合reset可以让同一个visitor处理所有批次
+    public GetValueVectorVisitor(TableFilter tableFilter, ServerSession session, ValueVector bvv,
+            ArrayList<Row> batch, ValueVectorPool valueVectorPool) {
+        this(tableFilter, session, batch, createValueVectorFactory(session), new HashMap<>(),
+                valueVectorPool, bvv == null ? null : SelectionVector.valueOf(bvv), true);
+    }
+
+    // 短路求值时用，跟parent共享已经生成的列向量，
+    // compactable为false时生成的向量跟这一批数据的行一一对应，方便跟其他分支的结果合并
+    private GetValueVectorVisitor(GetValueVectorVisitor parent, SelectionVector selection,
+            boolean compactable) {
+        this(parent.tableFilter, parent.session, parent.batch, parent.valueVectorFactory,
+                parent.columnVectors, parent.valueVectorPool, selection, compactable);
+        this.compiledConditions = parent.compiledConditions;
+    }
+
+    private GetValueVectorVisitor(TableFilter tableFilter, ServerSession session, ArrayList<Row> batch,
+            ValueVectorFactory valueVectorFactory, HashMap<Column, ValueVector> columnVectors,
+            ValueVectorPool valueVectorPool, SelectionVector selection, boolean compactable) {
         this.tableFilter = tableFilter;
         this.session = session;
-        this.bvv = bvv;
         this.batch = batch;
-        this.valueVectorFactory = createValueVectorFactory(session);
+        this.valueVectorFactory = valueVectorFactory;
+        this.columnVectors = columnVectors;
+        this.valueVectorPool = valueVectorPool;
+        init(selection, compactable);
     }
 
-    private static ValueVectorFactory createValueVectorFactory(ServerSession session) {
-        String valueVectorFactoryName = session.getValueVectorFactoryName();
-        if (valueVectorFactoryName == null) {
-            return DefaultValueVectorFactory.INSTANCE;
+    private void init(SelectionVector selection, boolean compactable) {
+        if (selection != null && selection.trueCount() == batch.size())
+            selection = null; // 全部选中了，跟没有条件一样
+        this.selection = selection;
+        this.compact = compactable && selection != null && selection.getSelectivity() < COMPACT_THRESHOLD;
+        if (compact) {
+            if (compactVectors == null)
+                compactVectors = new HashMap<>();
+            else
+                compactVectors.clear();
+            vvMap = compactVectors;
         } else {
-            return Utils.newInstance(valueVectorFactoryName);
+            vvMap = columnVectors;
         }
     }
 
+    /**
+     * batch装入下一批数据后调用，清掉上一批的列向量，这样不用每一批都创建新的visitor。
+     */
+    public void reset(ValueVector bvv) {
+        columnVectors.clear();
+        unselected = null;
+        init(bvv == null ? null : SelectionVector.valueOf(bvv), true);
+    }
+
+    /**
+     * 同一批数据换成另一组选中的行，已经生成的列向量继续使用，不会重新构建。
+     */
+    public void setSelection(ValueVector bvv) {
+        unselected = null;
+        init(bvv == null ? null : SelectionVector.valueOf(bvv), true);
+    }
+
+    /**
+     * 返回读取向量时要使用的位置，为null时表示按0到getRowCount()-1的顺序读取。
+     */
+    public SelectionVector getSelection() {
+        return compact ? null : selection;
+    }
+
+    public void setCompiledConditions(IdentityHashMap<Expression, Object> compiledConditions) {
+        this.compiledConditions = compiledConditions;
+    }
+
+    public ValueVectorFactory getValueVectorFactory() {
+        return valueVectorFactory;
+    }
+
+    public int getRowCount() {
+        return selection == null ? batch.size() : selection.trueCount();
+    }
+
+    // 返回的向量的长度，压缩时只包含选中的行
+    private int getVectorSize() {
+        return compact ? selection.trueCount() : batch.size();
+    }
+
+    private static ValueVectorFactory createValueVectorFactory(ServerSession session) {
+        return ValueVectorFactories.getFactory(session.getValueVectorFactoryName());
+    }
+
     private ValueVector getSingleValueVector(Expression e) {
         return new SingleValueVector(e.getValue(session));
     }
@@ -89,13 +192,23 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
         // 缓存ExpressionColumn对应的ValueVector，避免重复构建
         ValueVector vv = vvMap.get(e.getColumn());
         if (vv == null) {
-            vv = valueVectorFactory.createValueVector(batch, e.getColumn());
+            vv = columnVectors.get(e.getColumn());
             if (vv == null) {
-                throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, e.getSQL());
+                if (valueVectorPool == null)
+                    vv = valueVectorFactory.createValueVector(batch, e.getColumn());
+                else
+                    vv = valueVectorPool.getValueVector(valueVectorFactory, batch, e.getColumn());
+                if (vv == null) {
+                    throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, e.getSQL());
+                }
+                columnVectors.put(e.getColumn(), vv);
+            }
+            if (compact) { // 每个列只压缩一次
+                vv = vv.filter(selection);
+                vvMap.put(e.getColumn(), vv);
             }
-            vvMap.put(e.getColumn(), vv);
         }
-        return vv.filter(bvv);
+        return vv;
     }
 
     @Override
@@ -141,6 +254,13 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
                 r = r.convertTo(e.getDataType());
             }
         }
+        if (e.getOpType() != Operation.CONCAT) {
+            // 未选中的行当成NULL，这样它们不会让除法和溢出检查报错
+            if (r == null || r instanceof SingleValueVector)
+                l = nullIfNotSelected(l);
+            else
+                r = nullIfNotSelected(r);
+        }
         switch (e.getOpType()) {
         case Operation.NEGATE:
             return l.negate();
@@ -163,6 +283,24 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
         }
     }
 
+    // 不压缩时未选中的行也会参与计算，把这些行当成NULL，避免报除零或溢出错误
+    private ValueVector nullIfNotSelected(ValueVector vv) {
+        if (selection == null || compact || vv instanceof SingleValueVector)
+            return vv;
+        if (unselected == null) {
+            // 生成的向量会直接引用这个位图，所以每一批都要重新分配
+            unselected = BooleanVector.allTrue(batch.size()).getBits();
+            for (int i : selection.getPositions()) {
+                unselected[i >>> 6] &= ~(1L << i);
+            }
+        }
+        ValueVector copy = vv.filter(null);
+        if (copy == vv)
+            return vv;
+        copy.setNulls(ValueVector.orNulls(vv.getNulls(), unselected));
+        return copy;
+    }
+
     @Override
     public ValueVector visitParameter(Parameter e) {
         return getSingleValueVector(e);
@@ -200,7 +338,19 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
 
     @Override
     public ValueVector visitCompareLike(CompareLike e) {
-        return visitExpression(e);
+        ValueVector l = e.getLeft().accept(this);
+        if (l instanceof SingleValueVector)
+            return toBooleanVector(getSingleValueVector(e));
+        Object pattern = compiledConditions.get(e);
+        if (pattern == null) {
+            pattern = LikePattern.create(e, session);
+            if (pattern == null)
+                pattern = e; // 不能预先编译，用e自身做标记，下次不用再尝试了
+            compiledConditions.put(e, pattern);
+        }
+        if (pattern == e)
+            return visitExpression(e);
+        return l.like((LikePattern) pattern);
     }
 
     @Override
@@ -222,12 +372,163 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
             return result;
         }
         ValueVector r = right.accept(this);
-        return l.compare(r, e.getCompareType());
+        int compareType = e.getCompareType();
+        if (l instanceof ValueVectorArray || r instanceof ValueVectorArray)
+            return visitExpression(e);
+        if (l instanceof SingleValueVector) {
+            if (r instanceof SingleValueVector) // 两边都是常量
+                return toBooleanVector(getSingleValueVector(e));
+            // 把常量换到右边，例如10 > x变成x < 10，这样只需要实现向量跟常量比较的情况
+            ValueVector t = l;
+            l = r;
+            r = t;
+            compareType = swapCompareType(compareType);
+        }
+        if (r.getValueType() == Value.UNKNOWN && !(r instanceof SingleValueVector)) {
+            // 类型未知的向量(逐行计算得到的DefaultValueVector)放到左边，它可以跟任意类型的向量比较
+            ValueVector t = l;
+            l = r;
+            r = t;
+            compareType = swapCompareType(compareType);
+        }
+        int lt = l.getValueType();
+        int rt = r.getValueType();
+        if (r instanceof SingleValueVector) {
+            // 常量的类型更高时(例如INT列 < 10.5)，要把列转成常量的类型再比较，否则常量会被截断
+            rt = ((SingleValueVector) r).getValue().getType();
+            if (isNumeric(lt) && isNumeric(rt) && Value.getHigherOrder(lt, rt) != lt)
+                l = l.convertTo(Value.getHigherOrder(lt, rt));
+        } else if (lt != rt && lt != Value.UNKNOWN && rt != Value.UNKNOWN) {
+            int t = Value.getHigherOrder(lt, rt);
+            l = l.convertTo(t);
+            r = r.convertTo(t);
+            if (l.getValueType() != r.getValueType()) // 无法转换成同一种类型的向量
+                return visitExpression(e);
+        }
+        ValueVector result = l.compare(r, compareType);
+        return result != null ? result : visitExpression(e);
+    }
+
+    private static int swapCompareType(int compareType) {
+        switch (compareType) {
+        case Comparison.BIGGER_EQUAL:
+            return Comparison.SMALLER_EQUAL;
+        case Comparison.BIGGER:
+            return Comparison.SMALLER;
+        case Comparison.SMALLER_EQUAL:
+            return Comparison.BIGGER_EQUAL;
+        case Comparison.SMALLER:
+            return Comparison.BIGGER;
+        default:
+            return compareType;
+        }
+    }
+
+    private static boolean isNumeric(int type) {
+        return type >= Value.BYTE && type <= Value.FLOAT;
     }
 
     @Override
     public ValueVector visitConditionAndOr(ConditionAndOr e) {
-        return visitExpression(e);
+        boolean and = e.getAndOrType() == ConditionAndOr.AND;
+        BooleanVector l = toBooleanVector(e.getLeft().accept(this));
+        // AND只需要在左边不是false的行上计算右边，OR只需要在左边不是true的行上计算右边
+        int[] positions = getSelection() == null ? null : selection.getPositions();
+        int n = positions == null ? l.size() : positions.length;
+        int[] rows = getRowBuffer(n); // 只用来收集行号，传给右边之前会复制出准确长度的数组
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            int i = positions == null ? k : positions[k];
+            if (l.isNull(i) || l.isTrue(i) == and)
+                rows[count++] = i;
+        }
+        if (count == 0) // 结果已经由左边确定了
+            return l;
+        BooleanVector r;
+        if (count == n)
+            r = toBooleanVector(e.getRight().accept(this));
+        else
+            r = evaluate(e.getRight(), Arrays.copyOf(rows, count), l.size(), and);
+        return and ? l.and(r) : l.or(r);
+    }
+
+    // 只在rows这些行上计算条件，其他行的结果填成fill，这样跟左边做AND/OR时不会影响结果
+    private BooleanVector evaluate(Expression e, int[] rows, int size, boolean fill) {
+        int[] batchRows = toBatchRows(rows);
+        GetValueVectorVisitor visitor = getChild(new SelectionVector(batchRows, batch.size()), true);
+        BooleanVector bv = visitor.toBooleanVector(e.accept(visitor));
+        long[] bits = fill ? BooleanVector.allTrue(size).getBits() : new long[BooleanVector.wordCount(size)];
+        long[] nulls = null;
+        for (int j = 0; j < rows.length; j++) {
+            int i = visitor.compact ? j : batchRows[j];
+            int p = rows[j];
+            if (bv.isTrue(i)) {
+                bits[p >>> 6] |= 1L << p;
+            } else {
+                bits[p >>> 6] &= ~(1L << p);
+                if (bv.isNull(i))
+                    nulls = ValueVector.setNull(nulls, p, size);
+            }
+        }
+        return new BooleanVector(bits, size, nulls);
+    }
+
+    // 向量中的位置转成在这一批数据中的位置，只有压缩过的向量才需要转换
+    private int[] toBatchRows(int[] rows) {
+        if (!compact)
+            return rows;
+        int[] positions = selection.getPositions();
+        int[] batchRows = new int[rows.length];
+        for (int j = 0; j < rows.length; j++) {
+            batchRows[j] = positions[rows[j]];
+        }
+        return batchRows;
+    }
+
+    private GetValueVectorVisitor getChild(SelectionVector selection, boolean compactable) {
+        GetValueVectorVisitor child = compactable ? compactChild : alignedChild;
+        if (child == null) {
+            child = new GetValueVectorVisitor(this, selection, compactable);
+            if (compactable)
+                compactChild = child;
+            else
+                alignedChild = child;
+        } else {
+            // 子visitor跟parent共享列向量，只需要换成这一次选中的行
+            child.compiledConditions = compiledConditions;
+            child.unselected = null;
+            child.init(selection, compactable);
+        }
+        return child;
+    }
+
+    private int[] getRowBuffer(int size) {
+        if (rowBuffer.length < size)
+            rowBuffer = new int[Math.max(size, batch.size())];
+        return rowBuffer;
+    }
+
+    // 条件的结果也可能是逐行计算得到的DefaultValueVector或者常量，统一转成BooleanVector
+    private BooleanVector toBooleanVector(ValueVector vv) {
+        if (vv instanceof BooleanVector)
+            return (BooleanVector) vv;
+        int size = getVectorSize();
+        long[] bits = new long[BooleanVector.wordCount(size)];
+        if (vv instanceof SingleValueVector) {
+            Value v = ((SingleValueVector) vv).getValue();
+            if (v == ValueNull.INSTANCE)
+                return new BooleanVector(bits, size, ValueVector.allNulls(size));
+            return v.getBoolean() ? BooleanVector.allTrue(size) : new BooleanVector(bits, size);
+        }
+        long[] nulls = null;
+        for (int i = 0; i < size; i++) {
+            Value v = vv.getValue(i);
+            if (v == ValueNull.INSTANCE)
+                nulls = ValueVector.setNull(nulls, i, size);
+            else if (v.getBoolean())
+                bits[i >>> 6] |= 1L << i;
+        }
+        return new BooleanVector(bits, size, nulls);
     }
 
     @Override
@@ -237,12 +538,35 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
 
     @Override
     public ValueVector visitConditionIn(ConditionIn e) {
-        return visitExpression(e);
+        ValueVector l = e.getLeft().accept(this);
+        if (l instanceof SingleValueVector)
+            return toBooleanVector(getSingleValueVector(e));
+        ConstantSet set = (ConstantSet) compiledConditions.get(e);
+        if (set == null) {
+            // 列表中只有常量时才能转成ConstantSet，否则只能逐行计算
+            ArrayList<Value> values = new ArrayList<>();
+            for (Expression v : e.getValueList()) {
+                if (!v.isConstant())
+                    return visitExpression(e);
+                values.add(v.getValue(session).convertTo(e.getLeft().getType()));
+            }
+            set = ConstantSet.create(values, e.getLeft().getType());
+            compiledConditions.put(e, set);
+        }
+        return l.in(set);
     }
 
     @Override
     public ValueVector visitConditionInConstantSet(ConditionInConstantSet e) {
-        return visitExpression(e);
+        ValueVector l = e.getLeft().accept(this);
+        if (l instanceof SingleValueVector)
+            return toBooleanVector(getSingleValueVector(e));
+        ConstantSet set = (ConstantSet) compiledConditions.get(e);
+        if (set == null) {
+            set = ConstantSet.create(e.getValueSet(), e.getLeft().getType());
+            compiledConditions.put(e, set);
+        }
+        return l.in(set);
     }
 
     @Override
@@ -252,12 +576,206 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
 
     @Override
     public ValueVector visitConditionNot(ConditionNot e) {
-        return e.getCondition().accept(this).negate();
+        return toBooleanVector(e.getCondition().accept(this)).not();
     }
 
     @Override
     public ValueVector visitFunction(Function e) {
-        return visitExpression(e);
+        switch (e.getFunctionType()) {
+        case Function.CASE:
+        case Function.CASEWHEN:
+        case Function.COALESCE:
+        case Function.IFNULL:
+        case Function.NULLIF: {
+            ValueVector vv = visitConditionalFunction(e);
+            return vv == null ? visitExpression(e) : vv;
+        }
+        }
+        VectorFunction f = VectorFunctions.get(e.getFunctionType());
+        if (f == null)
+            return visitExpression(e);
+        Expression[] args = e.getArgs();
+        ValueVector[] a = new ValueVector[args.length];
+        boolean allConstant = true;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null)
+                return visitExpression(e);
+            a[i] = args[i].accept(this);
+            if (!(a[i] instanceof SingleValueVector))
+                allConstant = false;
+        }
+        if (allConstant)
+            return getSingleValueVector(e);
+        // 跟除法一样，未选中的行不能让ABS和MOD报错
+        switch (e.getFunctionType()) {
+        case Function.ABS:
+            a[0] = nullIfNotSelected(a[0]);
+            break;
+        case Function.MOD:
+            a[1] = nullIfNotSelected(a[1]);
+            break;
+        }
+        ValueVector vv = f.call(e, a);
+        return vv == null ? visitExpression(e) : vv;
+    }
+
+    // 每个WHEN条件只在还没有确定结果的行上计算，得到的mask决定THEN分支在哪些行上计算，
+    // 最后用blend把各个分支的结果合并起来，像CASE WHEN x <> 0 THEN 1 / x END这样的表达式在x为0的行上不会报错。
+    // 有分支不能按结果类型向量化时返回null，由调用者逐行计算
+    private ValueVector visitConditionalFunction(Function e) {
+        Expression[] args = e.getArgs();
+        int type = e.getType();
+        int size = getVectorSize();
+        int[] rows = getVectorRows(); // 还没有确定结果的行
+        int total = rows.length;
+        ValueVector result = null;
+        switch (e.getFunctionType()) {
+        case Function.COALESCE:
+        case Function.IFNULL: {
+            // 上一个参数是NULL的行才需要计算下一个参数
+            for (int a = 0; a < args.length && rows.length > 0; a++) {
+                ValueVector vv = evaluateBranch(args[a], rows, total, type);
+                if (vv == null)
+                    return null;
+                result = blend(result, vv, rows, size, type);
+                rows = selectNulls(vv, rows);
+            }
+            return result == null ? new SingleValueVector(ValueNull.INSTANCE) : result;
+        }
+        case Function.NULLIF: {
+            result = evaluateBranch(args[0], rows, total, type);
+            if (result == null)
+                return null;
+            Expression cond = getEqualCondition(e, args[0], args[1]);
+            int[] equalRows = select(toBooleanVector(cond.accept(this)), rows, true);
+            if (equalRows.length > 0)
+                result = blend(result, new SingleValueVector(ValueNull.INSTANCE), equalRows, size, type);
+            return result;
+        }
+        }
+        // CASE的参数: (operand, when, then, ..., [else])，operand为null时是searched CASE
+        // CASEWHEN的参数: (when, then, else)
+        boolean caseWhen = e.getFunctionType() == Function.CASEWHEN;
+        Expression operand = caseWhen ? null : args[0];
+        int first = caseWhen ? 0 : 1;
+        int last = caseWhen ? 1 : args.length - 1;
+        Expression elseExpr = caseWhen ? args[2] : (args.length % 2 == 0 ? args[args.length - 1] : null);
+        for (int i = first; i < last && rows.length > 0; i += 2) {
+            Expression cond = operand == null ? args[i] : getEqualCondition(args[i], operand, args[i]);
+            BooleanVector mask;
+            if (rows.length == total)
+                mask = toBooleanVector(cond.accept(this));
+            else
+                mask = evaluate(cond, rows, size, false);
+            int[] thenRows = select(mask, rows, true);
+            if (thenRows.length > 0) {
+                ValueVector vv = evaluateBranch(args[i + 1], thenRows, total, type);
+                if (vv == null)
+                    return null;
+                result = blend(result, vv, thenRows, size, type);
+                rows = select(mask, rows, false);
+            }
+        }
+        if (rows.length > 0) {
+            ValueVector vv;
+            if (elseExpr == null) {
+                vv = new SingleValueVector(ValueNull.INSTANCE);
+            } else {
+                vv = evaluateBranch(elseExpr, rows, total, type);
+                if (vv == null)
+                    return null;
+            }
+            result = blend(result, vv, rows, size, type);
+        }
+        return result == null ? new SingleValueVector(ValueNull.INSTANCE) : result;
+    }
+
+    // 当前visitor生成的向量中被选中的行
+    private int[] getVectorRows() {
+        SelectionVector selection = getSelection();
+        if (selection != null)
+            return selection.getPositions();
+        int size = getVectorSize();
+        if (allRows.length != size) { // 只在批的大小变了时才重新分配，调用者不会修改它
+            allRows = new int[size];
+            for (int i = 0; i < size; i++) {
+                allRows[i] = i;
+            }
+        }
+        return allRows;
+    }
+
+    // 从rows中选出mask为true(或者不为true)的行，NULL当成不为true
+    private int[] select(ValueVector mask, int[] rows, boolean isTrue) {
+        int[] a = getRowBuffer(rows.length);
+        int count = 0;
+        for (int i : rows) {
+            if (mask.isTrue(i) == isTrue)
+                a[count++] = i;
+        }
+        return count == rows.length ? rows : Arrays.copyOf(a, count);
+    }
+
+    private int[] selectNulls(ValueVector vv, int[] rows) {
+        if (vv instanceof SingleValueVector)
+            return ((SingleValueVector) vv).getValue() == ValueNull.INSTANCE ? rows : NO_ROWS;
+        if (!vv.hasNulls())
+            return NO_ROWS;
+        int[] a = getRowBuffer(rows.length);
+        int count = 0;
+        for (int i : rows) {
+            if (vv.isNull(i))
+                a[count++] = i;
+        }
+        return Arrays.copyOf(a, count);
+    }
+
+    // 简单CASE和NULLIF转成等值比较，复用visitComparison对各种类型的处理，
+    // 跟row模式一样要经过optimize，这样常量会先转成另一边的类型
+    private Expression getEqualCondition(Expression key, Expression left, Expression right) {
+        Expression cond = (Expression) compiledConditions.get(key);
+        if (cond == null) {
+            cond = new Comparison(session, Comparison.EQUAL, left, right).optimize(session);
+            compiledConditions.put(key, cond);
+        }
+        return cond;
+    }
+
+    // 只在rows这些行上计算分支，返回的向量跟当前visitor生成的向量对齐，其他行的值没有意义
+    private ValueVector evaluateBranch(Expression e, int[] rows, int total, int type) {
+        ValueVector vv;
+        if (rows.length == total) {
+            vv = e.accept(this);
+        } else {
+            GetValueVectorVisitor visitor = getChild(new SelectionVector(toBatchRows(rows), batch.size()),
+                    false);
+            vv = e.accept(visitor);
+            if (compact && !(vv instanceof SingleValueVector))
+                vv = vv.filter(selection);
+        }
+        vv = vv.convertTo(type);
+        if (vv instanceof SingleValueVector || vv.getValueType() == type)
+            return vv;
+        return null;
+    }
+
+    private ValueVector blend(ValueVector result, ValueVector vv, int[] rows, int size, int type) {
+        if (result == null) {
+            // 第一个分支，其他行会被后面的分支覆盖
+            if (vv instanceof SingleValueVector)
+                return ((SingleValueVector) vv).expand(type, size);
+            return vv;
+        }
+        // blend只读取mask，不会保留它，所以mask的位图可以重用
+        int words = BooleanVector.wordCount(size);
+        if (maskBuffer.length != words)
+            maskBuffer = new long[words];
+        long[] bits = maskBuffer;
+        Arrays.fill(bits, 0);
+        for (int i : rows) {
+            bits[i >>> 6] |= 1L << i;
+        }
+        return result.blend(vv, new BooleanVector(bits, size));
     }
 
     @Override
@@ -285,16 +803,26 @@ public class GetValueVectorVisitor extends ExpressionVisitorBase<ValueVector> {
         Row old = tableFilter.get();
         try {
             int size = batch.size();
-            Value[] values = new Value[size];
-            for (int i = 0; i < size; i++) {
-                tableFilter.set(batch.get(i));
-                values[i] = e.getValue(session);
-            }
-            ValueVector vv = new DefaultValueVector(values);
-            if (bvv != null) {
-                vv = vv.filter(bvv);
+            Value[] values;
+            if (selection == null) {
+                values = new Value[size];
+                for (int i = 0; i < size; i++) {
+                    tableFilter.set(batch.get(i));
+                    values[i] = e.getValue(session);
+                }
+            } else {
+                // 只计算选中的行，压缩时直接生成压缩后的向量，否则未选中的行都是NULL
+                int[] positions = selection.getPositions();
+                values = new Value[compact ? positions.length : size];
+                if (!compact)
+                    Arrays.fill(values, ValueNull.INSTANCE);
+                for (int j = 0; j < positions.length; j++) {
+                    int i = positions[j];
+                    tableFilter.set(batch.get(i));
+                    values[compact ? j : i] = e.getValue(session);
+                }
             }
-            return vv;
+            return new DefaultValueVector(values);
         } finally {
             tableFilter.set(old);
         }
@@ -5,13 +5,18 @@
  */
 package org.lealone.sql.expression.visitor;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import org.lealone.db.result.Row;
 import org.lealone.db.session.ServerSession;
 import org.lealone.db.util.ValueHashMap;
 import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDecimal;
+import org.lealone.db.value.ValueLong;
 import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.ExpressionColumn;
 import org.lealone.sql.expression.aggregate.ACount.AggregateDataCount;
 import org.lealone.sql.expression.aggregate.ACountAll.AggregateDataCountAll;
@@ -22,19 +27,43 @@ import org.lealone.sql.expression.aggregate.AggregateData;
 import org.lealone.sql.expression.aggregate.BuiltInAggregate;
 import org.lealone.sql.expression.aggregate.JavaAggregate;
 import org.lealone.sql.optimizer.TableFilter;
+import org.lealone.sql.vector.DecimalVector;
 import org.lealone.sql.vector.ValueVector;
+import org.lealone.sql.vector.ValueVectorPool;
 
 public class UpdateVectorizedAggregateVisitor extends VoidExpressionVisitor {
 
     private final ServerSession session;
-    private final ValueVector bvv;
     private final GetValueVectorVisitor getValueVectorVisitor;
+    private ValueVector bvv;
 
     public UpdateVectorizedAggregateVisitor(TableFilter tableFilter, ServerSession session,
             ValueVector bvv, ArrayList<Row> batch) {
+        this(tableFilter, session, bvv, batch, null);
+    }
+
+    public UpdateVectorizedAggregateVisitor(TableFilter tableFilter, ServerSession session,
+            ValueVector bvv, ArrayList<Row> batch, ValueVectorPool valueVectorPool) {
         this.session = session;
         this.bvv = bvv;
-        this.getValueVectorVisitor = new GetValueVectorVisitor(tableFilter, session, bvv, batch);
+        this.getValueVectorVisitor = new GetValueVectorVisitor(tableFilter, session, bvv, batch,
+                valueVectorPool);
+    }
+
+    public void setCompiledConditions(IdentityHashMap<Expression, Object> compiledConditions) {
+        getValueVectorVisitor.setCompiledConditions(compiledConditions);
+    }
+
+    // 跟GetValueVectorVisitor.reset一样，batch装入下一批数据后调用
+    public void reset(ValueVector bvv) {
+        this.bvv = bvv;
+        getValueVectorVisitor.reset(bvv);
+    }
+
+    // 跟GetValueVectorVisitor.setSelection一样，同一批数据换成另一组选中的行
+    public void setSelection(ValueVector bvv) {
+        this.bvv = bvv;
+        getValueVectorVisitor.setSelection(bvv);
     }
 
     @Override
@@ -80,9 +109,14 @@ public class UpdateVectorizedAggregateVisitor extends VoidExpressionVisitor {
         return null;
     }
 
+    // vv可能已经按bvv压缩过了，所以下面调用vv的方法时传入的是getSelection()而不是bvv
+    private ValueVector getSelection() {
+        return getValueVectorVisitor.getSelection();
+    }
+
     private void updateVectorizedAggregate(ServerSession session, ValueVector bvv, ValueVector vv,
             AggregateData data) {
-        for (Value v : vv.getValues(bvv)) {
+        for (Value v : vv.getValues(getSelection())) {
             data.add(session, v);
         }
     }
@@ -96,10 +130,8 @@ public class UpdateVectorizedAggregateVisitor extends VoidExpressionVisitor {
     private void updateVectorizedCount(ServerSession session, ValueVector bvv, ValueVector vv,
             AggregateDataCount a) {
         long count = a.getCount();
-        if (bvv == null)
-            count += vv.size();
-        else
-            count += bvv.trueCount();
+        count += getValueVectorVisitor.getRowCount();
+        count -= vv.nullCount(getSelection()); // 不统计NULL
         a.setCount(count);
         if (a.isDistinct()) {
             ValueHashMap<AggregateDataCount> distinctValues = a.getDistinctValues();
@@ -107,8 +139,10 @@ public class UpdateVectorizedAggregateVisitor extends VoidExpressionVisitor {
                 distinctValues = ValueHashMap.newInstance();
                 a.setDistinctValues(distinctValues);
             }
-            for (Value v : vv.getValues(bvv))
-                distinctValues.put(v, a);
+            for (Value v : vv.getValues(getSelection())) {
+                if (v != ValueNull.INSTANCE)
+                    distinctValues.put(v, a);
+            }
         }
     }
 
@@ -122,13 +156,25 @@ public class UpdateVectorizedAggregateVisitor extends VoidExpressionVisitor {
         a.setCount(count);
     }
 
+    // AVG(LONG)逐行计算时用DECIMAL累加，这里先用long累加，溢出时再转成DECIMAL
+    private static Value addAvg(Value value, Value sum) {
+        if (value.getType() == Value.LONG && sum.getType() == Value.LONG) {
+            long x = value.getLong();
+            long y = sum.getLong();
+            long r = x + y;
+            if (((x ^ r) & (y ^ r)) >= 0)
+                return ValueLong.get(r);
+            return ValueDecimal.get(BigDecimal.valueOf(x).add(BigDecimal.valueOf(y)));
+        }
+        int type = Value.getHigherOrder(value.getType(), sum.getType());
+        return value.convertTo(type).add(sum.convertTo(type));
+    }
+
     private void updateVectorizedDefault(ServerSession session, ValueVector bvv, ValueVector vv,
             AggregateDataDefault a) {
         long count = a.getCount();
-        if (bvv == null)
-            count += vv.size();
-        else
-            count += bvv.trueCount();
+        count += getValueVectorVisitor.getRowCount();
+        count -= vv.nullCount(getSelection()); // AVG的count不包含NULL
         a.setCount(count);
         if (a.isDistinct()) {
             ValueHashMap<AggregateDataDefault> distinctValues = a.getDistinctValues();
@@ -136,63 +182,69 @@ public class UpdateVectorizedAggregateVisitor extends VoidExpressionVisitor {
                 distinctValues = ValueHashMap.newInstance();
                 a.setDistinctValues(distinctValues);
             }
-            for (Value v0 : vv.getValues(bvv))
-                distinctValues.put(v0, a);
+            for (Value v0 : vv.getValues(getSelection())) {
+                if (v0 != ValueNull.INSTANCE)
+                    distinctValues.put(v0, a);
+            }
             return;
         }
-        Value value = a.getValue();
-        int dataType = a.getDataType();
+        // 启用Jdk16ValueVectorFactory时SUM/MIN/MAX走SIMD的带mask的归约
+        vv = getValueVectorVisitor.getValueVectorFactory().wrapValueVector(vv);
         switch (a.getAType()) {
         case Aggregate.SUM:
-            if (value == null) {
-                value = vv.sum(bvv);
-            } else {
-                value = value.add(vv.sum().convertTo(dataType));
-            }
-            // if (this.vv == null) {
-            // // value = v.convertTo(dataType);
-            // this.vv = vv;
-            // this.bvv = bvv;
-            // } else {
-            // // v = v.convertTo(value.getType());
-            // this.vv = this.vv.add(this.bvv, vv, bvv);
-            // }
-            a.setValue(value);
-            return;
-        case Aggregate.AVG:
-            if (value == null) {
-                value = vv.sum(bvv);
-            } else {
-                value = value.add(vv.sum(bvv));
+        case Aggregate.AVG: {
+            if (vv instanceof DecimalVector) {
+                // DECIMAL在批与批之间也用scaled long累加，避免每一行都创建BigDecimal
+                a.setValue(((DecimalVector) vv).sum(a.getValue(), getSelection()));
+                return;
             }
-            a.setValue(value);
+            combine(session, a, vv.sum(getSelection()));
             return;
+        }
         case Aggregate.MIN:
-            if (value == null) {
-                value = vv.min(bvv);
-            } else {
-                Value min = vv.min(bvv);
-                if (session.getDatabase().compare(min, value) < 0)
-                    value = min;
-            }
-            a.setValue(value);
+            combine(session, a, vv.min(getSelection()));
             return;
         case Aggregate.MAX:
-            if (value == null) {
-                value = vv.max(bvv);
-            } else {
-                Value max = vv.max(bvv);
-                if (session.getDatabase().compare(max, value) > 0)
-                    value = max;
-            }
-            a.setValue(value);
+            combine(session, a, vv.max(getSelection()));
             return;
         }
-        for (Value v : vv.getValues(bvv)) {
+        for (Value v : vv.getValues(getSelection())) {
             if (v == ValueNull.INSTANCE) {
                 continue;
             }
             a.addOther(session, v);
         }
     }
+
+    /**
+     * 把一批或一组数据的SUM/AVG/MIN/MAX部分结果合并到a中，v为NULL时表示这部分数据全是NULL。
+     * 其他聚合函数不能这样合并，直接忽略。
+     */
+    public static void combine(ServerSession session, AggregateDataDefault a, Value v) {
+        if (v == ValueNull.INSTANCE)
+            return;
+        Value value = a.getValue();
+        switch (a.getAType()) {
+        case Aggregate.SUM:
+        case Aggregate.AVG:
+            if (value == null) {
+                // AVG直接用sum返回的类型(例如INT的sum是LONG)来累加，避免溢出
+                value = a.getAType() == Aggregate.SUM ? v.convertTo(a.getDataType()) : v;
+            } else if (a.getAType() == Aggregate.AVG) {
+                value = addAvg(value, v);
+            } else {
+                value = value.add(v.convertTo(value.getType()));
+            }
+            a.setValue(value);
+            break;
+        case Aggregate.MIN:
+            if (value == null || session.getDatabase().compare(v, value) < 0)
+                a.setValue(v);
+            break;
+        case Aggregate.MAX:
+            if (value == null || session.getDatabase().compare(v, value) > 0)
+                a.setValue(v);
+            break;
+        }
+    }
 }
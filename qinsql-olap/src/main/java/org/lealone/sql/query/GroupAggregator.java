@@ -0,0 +1,689 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.query;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.lealone.common.exceptions.DbException;
+
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.util.ValueHashMap;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueDecimal;
+import org.lealone.db.value.ValueDouble;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.Expression;
+import org.lealone.sql.expression.ExpressionColumn;
+import org.lealone.sql.expression.aggregate.ACount.AggregateDataCount;
+import org.lealone.sql.expression.aggregate.ACountAll.AggregateDataCountAll;
+import org.lealone.sql.expression.aggregate.ADefault.AggregateDataDefault;
+import org.lealone.sql.expression.aggregate.AGroupConcat;
+import org.lealone.sql.expression.aggregate.Aggregate;
+import org.lealone.sql.expression.aggregate.AggregateData;
+import org.lealone.sql.expression.aggregate.BuiltInAggregate;
+import org.lealone.sql.expression.aggregate.JavaAggregate;
+import org.lealone.sql.expression.visitor.GetValueVectorVisitor;
+import org.lealone.sql.expression.visitor.UpdateVectorizedAggregateVisitor;
+import org.lealone.sql.expression.visitor.VoidExpressionVisitor;
+import org.lealone.sql.vector.DoubleVector;
+import org.lealone.sql.vector.FloatVector;
+import org.lealone.sql.vector.GroupHashTable;
+import org.lealone.sql.vector.IntVector;
+import org.lealone.sql.vector.LongVector;
+import org.lealone.sql.vector.SelectionVector;
+import org.lealone.sql.vector.ValueVector;
+
+// 分组字段都是整数类型，并且非分组字段中只有非DISTINCT的COUNT/SUM/AVG/MIN/MAX时，
+// 用GroupHashTable一次给一批数据的所有行分配组号，聚合状态按组号存放在基本类型数组中，
+// 每一组只占几个数组元素，最后输出时才为每一组创建AggregateData，然后交给QGroup.addGroupRows。
+// 设置了内存上限时，超过上限就按key的哈希值把所有组的部分结果写到PARTITION_COUNT个临时文件中，然后清空重来，
+// 扫描结束后再一次读入一个分区，合并同一个key的部分结果后输出，这样任何时候内存中最多只有一个分区的组
+class GroupAggregator {
+
+    private static final int PARTITION_COUNT = 16;
+
+    private final Select select;
+    private final ServerSession session;
+    private final Expression[] keyExpressions;
+    private final int[] keyTypes;
+    private final ValueVector[] keyVectors;
+    private final AggregateState[] states;
+    private final GroupHashTable table;
+    private final long memoryLimit; // 小于等于0时不限制
+    private int[] groupIds;
+    private int capacity;
+
+    private SpillFile[] partitions; // 为null时表示还没有溢出到磁盘
+    private int nextPartition;
+    private HashSet<Value> mergedKeys; // row模式下的部分结果中已经合并过的key
+
+    private GroupAggregator(Select select, Expression[] keyExpressions, int[] keyTypes,
+            AggregateState[] states, long memoryLimit) {
+        this.select = select;
+        this.session = select.getSession();
+        this.keyExpressions = keyExpressions;
+        this.keyTypes = keyTypes;
+        this.states = states;
+        this.memoryLimit = memoryLimit;
+        keyVectors = new ValueVector[keyExpressions.length];
+        table = new GroupHashTable(keyExpressions.length);
+    }
+
+    // 不满足条件时返回null，继续按原来的方式逐组聚合
+    static GroupAggregator create(Select select, int columnCount, long memoryLimit) {
+        int[] groupIndex = select.groupIndex;
+        if (groupIndex == null || groupIndex.length >= 64) // NULL标记只有64位
+            return null;
+        int keyCount = groupIndex.length;
+        Expression[] keyExpressions = new Expression[keyCount];
+        int[] keyTypes = new int[keyCount];
+        for (int c = 0; c < keyCount; c++) {
+            keyExpressions[c] = select.expressions.get(groupIndex[c]);
+            keyTypes[c] = keyExpressions[c].getType();
+            if (!GroupHashTable.isSupportedType(keyTypes[c]))
+                return null;
+        }
+        CollectAggregatesVisitor visitor = new CollectAggregatesVisitor();
+        for (int i = 0; i < columnCount; i++) {
+            if (select.groupByExpression == null || !select.groupByExpression[i])
+                select.expressions.get(i).accept(visitor);
+        }
+        if (!visitor.supported || visitor.hasColumns)
+            return null;
+        AggregateState[] states = new AggregateState[visitor.aggregates.size()];
+        // 用一个临时的group取出AggregateData，看看是不是DISTINCT
+        HashMap<Expression, Object> currentGroup = select.currentGroup;
+        select.currentGroup = new HashMap<>();
+        try {
+            for (int j = 0; j < states.length; j++) {
+                states[j] = AggregateState.create(visitor.aggregates.get(j));
+                if (states[j] == null)
+                    return null;
+            }
+        } finally {
+            select.currentGroup = currentGroup;
+        }
+        return new GroupAggregator(select, keyExpressions, keyTypes, states, memoryLimit);
+    }
+
+    // 非分组字段(包括HAVING)在聚合函数之外直接引用了列
+    static boolean hasColumnsOutsideAggregates(Select select, int columnCount) {
+        CollectAggregatesVisitor visitor = new CollectAggregatesVisitor();
+        for (int i = 0; i < columnCount; i++) {
+            if (select.groupByExpression == null || !select.groupByExpression[i])
+                select.expressions.get(i).accept(visitor);
+        }
+        return visitor.hasColumns;
+    }
+
+    /**
+     * 用visitor计算分组字段和聚合函数参数的向量，按组号更新这一批选中的行。
+     */
+    void update(GetValueVectorVisitor visitor) {
+        int rowCount = visitor.getRowCount();
+        if (rowCount == 0)
+            return;
+        for (int c = 0; c < keyVectors.length; c++) {
+            keyVectors[c] = keyExpressions[c].accept(visitor);
+        }
+        SelectionVector selection = visitor.getSelection();
+        int[] positions = selection == null ? null : selection.getPositions();
+        groupIds = table.getGroupIds(keyVectors, positions, rowCount, groupIds);
+        int groupCount = table.getGroupCount();
+        if (groupCount > capacity) {
+            capacity = Math.max(groupCount, capacity * 2);
+            for (AggregateState s : states)
+                s.ensureCapacity(capacity);
+        }
+        for (AggregateState s : states) {
+            ValueVector vv = s.on == null ? null : s.on.accept(visitor);
+            s.update(vv, positions, rowCount, groupIds);
+        }
+        Arrays.fill(keyVectors, null);
+        if (memoryLimit > 0 && getMemory() > memoryLimit)
+            spill();
+    }
+
+    private long getMemory() {
+        int groupCount = table.getGroupCount();
+        long bytes = table.getMemory();
+        for (AggregateState s : states)
+            bytes += s.getMemory(groupCount);
+        return bytes;
+    }
+
+    boolean isSpilled() {
+        return partitions != null;
+    }
+
+    /**
+     * 把每一组的聚合状态合并到groups中对应的AggregateData，groups中可能已经有row模式下的部分结果。
+     */
+    void addGroups(ValueHashMap<HashMap<Expression, Object>> groups) {
+        addGroups(groups, null);
+    }
+
+    // rowGroups不为null时，结果放到groups中，同一个key在rowGroups中的部分结果也一起合并过来
+    private void addGroups(ValueHashMap<HashMap<Expression, Object>> groups,
+            ValueHashMap<HashMap<Expression, Object>> rowGroups) {
+        HashMap<Expression, Object> currentGroup = select.currentGroup;
+        for (int g = 0, count = table.getGroupCount(); g < count; g++) {
+            Value key = ValueArray.get(table.getKeyValues(g, keyTypes)); // 跟QGroup.getKey一样
+            HashMap<Expression, Object> group = rowGroups == null ? null : rowGroups.get(key);
+            if (group != null) {
+                groups.put(key, group);
+                mergedKeys.add(key);
+            } else {
+                group = QGroup.getOrCreateGroup(groups, key);
+            }
+            select.currentGroup = group;
+            for (AggregateState s : states)
+                s.merge(session, g);
+        }
+        select.currentGroup = currentGroup;
+    }
+
+    // 按哈希值的高位分区，跟GroupHashTable中用低位找槽的方式错开
+    private static int getPartition(int hash) {
+        return (hash >>> 28) & (PARTITION_COUNT - 1);
+    }
+
+    private void spill() {
+        if (partitions == null) {
+            partitions = new SpillFile[PARTITION_COUNT];
+            for (int p = 0; p < PARTITION_COUNT; p++)
+                partitions[p] = new SpillFile(session);
+        }
+        int groupCount = table.getGroupCount();
+        int width = table.getWidth();
+        try {
+            for (int g = 0; g < groupCount; g++) {
+                SpillFile file = partitions[getPartition(table.getHash(g))];
+                DataOutputStream out = file.getOutputStream();
+                for (int c = 0; c < width; c++)
+                    out.writeLong(table.getKey(g, c));
+                for (AggregateState s : states)
+                    s.write(out, g);
+                file.count++;
+            }
+        } catch (IOException e) {
+            close();
+            throw DbException.convertIOException(e, null);
+        }
+        for (AggregateState s : states)
+            s.clear(groupCount);
+        table.clear();
+    }
+
+    /**
+     * 溢出到磁盘之后，扫描结束时一次读入一个分区，合并后返回这个分区的所有组，
+     * 最后再返回row模式下的部分结果中还没有合并过的组，都返回之后返回null。
+     */
+    ValueHashMap<HashMap<Expression, Object>> nextPartition(
+            ValueHashMap<HashMap<Expression, Object>> rowGroups) {
+        if (nextPartition == 0) {
+            spill(); // 内存中剩下的组也写到分区中，这样同一个key只会出现在一个分区里
+            mergedKeys = new HashSet<>();
+        }
+        if (nextPartition > PARTITION_COUNT) {
+            close();
+            return null;
+        }
+        ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
+        if (nextPartition == PARTITION_COUNT) {
+            nextPartition++;
+            for (Value key : rowGroups.keys()) {
+                if (!mergedKeys.contains(key))
+                    groups.put(key, rowGroups.get(key));
+            }
+            mergedKeys = null;
+            return groups;
+        }
+        SpillFile file = partitions[nextPartition++];
+        try {
+            file.read(this);
+        } catch (IOException e) {
+            close();
+            throw DbException.convertIOException(e, file.getPath());
+        }
+        addGroups(groups, rowGroups);
+        int groupCount = table.getGroupCount();
+        for (AggregateState s : states)
+            s.clear(groupCount);
+        table.clear();
+        return groups;
+    }
+
+    private void readGroup(DataInputStream in, long[] key) throws IOException {
+        for (int c = 0; c < key.length; c++)
+            key[c] = in.readLong();
+        int g = table.findOrAdd(key, 0);
+        int groupCount = table.getGroupCount();
+        if (groupCount > capacity) {
+            capacity = Math.max(groupCount, capacity * 2);
+            for (AggregateState s : states)
+                s.ensureCapacity(capacity);
+        }
+        for (AggregateState s : states)
+            s.read(in, g);
+    }
+
+    /**
+     * 删掉还没有读过的临时文件，所有分区都输出之后、VGroup.run出错时和VGroup.stop中都会调用，可以重复调用。
+     */
+    void close() {
+        if (partitions != null) {
+            for (SpillFile file : partitions)
+                file.delete();
+        }
+    }
+
+    // 临时文件由数据库创建，放在数据库的目录中，跟其他临时文件一样在数据库重新打开或JVM退出时清理，
+    // 正常情况下读完一个分区就删掉它
+    private static class SpillFile {
+
+        private final ServerSession session;
+        private String fileName;
+        private DataOutputStream out;
+        private long count; // 写入的组数，同一个key可能写入多次
+
+        SpillFile(ServerSession session) {
+            this.session = session;
+        }
+
+        DataOutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                fileName = session.getDatabase().createTempFile();
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+            }
+            return out;
+        }
+
+        String getPath() {
+            return fileName;
+        }
+
+        void read(GroupAggregator aggregator) throws IOException {
+            if (out == null)
+                return;
+            out.close();
+            out = null;
+            long[] key = new long[aggregator.table.getWidth()];
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(fileName)))) {
+                for (long i = 0; i < count; i++)
+                    aggregator.readGroup(in, key);
+            } finally {
+                delete();
+            }
+        }
+
+        void delete() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // 忽略
+                }
+                out = null;
+            }
+            if (fileName != null) {
+                new File(fileName).delete();
+                fileName = null;
+            }
+        }
+    }
+
+    private static boolean isPrimitive(ValueVector vv) {
+        return vv instanceof IntVector || vv instanceof LongVector || vv instanceof DoubleVector
+                || vv instanceof FloatVector;
+    }
+
+    private static class AggregateState {
+
+        final BuiltInAggregate aggregate;
+        final Expression on;
+        final int aType;
+        final int valueType; // on的类型，MIN/MAX按它输出
+        final boolean isDouble; // 为true时用doubles累加，否则用longs
+        long[] counts = new long[0]; // COUNT(*)是行数，其他的是非NULL的行数
+        long[] longs;
+        double[] doubles;
+        BigDecimal[] overflows; // LONG的SUM/AVG溢出时把已经累加的值挪到这里，没溢出过就一直是null
+
+        AggregateState(BuiltInAggregate aggregate, int aType, int valueType, boolean isDouble) {
+            this.aggregate = aggregate;
+            this.on = aggregate.getOn();
+            this.aType = aType;
+            this.valueType = valueType;
+            this.isDouble = isDouble;
+            if (aType != Aggregate.COUNT_ALL && aType != Aggregate.COUNT) {
+                if (isDouble)
+                    doubles = new double[0];
+                else
+                    longs = new long[0];
+            }
+        }
+
+        static AggregateState create(BuiltInAggregate aggregate) {
+            int aType = aggregate.getAType();
+            AggregateData data = aggregate.getAggregateData();
+            switch (aType) {
+            case Aggregate.COUNT_ALL:
+                return new AggregateState(aggregate, aType, Value.LONG, false);
+            case Aggregate.COUNT:
+                if (((AggregateDataCount) data).isDistinct())
+                    return null;
+                return new AggregateState(aggregate, aType, Value.LONG, false);
+            case Aggregate.SUM:
+            case Aggregate.AVG:
+            case Aggregate.MIN:
+            case Aggregate.MAX: {
+                if (((AggregateDataDefault) data).isDistinct())
+                    return null;
+                int type = aggregate.getOn().getType();
+                switch (type) {
+                case Value.BYTE:
+                case Value.SHORT:
+                case Value.INT:
+                case Value.LONG:
+                    return new AggregateState(aggregate, aType, type, false);
+                case Value.FLOAT:
+                case Value.DOUBLE:
+                    return new AggregateState(aggregate, aType, type, true);
+                default:
+                    return null;
+                }
+            }
+            default:
+                return null;
+            }
+        }
+
+        void ensureCapacity(int capacity) {
+            counts = Arrays.copyOf(counts, capacity);
+            if (longs != null)
+                longs = Arrays.copyOf(longs, capacity);
+            if (doubles != null)
+                doubles = Arrays.copyOf(doubles, capacity);
+            if (overflows != null)
+                overflows = Arrays.copyOf(overflows, capacity);
+        }
+
+        void update(ValueVector vv, int[] positions, int rowCount, int[] groupIds) {
+            long[] counts = this.counts;
+            switch (aType) {
+            case Aggregate.COUNT_ALL:
+                for (int k = 0; k < rowCount; k++) {
+                    counts[groupIds[k]]++;
+                }
+                return;
+            case Aggregate.COUNT:
+                if (isPrimitive(vv)) {
+                    boolean hasNulls = vv.hasNulls();
+                    for (int k = 0; k < rowCount; k++) {
+                        if (!hasNulls || !vv.isNull(positions == null ? k : positions[k]))
+                            counts[groupIds[k]]++;
+                    }
+                } else {
+                    for (int k = 0; k < rowCount; k++) {
+                        if (vv.getValue(positions == null ? k : positions[k]) != ValueNull.INSTANCE)
+                            counts[groupIds[k]]++;
+                    }
+                }
+                return;
+            }
+            boolean hasNulls = vv.hasNulls();
+            if (vv instanceof IntVector && !isDouble) {
+                int[] values = ((IntVector) vv).getValues();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (!hasNulls || !vv.isNull(i))
+                        add(groupIds[k], values[i]);
+                }
+            } else if (vv instanceof LongVector && !isDouble) {
+                long[] values = ((LongVector) vv).getValues();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (!hasNulls || !vv.isNull(i))
+                        add(groupIds[k], values[i]);
+                }
+            } else if (vv instanceof DoubleVector && isDouble) {
+                double[] values = ((DoubleVector) vv).getValues();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (!hasNulls || !vv.isNull(i))
+                        add(groupIds[k], values[i]);
+                }
+            } else if (vv instanceof FloatVector && isDouble) {
+                float[] values = ((FloatVector) vv).getValues();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (!hasNulls || !vv.isNull(i))
+                        add(groupIds[k], values[i]);
+                }
+            } else {
+                for (int k = 0; k < rowCount; k++) {
+                    Value v = vv.getValue(positions == null ? k : positions[k]);
+                    if (v == ValueNull.INSTANCE)
+                        continue;
+                    if (isDouble)
+                        add(groupIds[k], v.getDouble());
+                    else
+                        add(groupIds[k], v.getLong());
+                }
+            }
+        }
+
+        private void add(int g, long v) {
+            accumulate(g, v, counts[g]++);
+        }
+
+        // n是之前这一组非NULL的行数，为0时说明这一组还没有值
+        private void accumulate(int g, long v, long n) {
+            long x = longs[g];
+            switch (aType) {
+            case Aggregate.SUM:
+            case Aggregate.AVG: {
+                long r = x + v;
+                if (((x ^ r) & (v ^ r)) < 0) { // 溢出了
+                    if (overflows == null)
+                        overflows = new BigDecimal[counts.length];
+                    BigDecimal o = BigDecimal.valueOf(x);
+                    overflows[g] = overflows[g] == null ? o : overflows[g].add(o);
+                    r = v;
+                }
+                longs[g] = r;
+                break;
+            }
+            case Aggregate.MIN:
+                if (n == 0 || v < x)
+                    longs[g] = v;
+                break;
+            case Aggregate.MAX:
+                if (n == 0 || v > x)
+                    longs[g] = v;
+                break;
+            }
+        }
+
+        private void add(int g, double v) {
+            accumulate(g, v, counts[g]++);
+        }
+
+        private void accumulate(int g, double v, long n) {
+            switch (aType) {
+            case Aggregate.SUM:
+            case Aggregate.AVG:
+                doubles[g] += v;
+                break;
+            case Aggregate.MIN: // 跟row模式一样，NaN比其他值都大
+                if (n == 0 || DoubleVector.compare(v, doubles[g]) < 0)
+                    doubles[g] = v;
+                break;
+            case Aggregate.MAX:
+                if (n == 0 || DoubleVector.compare(v, doubles[g]) > 0)
+                    doubles[g] = v;
+                break;
+            }
+        }
+
+        // 溢出到磁盘的格式: 计数，有值时跟着long或double，LONG的SUM/AVG再跟着溢出部分(没有时长度为0)
+        void write(DataOutputStream out, int g) throws IOException {
+            out.writeLong(counts[g]);
+            if (doubles != null) {
+                out.writeDouble(doubles[g]);
+            } else if (longs != null) {
+                out.writeLong(longs[g]);
+                if (aType == Aggregate.SUM || aType == Aggregate.AVG) {
+                    BigDecimal o = overflows == null ? null : overflows[g];
+                    if (o == null) {
+                        out.writeInt(0);
+                    } else {
+                        byte[] bytes = o.toBigInteger().toByteArray();
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+            }
+        }
+
+        // 把write写出的部分结果合并到组g中
+        void read(DataInputStream in, int g) throws IOException {
+            long c = in.readLong();
+            long n = counts[g];
+            counts[g] += c;
+            if (doubles != null) {
+                double v = in.readDouble();
+                if (c > 0)
+                    accumulate(g, v, n);
+            } else if (longs != null) {
+                long v = in.readLong();
+                if (c > 0)
+                    accumulate(g, v, n);
+                if (aType == Aggregate.SUM || aType == Aggregate.AVG) {
+                    int len = in.readInt();
+                    if (len > 0) {
+                        byte[] bytes = new byte[len];
+                        in.readFully(bytes);
+                        BigDecimal o = new BigDecimal(new BigInteger(bytes));
+                        if (overflows == null)
+                            overflows = new BigDecimal[counts.length];
+                        overflows[g] = overflows[g] == null ? o : overflows[g].add(o);
+                    }
+                }
+            }
+        }
+
+        // 跟GroupHashTable.getMemory一样按组数估算
+        long getMemory(int groupCount) {
+            long bytes = groupCount * 8L;
+            if (longs != null || doubles != null)
+                bytes += groupCount * 8L;
+            if (overflows != null)
+                bytes += groupCount * 8L;
+            return bytes;
+        }
+
+        void clear(int groupCount) {
+            Arrays.fill(counts, 0, groupCount, 0);
+            if (longs != null)
+                Arrays.fill(longs, 0, groupCount, 0);
+            if (doubles != null)
+                Arrays.fill(doubles, 0, groupCount, 0);
+            overflows = null;
+        }
+
+        private Value getValue(int g) {
+            Value v;
+            if (isDouble) {
+                v = ValueDouble.get(doubles[g]);
+            } else if (overflows != null && overflows[g] != null) {
+                v = ValueDecimal.get(overflows[g].add(BigDecimal.valueOf(longs[g])));
+            } else {
+                v = ValueLong.get(longs[g]);
+            }
+            if (aType == Aggregate.MIN || aType == Aggregate.MAX)
+                v = v.convertTo(valueType);
+            return v;
+        }
+
+        // select.currentGroup已经是这一组的HashMap了
+        void merge(ServerSession session, int g) {
+            AggregateData data = aggregate.getAggregateData();
+            switch (aType) {
+            case Aggregate.COUNT_ALL: {
+                AggregateDataCountAll a = (AggregateDataCountAll) data;
+                a.setCount(a.getCount() + counts[g]);
+                break;
+            }
+            case Aggregate.COUNT: {
+                AggregateDataCount a = (AggregateDataCount) data;
+                a.setCount(a.getCount() + counts[g]);
+                break;
+            }
+            default: {
+                AggregateDataDefault a = (AggregateDataDefault) data;
+                a.setCount(a.getCount() + counts[g]);
+                if (counts[g] > 0)
+                    UpdateVectorizedAggregateVisitor.combine(session, a, getValue(g));
+            }
+            }
+        }
+    }
+
+    // 收集非分组字段中的聚合函数，聚合函数之外直接引用了列，或者有其他聚合函数时GroupAggregator就不支持
+    private static class CollectAggregatesVisitor extends VoidExpressionVisitor {
+
+        private final ArrayList<BuiltInAggregate> aggregates = new ArrayList<>();
+        private boolean supported = true;
+        private boolean hasColumns;
+
+        @Override
+        public Void visitExpressionColumn(ExpressionColumn e) {
+            hasColumns = true;
+            return null;
+        }
+
+        @Override
+        public Void visitAggregate(Aggregate e) {
+            if (e instanceof BuiltInAggregate) {
+                if (!aggregates.contains(e))
+                    aggregates.add((BuiltInAggregate) e);
+            } else {
+                supported = false;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitAGroupConcat(AGroupConcat e) {
+            supported = false;
+            return null;
+        }
+
+        @Override
+        public Void visitJavaAggregate(JavaAggregate e) {
+            supported = false;
+            return null;
+        }
+    }
+}
@@ -15,6 +15,8 @@ import org.lealone.sql.vector.ValueVector;
 // 除了QuickAggregateQuery之外的聚合函数，没有group by
 class VAggregate extends VOperator {
 
+    private UpdateVectorizedAggregateVisitor visitor;
+
     VAggregate(Select select) {
         super(select);
         if (select.currentGroup == null)
@@ -27,8 +29,13 @@ class VAggregate extends VOperator {
             boolean yield = yieldIfNeeded(++loopCount);
             topTableFilter.setBatchSize(batch.size());
             ValueVector conditionValueVector = getConditionValueVector();
-            UpdateVectorizedAggregateVisitor visitor = new UpdateVectorizedAggregateVisitor(
-                    topTableFilter, session, conditionValueVector, batch);
+            if (visitor == null) {
+                visitor = new UpdateVectorizedAggregateVisitor(topTableFilter, session,
+                        conditionValueVector, batch, valueVectorPool);
+                visitor.setCompiledConditions(compiledConditions);
+            } else {
+                visitor.reset(conditionValueVector);
+            }
             select.currentGroupRowId++;
             for (int i = 0; i < columnCount; i++) {
                 Expression expr = select.expressions.get(i);
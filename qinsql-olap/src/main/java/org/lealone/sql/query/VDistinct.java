@@ -0,0 +1,147 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.query;
+
+import java.util.HashSet;
+
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.sql.expression.Expression;
+import org.lealone.sql.expression.visitor.GetValueVectorVisitor;
+import org.lealone.sql.operator.Operator;
+import org.lealone.sql.vector.GroupHashTable;
+import org.lealone.sql.vector.SelectionVector;
+import org.lealone.sql.vector.ValueVector;
+
+// 处理select.isDistinctQuery，按批读取记录，把选中的行的select字段放到哈希集合中，只输出第一次出现的值，
+// 每一批处理完就把新出现的值加到结果集中，不用等到扫描结束
+class VDistinct extends VOperator {
+
+    private boolean initialized;
+    private Expression[] expressions;
+    private ValueVector[] vectors;
+    private GetValueVectorVisitor visitor;
+    // 所有字段都是整数类型时用GroupHashTable，新分配的组号就对应第一次出现的值，否则用HashSet
+    private GroupHashTable table;
+    private HashSet<Value> values;
+    // 用HashSet时，如果这一批的向量能编码(例如字典编码的字符串)，先在这一批内按编码去重，
+    // 每个不同的值只需要到HashSet中查找一次
+    private GroupHashTable batchTable;
+    private int[] groupIds;
+    // row模式下已经输出的值的个数，topTableFilter按distinct字段的索引从头开始扫描，所以前面这么多个值直接跳过
+    private long skipCount;
+
+    VDistinct(Select select) {
+        super(select);
+    }
+
+    @Override
+    public void copyStatus(Operator old) {
+        super.copyStatus(old);
+        if (old instanceof QOperator)
+            skipCount = rowCount;
+    }
+
+    // 第一次运行时columnCount才确定
+    private void init() {
+        initialized = true;
+        expressions = new Expression[columnCount];
+        vectors = new ValueVector[columnCount];
+        boolean fixedWidth = columnCount < 64; // NULL标记只有64位
+        for (int i = 0; i < columnCount; i++) {
+            expressions[i] = select.expressions.get(i);
+            if (!GroupHashTable.isSupportedType(expressions[i].getType()))
+                fixedWidth = false;
+        }
+        if (fixedWidth) {
+            table = new GroupHashTable(columnCount);
+        } else {
+            values = new HashSet<>();
+            if (columnCount < 64)
+                batchTable = new GroupHashTable(columnCount);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (!initialized)
+            init();
+        while (nextBatch()) {
+            boolean yield = yieldIfNeeded(++loopCount);
+            ValueVector conditionValueVector = getConditionValueVector();
+            if (visitor == null) {
+                visitor = new GetValueVectorVisitor(topTableFilter, session, conditionValueVector, batch,
+                        valueVectorPool);
+                visitor.setCompiledConditions(compiledConditions);
+            } else {
+                visitor.reset(conditionValueVector);
+            }
+            for (int i = 0; i < columnCount; i++) {
+                vectors[i] = expressions[i].accept(visitor);
+            }
+            SelectionVector selection = visitor.getSelection();
+            int[] positions = selection == null ? null : selection.getPositions();
+            int count = visitor.getRowCount();
+            if (table != null) {
+                int groupCount = table.getGroupCount();
+                groupIds = table.getGroupIds(vectors, positions, count, groupIds);
+                for (int k = 0; k < count; k++) {
+                    if (groupIds[k] == groupCount) { // 第一次出现
+                        groupCount++;
+                        addRow(positions == null ? k : positions[k]);
+                    }
+                }
+            } else if (batchTable != null && GroupHashTable.canEncodeInBatch(vectors)) {
+                groupIds = batchTable.getGroupIds(vectors, positions, count, groupIds);
+                batchTable.clear();
+                int groupCount = 0;
+                for (int k = 0; k < count; k++) {
+                    if (groupIds[k] == groupCount) { // 在这一批中第一次出现
+                        groupCount++;
+                        int i = positions == null ? k : positions[k];
+                        if (values.add(getKey(i)))
+                            addRow(i);
+                    }
+                }
+            } else {
+                for (int k = 0; k < count; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (values.add(getKey(i)))
+                        addRow(i);
+                }
+            }
+            if (canBreakLoop()) {
+                break;
+            }
+            if (yield)
+                return;
+        }
+        loopEnd = true;
+    }
+
+    private Value getKey(int index) {
+        if (columnCount == 1)
+            return vectors[0].getValue(index);
+        Value[] keyValues = new Value[columnCount];
+        for (int j = 0; j < columnCount; j++) {
+            keyValues[j] = vectors[j].getValue(index);
+        }
+        return ValueArray.get(keyValues);
+    }
+
+    private void addRow(int index) {
+        if (skipCount > 0) {
+            skipCount--;
+            return;
+        }
+        Value[] row = new Value[columnCount];
+        for (int j = 0; j < columnCount; j++) {
+            row[j] = vectors[j].getValue(index);
+        }
+        result.addRow(row);
+        rowCount++;
+    }
+}
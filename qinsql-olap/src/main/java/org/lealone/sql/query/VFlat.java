@@ -8,11 +8,15 @@ package org.lealone.sql.query;
 import org.lealone.db.value.Value;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.visitor.GetValueVectorVisitor;
+import org.lealone.sql.vector.SelectionVector;
 import org.lealone.sql.vector.ValueVector;
 
 // 最普通的查询
 class VFlat extends VOperator {
 
+    private GetValueVectorVisitor visitor;
+    private ValueVector[] rows;
+
     VFlat(Select select) {
         super(select);
     }
@@ -22,14 +26,23 @@ class VFlat extends VOperator {
         while (nextBatch()) {
             boolean yield = yieldIfNeeded(++loopCount);
             ValueVector conditionValueVector = getConditionValueVector();
-            GetValueVectorVisitor visitor = new GetValueVectorVisitor(topTableFilter, session,
-                    conditionValueVector, batch);
-            ValueVector[] rows = new ValueVector[columnCount];
+            if (visitor == null) {
+                visitor = new GetValueVectorVisitor(topTableFilter, session, conditionValueVector, batch,
+                        valueVectorPool);
+                visitor.setCompiledConditions(compiledConditions);
+                rows = new ValueVector[columnCount];
+            } else {
+                visitor.reset(conditionValueVector);
+            }
             for (int i = 0; i < columnCount; i++) {
                 Expression expr = select.expressions.get(i);
                 rows[i] = expr.accept(visitor);
             }
-            for (int i = 0, szie = rows[0].size(); i < szie; i++) {
+            // 没有压缩时按selection中的位置读取选中的行
+            SelectionVector selection = visitor.getSelection();
+            int[] positions = selection == null ? null : selection.getPositions();
+            for (int k = 0, szie = visitor.getRowCount(); k < szie; k++) {
+                int i = positions == null ? k : positions[k];
                 Value[] row = new Value[columnCount];
                 for (int j = 0; j < columnCount; j++) {
                     ValueVector vv = rows[j];
@@ -6,25 +6,51 @@
 package org.lealone.sql.query;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.lealone.db.result.Row;
 import org.lealone.db.util.ValueHashMap;
 import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueArray;
+import org.lealone.db.value.ValueNull;
 import org.lealone.sql.expression.Expression;
+import org.lealone.sql.expression.visitor.GetValueVectorVisitor;
 import org.lealone.sql.expression.visitor.UpdateVectorizedAggregateVisitor;
 import org.lealone.sql.operator.Operator;
+import org.lealone.sql.vector.GroupHashTable;
+import org.lealone.sql.vector.SelectionVector;
+import org.lealone.sql.vector.ValueVector;
 
 // 只处理group by，且group by的字段没有索引
+// 每次读出一批记录，先用向量化的方式算出条件，再给选中的行分配组，然后按组更新聚合结果，
+// 处理完一批就丢掉这一批的记录，占用的内存只跟组数有关，跟扫描了多少行无关
 class VGroup extends VOperator {
 
     private ValueHashMap<HashMap<Expression, Object>> groups;
+    private boolean initialized;
+    private boolean scanEnd; // 溢出到磁盘时，扫描结束后还要分多次输出各个分区
+    // 不为null时按组号更新基本类型数组中的聚合状态
+    private GroupAggregator groupAggregator;
+    // 不为null时表示非分组字段在聚合函数之外引用了列，这些列只能从当前行取值，所以还是逐行读取，按key缓存一批记录
     private ValueHashMap<ArrayList<Row>> batchMap;
+    private Expression[] keyExpressions;
+    private ValueVector[] keyVectors;
+    private GetValueVectorVisitor visitor;
+    private UpdateVectorizedAggregateVisitor aggregateVisitor;
+    // 给这一批选中的行分配组号，每一批处理完就清空，分组字段不能编码成long时用batchGroupIds
+    private GroupHashTable batchTable;
+    private final HashMap<Value, Integer> batchGroupIds = new HashMap<>();
+    // 这一批中每一行的组号、每一组的行数和第一行的位置，以及按组排好的行，批与批之间重用
+    private int[] rowGroupIds = new int[0];
+    private int[] groupRowCounts = new int[0];
+    private int[] groupFirstRows = new int[0];
+    private int[] groupOffsets = new int[0];
+    private int[] sortedPositions = new int[0];
 
     VGroup(Select select) {
         super(select);
         groups = ValueHashMap.newInstance();
-        batchMap = ValueHashMap.newInstance();
     }
 
     @Override
@@ -36,8 +62,214 @@ class VGroup extends VOperator {
         }
     }
 
+    // 第一次运行时columnCount才确定
+    private void init() {
+        initialized = true;
+        groupAggregator = GroupAggregator.create(select, columnCount, getGroupMemoryLimit());
+        if (groupAggregator != null)
+            return;
+        if (GroupAggregator.hasColumnsOutsideAggregates(select, columnCount)) {
+            batchMap = ValueHashMap.newInstance();
+            return;
+        }
+        int[] groupIndex = select.groupIndex;
+        keyExpressions = new Expression[groupIndex.length];
+        keyVectors = new ValueVector[groupIndex.length];
+        for (int c = 0; c < groupIndex.length; c++) {
+            keyExpressions[c] = select.expressions.get(groupIndex[c]);
+        }
+        if (groupIndex.length < 64) // NULL标记只有64位
+            batchTable = new GroupHashTable(groupIndex.length);
+    }
+
+    // 用SET @OLAP_GROUP_MEMORY_LIMIT 字节数 设置每个分组查询的聚合状态最多占用多少内存，默认不限制
+    private long getGroupMemoryLimit() {
+        Value v = session.getVariable("OLAP_GROUP_MEMORY_LIMIT");
+        return v == ValueNull.INSTANCE ? 0 : v.getLong();
+    }
+
     @Override
     public void run() {
+        if (!initialized)
+            init();
+        if (batchMap != null) {
+            runByKey();
+            return;
+        }
+        boolean ok = false;
+        try {
+            runGroups();
+            ok = true;
+        } finally {
+            // 出错时也要删掉已经溢出到磁盘的临时文件
+            if (!ok && groupAggregator != null)
+                groupAggregator.close();
+        }
+    }
+
+    // 查询结束时(包括还没有输出完所有分区就被关闭的情况)删掉还没有读过的临时文件
+    @Override
+    public void stop() {
+        super.stop();
+        if (groupAggregator != null)
+            groupAggregator.close();
+    }
+
+    private void runGroups() {
+        if (!scanEnd) {
+            scan();
+            if (!scanEnd)
+                return;
+        }
+        if (groupAggregator != null && groupAggregator.isSpilled()) {
+            // 一次只合并一个分区，分区之间也可以让出执行权
+            ValueHashMap<HashMap<Expression, Object>> partitionGroups;
+            while ((partitionGroups = groupAggregator.nextPartition(groups)) != null) {
+                QGroup.addGroupRows(partitionGroups, select, columnCount, result);
+                if (yieldIfNeeded(++loopCount))
+                    return;
+            }
+        } else {
+            if (groupAggregator != null)
+                groupAggregator.addGroups(groups);
+            QGroup.addGroupRows(groups, select, columnCount, result);
+        }
+        loopEnd = true;
+    }
+
+    private void scan() {
+        while (nextBatch()) {
+            boolean yield = yieldIfNeeded(++loopCount);
+            topTableFilter.setBatchSize(batch.size());
+            ValueVector conditionValueVector = getConditionValueVector();
+            if (visitor == null) {
+                visitor = new GetValueVectorVisitor(topTableFilter, session, conditionValueVector, batch,
+                        valueVectorPool);
+                visitor.setCompiledConditions(compiledConditions);
+            } else {
+                visitor.reset(conditionValueVector);
+            }
+            if (groupAggregator != null)
+                groupAggregator.update(visitor);
+            else
+                updateBatchGroups(conditionValueVector);
+            rowCount += getBatchSize(conditionValueVector);
+            if (sampleSize > 0 && rowCount >= sampleSize) {
+                break;
+            }
+            if (yield)
+                return;
+        }
+        scanEnd = true;
+    }
+
+    // 分组字段不能编码成long时，先把这一批选中的行分到各组，再对每一组用选中的行更新一次聚合结果，
+    // 列向量每一批只生成一次，各组之间只换选中的行
+    private void updateBatchGroups(ValueVector conditionValueVector) {
+        int count = visitor.getRowCount();
+        if (count == 0)
+            return;
+        for (int c = 0; c < keyExpressions.length; c++) {
+            keyVectors[c] = keyExpressions[c].accept(visitor);
+        }
+        // 读key时用visitor的位置，构建每一组的SelectionVector时要用行在batch中的位置
+        SelectionVector selection = visitor.getSelection();
+        int[] positions = selection == null ? null : selection.getPositions();
+        int[] batchPositions = conditionValueVector == null ? null
+                : SelectionVector.valueOf(conditionValueVector).getPositions();
+        int groupCount;
+        if (batchTable != null && GroupHashTable.canEncodeInBatch(keyVectors)) {
+            rowGroupIds = batchTable.getGroupIds(keyVectors, positions, count, rowGroupIds);
+            groupCount = batchTable.getGroupCount();
+            batchTable.clear();
+        } else {
+            groupCount = getBatchGroupIds(positions, count);
+        }
+        int[] rowGroupIds = this.rowGroupIds;
+        if (groupRowCounts.length < groupCount) {
+            groupRowCounts = new int[Math.max(groupCount, batchSize)];
+            groupFirstRows = new int[groupRowCounts.length];
+            groupOffsets = new int[groupRowCounts.length];
+        }
+        if (sortedPositions.length < count)
+            sortedPositions = new int[Math.max(count, batchSize)];
+        int[] groupRowCounts = this.groupRowCounts;
+        int[] groupFirstRows = this.groupFirstRows;
+        int[] groupOffsets = this.groupOffsets;
+        int[] sortedPositions = this.sortedPositions;
+        for (int k = 0; k < count; k++) {
+            int g = rowGroupIds[k];
+            if (groupRowCounts[g]++ == 0)
+                groupFirstRows[g] = positions == null ? k : positions[k];
+        }
+        // 按组号做一次计数排序，每一组的行在sortedPositions中是连续的，不用给每一组分配数组
+        for (int g = 0, offset = 0; g < groupCount; g++) {
+            groupOffsets[g] = offset;
+            offset += groupRowCounts[g];
+            groupRowCounts[g] = 0;
+        }
+        for (int k = 0; k < count; k++) {
+            int g = rowGroupIds[k];
+            sortedPositions[groupOffsets[g] + groupRowCounts[g]++] = batchPositions == null ? k
+                    : batchPositions[k];
+        }
+        if (aggregateVisitor == null) {
+            aggregateVisitor = new UpdateVectorizedAggregateVisitor(topTableFilter, session, null, batch,
+                    valueVectorPool);
+            aggregateVisitor.setCompiledConditions(compiledConditions);
+        } else {
+            aggregateVisitor.reset(null);
+        }
+        int size = batch.size();
+        for (int g = 0; g < groupCount; g++) {
+            int from = groupOffsets[g];
+            int to = from + groupRowCounts[g];
+            groupRowCounts[g] = 0;
+            // 同一批中只有每一组的第一行才创建key，字符串按字典下标编码时，
+            // 不区分大小写的不同写法会分到这一批的不同组，但它们的key相等，还是会更新同一个group，
+            // key跟QGroup中的一样是ValueArray，要放进groups，所以不能重用
+            select.currentGroup = QGroup.getOrCreateGroup(groups, getKey(groupFirstRows[g]));
+            select.currentGroupRowId++;
+            // SelectionVector要求位置数组的长度就是选中的行数，这里还是要复制一份
+            aggregateVisitor.setSelection(
+                    new SelectionVector(Arrays.copyOfRange(sortedPositions, from, to), size));
+            for (int i = 0; i < columnCount; i++) {
+                if (select.groupByExpression == null || !select.groupByExpression[i]) {
+                    Expression expr = select.expressions.get(i);
+                    expr.accept(aggregateVisitor);
+                }
+            }
+        }
+    }
+
+    // 分组字段有不能编码的类型(例如DECIMAL、DATE)时，每一行都按key到HashMap中查找组号，返回这一批的组数
+    private int getBatchGroupIds(int[] positions, int count) {
+        if (rowGroupIds.length < count)
+            rowGroupIds = new int[count];
+        int[] rowGroupIds = this.rowGroupIds;
+        for (int k = 0; k < count; k++) {
+            Value key = getKey(positions == null ? k : positions[k]);
+            Integer groupId = batchGroupIds.get(key);
+            if (groupId == null) {
+                groupId = batchGroupIds.size();
+                batchGroupIds.put(key, groupId);
+            }
+            rowGroupIds[k] = groupId;
+        }
+        int groupCount = batchGroupIds.size();
+        batchGroupIds.clear();
+        return groupCount;
+    }
+
+    private Value getKey(int index) {
+        Value[] keyValues = new Value[keyVectors.length];
+        for (int c = 0; c < keyVectors.length; c++) {
+            keyValues[c] = keyVectors[c].getValue(index);
+        }
+        return ValueArray.get(keyValues); // 跟QGroup.getKey一样
+    }
+
+    private void runByKey() {
         while (topTableFilter.next()) {
             boolean yield = yieldIfNeeded(++loopCount);
             if (conditionEvaluator.getBooleanValue()) {
@@ -6,15 +6,21 @@
 package org.lealone.sql.query;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import org.lealone.db.result.Row;
+import org.lealone.db.table.Column;
 import org.lealone.sql.expression.Expression;
 import org.lealone.sql.expression.evaluator.ExpressionEvaluator;
 import org.lealone.sql.expression.evaluator.HotSpotEvaluator;
+import org.lealone.sql.expression.visitor.CollectColumnsVisitor;
 import org.lealone.sql.expression.visitor.GetValueVectorVisitor;
 import org.lealone.sql.operator.Operator;
 import org.lealone.sql.optimizer.TableFilter;
 import org.lealone.sql.vector.ValueVector;
+import org.lealone.sql.vector.ValueVectorFactories;
+import org.lealone.sql.vector.ValueVectorFactory;
+import org.lealone.sql.vector.ValueVectorPool;
 
 public class VOperator extends QOperator {
 
@@ -23,6 +29,15 @@ public class VOperator extends QOperator {
     protected ArrayList<Row> batch;
     protected final int batchSize;
     protected final TableFilter topTableFilter;
+    // 条件和select字段列表中的IN (...)、LIKE和简单CASE/NULLIF在所有批次之间共享
+    // 预先编译好的ConstantSet、LikePattern和等值比较
+    protected final IdentityHashMap<Expression, Object> compiledConditions = new IdentityHashMap<>();
+    // 列向量在批与批之间重用，配合可重置的visitor，稳定运行后每一批不用再分配列向量和visitor
+    protected final ValueVectorPool valueVectorPool = new ValueVectorPool();
+    private GetValueVectorVisitor conditionVisitor;
+    // 条件和select字段列表中引用到的列，每读出一批数据就按行一次性装载到valueVectorPool中
+    private Column[] referencedColumns;
+    private ValueVectorFactory valueVectorFactory;
 
     VOperator(Select select) {
         super(select);
@@ -58,19 +73,43 @@ public class VOperator extends QOperator {
 
     protected boolean nextBatch() {
         batch.clear();
+        valueVectorPool.nextBatch();
         // 不能把topTableFilter.next()放在前面，会丢掉一条记录
         for (int i = 0; i < batchSize && topTableFilter.next(); i++) {
             batch.add(topTableFilter.get());
         }
-        return !batch.isEmpty();
+        if (batch.isEmpty())
+            return false;
+        loadColumns();
+        return true;
+    }
+
+    private void loadColumns() {
+        if (referencedColumns == null) {
+            CollectColumnsVisitor visitor = new CollectColumnsVisitor(topTableFilter);
+            if (select.condition != null)
+                select.condition.accept(visitor);
+            for (int i = 0; i < columnCount; i++) {
+                select.expressions.get(i).accept(visitor);
+            }
+            referencedColumns = visitor.getColumns();
+            valueVectorFactory = ValueVectorFactories.getFactory(session.getValueVectorFactoryName());
+        }
+        if (referencedColumns.length > 0)
+            valueVectorPool.load(valueVectorFactory, batch, referencedColumns);
     }
 
     protected ValueVector getConditionValueVector() {
         ValueVector conditionValueVector = null;
         if (select.condition != null) {
-            GetValueVectorVisitor visitor = new GetValueVectorVisitor(topTableFilter, session, null,
-                    batch);
-            conditionValueVector = select.condition.accept(visitor);
+            if (conditionVisitor == null) {
+                conditionVisitor = new GetValueVectorVisitor(topTableFilter, session, null, batch,
+                        valueVectorPool);
+                conditionVisitor.setCompiledConditions(compiledConditions);
+            } else {
+                conditionVisitor.reset(null);
+            }
+            conditionValueVector = select.condition.accept(conditionVisitor);
         }
         return conditionValueVector;
     }
@@ -16,6 +16,8 @@ public class VOperatorFactory extends OperatorFactoryBase {
     @Override
     public VOperator createOperator(Select select) {
         if (select.isQuickAggregateQuery) {
+            // 只有表能直接给出行数时COUNT才是QuickAggregateQuery，MIN/MAX也是直接取索引的第一个或最后一个值，
+            // row模式下不用扫描，没有需要向量化的地方
             return null;
         } else if (select.isGroupQuery) {
             if (select.isGroupSortedQuery) {
@@ -28,7 +30,7 @@ public class VOperatorFactory extends OperatorFactoryBase {
                 }
             }
         } else if (select.isDistinctQuery) {
-            return null;
+            return new VDistinct(select);
         } else {
             return new VFlat(select);
         }
@@ -5,50 +5,267 @@
  */
 package org.lealone.sql.vector;
 
+import org.lealone.common.exceptions.DbException;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueBoolean;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
 
+// 一个long存放64行的结果，第i位为1表示第i行为true，size之后的位总是0
 public class BooleanVector extends ValueVector {
 
-    private boolean[] values;
+    private long[] bits;
+    private int size;
 
     public BooleanVector() {
+        this(new long[0], 0);
     }
 
     public BooleanVector(boolean[] values) {
-        this.values = values;
+        this(values, null);
     }
 
-    public boolean[] getValues() {
-        return values;
+    // 结果为NULL(UNKNOWN)的行在where条件中不成立，所以直接把它们清成false
+    public BooleanVector(boolean[] values, long[] nulls) {
+        int len = values.length;
+        long[] bits = new long[wordCount(len)];
+        for (int i = 0; i < len; i++) {
+            if (values[i])
+                bits[i >>> 6] |= 1L << i;
+        }
+        this.bits = bits;
+        this.size = len;
+        setNulls(nulls);
+    }
+
+    public BooleanVector(long[] bits, int size) {
+        this.bits = bits;
+        this.size = size;
+    }
+
+    public BooleanVector(long[] bits, int size, long[] nulls) {
+        this.bits = bits;
+        this.size = size;
+        setNulls(nulls);
+    }
+
+    @Override
+    public void setNulls(long[] nulls) {
+        this.nulls = nulls;
+        if (nulls != null) {
+            for (int i = 0, len = Math.min(bits.length, nulls.length); i < len; i++) {
+                bits[i] &= ~nulls[i];
+            }
+        }
+    }
+
+    public long[] getBits() {
+        return bits;
+    }
+
+    public static int wordCount(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    // 最后一个long中只有低(size % 64)位有效
+    private static long lastWordMask(int size) {
+        return -1L >>> -size;
+    }
+
+    public static BooleanVector allTrue(int size) {
+        long[] bits = new long[wordCount(size)];
+        if (size > 0) {
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = -1L;
+            }
+            bits[bits.length - 1] &= lastWordMask(size);
+        }
+        return new BooleanVector(bits, size);
+    }
+
+    // 三值逻辑: 只要有一边是false结果就是false，否则有一边是NULL结果就是NULL
+    public BooleanVector and(BooleanVector bv) {
+        long[] bits1 = this.bits;
+        long[] bits2 = bv.bits;
+        long[] nulls1 = this.nulls;
+        long[] nulls2 = bv.nulls;
+        int len = Math.min(bits1.length, bits2.length);
+        long[] bits = new long[len];
+        long[] nulls = nulls1 == null && nulls2 == null ? null : new long[len];
+        for (int i = 0; i < len; i++) {
+            bits[i] = bits1[i] & bits2[i];
+            if (nulls != null) {
+                long n1 = getWord(nulls1, i);
+                long n2 = getWord(nulls2, i);
+                nulls[i] = (n1 | n2) & (bits1[i] | n1) & (bits2[i] | n2);
+            }
+        }
+        return new BooleanVector(bits, Math.min(size, bv.size), nulls);
+    }
+
+    // 三值逻辑: 只要有一边是true结果就是true，否则有一边是NULL结果就是NULL
+    public BooleanVector or(BooleanVector bv) {
+        long[] bits1 = this.bits;
+        long[] bits2 = bv.bits;
+        long[] nulls1 = this.nulls;
+        long[] nulls2 = bv.nulls;
+        int len = Math.min(bits1.length, bits2.length);
+        long[] bits = new long[len];
+        long[] nulls = nulls1 == null && nulls2 == null ? null : new long[len];
+        for (int i = 0; i < len; i++) {
+            bits[i] = bits1[i] | bits2[i];
+            if (nulls != null)
+                nulls[i] = (getWord(nulls1, i) | getWord(nulls2, i)) & ~bits[i];
+        }
+        return new BooleanVector(bits, Math.min(size, bv.size), nulls);
+    }
+
+    private static long getWord(long[] a, int i) {
+        return a == null || i >= a.length ? 0 : a[i];
+    }
+
+    // NOT UNKNOWN还是UNKNOWN，所以NULL的行仍然是false
+    public BooleanVector not() {
+        long[] bits1 = this.bits;
+        int len = bits1.length;
+        long[] bits = new long[len];
+        for (int i = 0; i < len; i++) {
+            bits[i] = ~bits1[i];
+        }
+        if (len > 0)
+            bits[len - 1] &= lastWordMask(size);
+        return new BooleanVector(bits, size, nulls);
+    }
+
+    @Override
+    public ValueVector negate() {
+        return not();
+    }
+
+    // FALSE < TRUE，按64位一组直接在位图上比较，NULL的行由createBooleanVector处理
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        long[] bits1 = this.bits;
+        int len = bits1.length;
+        long[] bits2;
+        long[] nulls2;
+        if (vv instanceof SingleValueVector) {
+            Value v = ((SingleValueVector) vv).getValue();
+            if (v == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            bits2 = v.getBoolean() ? allTrue(size).bits : new long[len];
+            nulls2 = null;
+        } else if (vv instanceof BooleanVector) {
+            bits2 = ((BooleanVector) vv).bits;
+            nulls2 = vv.nulls;
+        } else {
+            return null;
+        }
+        long[] bits = new long[len];
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                bits[i] = ~(bits1[i] ^ bits2[i]);
+            }
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                bits[i] = bits1[i] | ~bits2[i];
+            }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                bits[i] = bits1[i] & ~bits2[i];
+            }
+            break;
+        case Comparison.SMALLER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                bits[i] = ~bits1[i] | bits2[i];
+            }
+            break;
+        case Comparison.SMALLER:
+            for (int i = 0; i < len; i++) {
+                bits[i] = ~bits1[i] & bits2[i];
+            }
+            break;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                bits[i] = bits1[i] ^ bits2[i];
+            }
+            break;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+        if (len > 0)
+            bits[len - 1] &= lastWordMask(size);
+        return createBooleanVector(bits, size, nulls, nulls2, compareType);
     }
 
-    public void setValues(boolean[] values) {
-        this.values = values;
+    /**
+     * 返回从fromIndex开始(包含fromIndex)第一个为true的行，没有时返回-1，用法跟java.util.BitSet一样:
+     * for (int i = bv.nextSetBit(0); i >= 0; i = bv.nextSetBit(i + 1))
+     */
+    @Override
+    public int nextSetBit(int fromIndex) {
+        int u = fromIndex >>> 6;
+        long[] bits = this.bits;
+        if (u >= bits.length)
+            return -1;
+        long word = bits[u] & (-1L << fromIndex);
+        while (true) {
+            if (word != 0)
+                return (u << 6) + Long.numberOfTrailingZeros(word);
+            if (++u == bits.length)
+                return -1;
+            word = bits[u];
+        }
     }
 
     @Override
     public boolean isTrue(int index) {
-        return values[index];
+        return (bits[index >>> 6] & (1L << index)) != 0;
     }
 
     @Override
     public int size() {
-        return values.length;
+        return size;
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.BOOLEAN;
     }
 
     @Override
     public Value getValue(int index) {
-        return ValueBoolean.get(values[index]);
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueBoolean.get(isTrue(index));
     }
 
     @Override
     public int trueCount() {
         int c = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (values[i])
-                c++;
+        for (long word : bits) {
+            c += Long.bitCount(word);
         }
         return c;
     }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new BooleanVector(bits.clone(), size, nulls);
+        int size = bvv.trueCount();
+        long[] a = new long[wordCount(size)];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            if (isTrue(i))
+                a[j >>> 6] |= 1L << j;
+            j++;
+        }
+        return new BooleanVector(a, size, filterNulls(bvv));
+    }
 }
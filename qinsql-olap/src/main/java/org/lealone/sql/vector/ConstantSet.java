@@ -0,0 +1,214 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+
+// IN (...)中的常量集合，按左边表达式的类型选用不同的实现，
+// INT/LONG直接用原始类型查找，不用每一行都拿Value到HashSet中算hashCode和equals
+public abstract class ConstantSet {
+
+    // 元素个数不超过这个值时直接用有序数组二分查找
+    private static final int SORTED_ARRAY_LIMIT = 8;
+    // 值域不超过这个大小并且足够稠密时用位图
+    private static final long MAX_BITMAP_RANGE = 1 << 16;
+
+    protected boolean hasNull; // 集合中有NULL时，找不到的行的结果是NULL而不是false
+
+    public boolean hasNull() {
+        return hasNull;
+    }
+
+    public abstract boolean contains(Value v);
+
+    public static ConstantSet create(Collection<Value> values, int type) {
+        switch (type) {
+        case Value.INT:
+        case Value.LONG:
+            return createLongSet(values);
+        case Value.STRING:
+        case Value.STRING_FIXED:
+            return new StringSet(values, false);
+        case Value.STRING_IGNORECASE:
+            return new StringSet(values, true);
+        default:
+            return new DefaultSet(values);
+        }
+    }
+
+    private static LongSet createLongSet(Collection<Value> values) {
+        long[] a = new long[values.size()];
+        int n = 0;
+        boolean hasNull = false;
+        for (Value v : values) {
+            if (v == ValueNull.INSTANCE)
+                hasNull = true;
+            else
+                a[n++] = v.getLong();
+        }
+        a = Arrays.copyOf(a, n);
+        Arrays.sort(a);
+        LongSet set;
+        if (n <= SORTED_ARRAY_LIMIT) {
+            set = new SortedLongSet(a);
+        } else {
+            long range = a[n - 1] - a[0] + 1;
+            // 位图的大小不超过元素个数的8倍(按long算)时才用位图
+            if (range > 0 && range <= MAX_BITMAP_RANGE && range <= (long) n * 64 * 8)
+                set = new BitmapLongSet(a, range);
+            else
+                set = new HashLongSet(a);
+        }
+        set.hasNull = hasNull;
+        return set;
+    }
+
+    public static abstract class LongSet extends ConstantSet {
+
+        public abstract boolean contains(long v);
+
+        @Override
+        public boolean contains(Value v) {
+            return contains(v.getLong());
+        }
+    }
+
+    private static class SortedLongSet extends LongSet {
+
+        private final long[] values;
+
+        SortedLongSet(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean contains(long v) {
+            return Arrays.binarySearch(values, v) >= 0;
+        }
+    }
+
+    private static class BitmapLongSet extends LongSet {
+
+        private final long min;
+        private final long range;
+        private final long[] bits;
+
+        BitmapLongSet(long[] values, long range) {
+            min = values[0];
+            this.range = range;
+            bits = new long[(int) ((range + 63) >>> 6)];
+            for (long v : values) {
+                long d = v - min;
+                bits[(int) (d >>> 6)] |= 1L << d;
+            }
+        }
+
+        @Override
+        public boolean contains(long v) {
+            long d = v - min; // 溢出时d不会落在[0, range)中
+            return d >= 0 && d < range && (bits[(int) (d >>> 6)] & (1L << d)) != 0;
+        }
+    }
+
+    // 线性探测的开放寻址哈希表，0用来表示空槽，所以单独记录集合中是否有0
+    private static class HashLongSet extends LongSet {
+
+        private final long[] keys;
+        private final int mask;
+        private boolean hasZero;
+
+        HashLongSet(long[] values) {
+            int capacity = Integer.highestOneBit(Math.max(values.length, 2) * 2 - 1) << 1;
+            keys = new long[capacity];
+            mask = capacity - 1;
+            for (long v : values) {
+                if (v == 0) {
+                    hasZero = true;
+                    continue;
+                }
+                int i = hash(v) & mask;
+                while (keys[i] != 0 && keys[i] != v) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = v;
+            }
+        }
+
+        private static int hash(long v) {
+            long h = v * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        @Override
+        public boolean contains(long v) {
+            if (v == 0)
+                return hasZero;
+            long[] keys = this.keys;
+            int i = hash(v) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == v)
+                    return true;
+                if (k == 0)
+                    return false;
+                i = (i + 1) & mask;
+            }
+        }
+    }
+
+    // String会缓存hashCode，所以StringVector中的每个值只在第一次查找时才算一次hashCode，
+    // 不区分大小写时集合中和查找时都先转成大写，跟ValueStringIgnoreCase.hashCode一样
+    public static class StringSet extends ConstantSet {
+
+        private final HashSet<String> values;
+        private final boolean ignoreCase;
+
+        StringSet(Collection<Value> values, boolean ignoreCase) {
+            this.values = new HashSet<>(values.size() * 2);
+            this.ignoreCase = ignoreCase;
+            for (Value v : values) {
+                if (v == ValueNull.INSTANCE)
+                    hasNull = true;
+                else
+                    this.values.add(fold(v.getString()));
+            }
+        }
+
+        private String fold(String v) {
+            return ignoreCase ? v.toUpperCase(Locale.ENGLISH) : v;
+        }
+
+        public boolean contains(String v) {
+            return values.contains(fold(v));
+        }
+
+        @Override
+        public boolean contains(Value v) {
+            return values.contains(fold(v.getString()));
+        }
+    }
+
+    private static class DefaultSet extends ConstantSet {
+
+        private final HashSet<Value> values;
+
+        DefaultSet(Collection<Value> values) {
+            this.values = new HashSet<>(values);
+            hasNull = this.values.remove(ValueNull.INSTANCE);
+        }
+
+        @Override
+        public boolean contains(Value v) {
+            return values.contains(v);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.util.DateTimeUtils;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDate;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
+
+// 用从1970-01-01开始的天数表示DATE，比较时只需要比较int
+public class DateVector extends ValueVector {
+
+    private int[] values;
+
+    public DateVector(int[] values) {
+        this.values = values;
+    }
+
+    public DateVector(int[] values, long[] nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public int[] getValues() {
+        return values;
+    }
+
+    public static int toAbsoluteDay(Value v) {
+        long dateValue = ((ValueDate) v.convertTo(Value.DATE)).getDateValue();
+        return (int) DateTimeUtils.absoluteDayFromDateValue(dateValue);
+    }
+
+    private static long toDateValue(int absoluteDay) {
+        return DateTimeUtils.dateValueFromAbsoluteDay(absoluteDay);
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.DATE;
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        switch (targetType) {
+        case Value.DATE:
+            return this;
+        case Value.TIMESTAMP:
+            return toTimestampVector();
+        default:
+            return this;
+        }
+    }
+
+    private TimestampVector toTimestampVector() {
+        int len = values.length;
+        long[] dateValues = new long[len];
+        for (int i = 0; i < len; i++) {
+            dateValues[i] = toDateValue(values[i]);
+        }
+        return new TimestampVector(dateValues, new long[len], nulls);
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        if (vv instanceof SingleValueVector && ((SingleValueVector) vv).getValue() == ValueNull.INSTANCE)
+            return compareNull(compareType);
+        int[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value value = ((SingleValueVector) vv).getValue();
+            if (value.getType() == Value.TIMESTAMP) // 带时间部分时要按TIMESTAMP比较
+                return toTimestampVector().compare(vv, compareType);
+            int v = toAbsoluteDay(value);
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] == v;
+                }
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] >= v;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] > v;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] <= v;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] < v;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] != v;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
+            }
+            return createBooleanVector(values, nulls, null, compareType);
+        }
+        if (vv.getValueType() == Value.TIMESTAMP)
+            return toTimestampVector().compare(vv, compareType);
+        DateVector vv2 = (DateVector) vv.convertTo(Value.DATE);
+        int[] values2 = vv2.values;
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] == values2[i];
+            }
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] >= values2[i];
+            }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] > values2[i];
+            }
+            break;
+        case Comparison.SMALLER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] <= values2[i];
+            }
+            break;
+        case Comparison.SMALLER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] < values2[i];
+            }
+            break;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] != values2[i];
+            }
+            break;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+        return createBooleanVector(values, nulls, vv2.nulls, compareType);
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueDate.fromDateValue(toDateValue(values[index]));
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int size;
+        if (bvv == null)
+            size = values.length;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        int index = -1;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || values[index] > values[i])
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        int index = -1;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || values[index] < values[i])
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    public IntVector year() {
+        int len = values.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = DateTimeUtils.yearFromDateValue(toDateValue(values[i]));
+        }
+        return new IntVector(a, nulls);
+    }
+
+    public IntVector month() {
+        int len = values.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = DateTimeUtils.monthFromDateValue(toDateValue(values[i]));
+        }
+        return new IntVector(a, nulls);
+    }
+
+    public IntVector dayOfMonth() {
+        int len = values.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = DateTimeUtils.dayFromDateValue(toDateValue(values[i]));
+        }
+        return new IntVector(a, nulls);
+    }
+
+    // 截断到当年的1月1日
+    public DateVector truncateToYear() {
+        int len = values.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            int year = DateTimeUtils.yearFromDateValue(toDateValue(values[i]));
+            long dateValue = DateTimeUtils.dateValue(year, 1, 1);
+            a[i] = (int) DateTimeUtils.absoluteDayFromDateValue(dateValue);
+        }
+        return new DateVector(a, nulls);
+    }
+
+    // 截断到当月的1日
+    public DateVector truncateToMonth() {
+        int len = values.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            // 每个月的1日距离当前日期正好是(day - 1)天
+            a[i] = values[i] - DateTimeUtils.dayFromDateValue(toDateValue(values[i])) + 1;
+        }
+        return new DateVector(a, nulls);
+    }
+
+    public DateVector truncateToDay() {
+        return this;
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new DateVector(values, nulls);
+        int size = bvv.trueCount();
+        int[] a = new int[size];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            a[j++] = values[i];
+        }
+        return new DateVector(a, filterNulls(bvv));
+    }
+}
@@ -0,0 +1,610 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.math.BigDecimal;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDecimal;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
+
+// 如果一批数据的scale都相同并且不超过18位数字，就用long[]存放unscaled value，溢出时才回退到BigDecimal[]
+public class DecimalVector extends ValueVector {
+
+    private static final long MAX_UNSCALED_VALUE = 999_999_999_999_999_999L;
+
+    private long[] unscaledValues;
+    private int scale;
+    private BigDecimal[] values;
+
+    public DecimalVector(long[] unscaledValues, int scale) {
+        this.unscaledValues = unscaledValues;
+        this.scale = scale;
+    }
+
+    public DecimalVector(BigDecimal[] values) {
+        this.values = values;
+    }
+
+    public static DecimalVector valueOf(BigDecimal[] values, int scale) {
+        int len = values.length;
+        long[] a = new long[len];
+        for (int i = 0; i < len; i++) {
+            BigDecimal v = values[i];
+            if (v == null)
+                continue;
+            if (v.scale() != scale || v.precision() > 18)
+                return new DecimalVector(values);
+            a[i] = v.unscaledValue().longValue();
+        }
+        return new DecimalVector(a, scale);
+    }
+
+    private static DecimalVector withNulls(DecimalVector dv, long[] nulls) {
+        dv.nulls = nulls;
+        return dv;
+    }
+
+    public long[] getUnscaledValues() {
+        return unscaledValues;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.DECIMAL;
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        switch (targetType) {
+        case Value.DECIMAL:
+            return this;
+        case Value.DOUBLE: {
+            int len = size();
+            double[] a = new double[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = getBigDecimal(i).doubleValue();
+            }
+            return new DoubleVector(a, nulls);
+        }
+        default:
+            return this;
+        }
+    }
+
+    private BigDecimal getBigDecimal(int index) {
+        if (unscaledValues != null)
+            return BigDecimal.valueOf(unscaledValues[index], scale);
+        // NULL值对应的位置是null
+        BigDecimal v = values[index];
+        return v == null ? BigDecimal.ZERO : v;
+    }
+
+    // 把常量转成与当前向量相同的scale，无法精确表示时返回Long.MIN_VALUE
+    private long toUnscaled(BigDecimal v) {
+        if (v.scale() != scale) {
+            try {
+                v = v.setScale(scale);
+            } catch (ArithmeticException e) {
+                return Long.MIN_VALUE;
+            }
+        }
+        if (v.precision() > 18)
+            return Long.MIN_VALUE;
+        return v.unscaledValue().longValue();
+    }
+
+    private static DecimalVector toDecimalVector(ValueVector vv) {
+        ValueVector v = vv.convertTo(Value.DECIMAL);
+        if (v instanceof DecimalVector)
+            return (DecimalVector) v;
+        int len = vv.size();
+        BigDecimal[] a = new BigDecimal[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = vv.getValue(i).getBigDecimal();
+        }
+        return withNulls(new DecimalVector(a), vv.getNulls());
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        int len = size();
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            BigDecimal bd = v0.getBigDecimal();
+            long v;
+            if (unscaledValues != null && (v = toUnscaled(bd)) != Long.MIN_VALUE) {
+                long[] values1 = this.unscaledValues;
+                switch (compareType) {
+                case Comparison.EQUAL:
+                case Comparison.EQUAL_NULL_SAFE:
+                    for (int i = 0; i < len; i++) {
+                        values[i] = values1[i] == v;
+                    }
+                    break;
+                case Comparison.BIGGER_EQUAL:
+                    for (int i = 0; i < len; i++) {
+                        values[i] = values1[i] >= v;
+                    }
+                    break;
+                case Comparison.BIGGER:
+                    for (int i = 0; i < len; i++) {
+                        values[i] = values1[i] > v;
+                    }
+                    break;
+                case Comparison.SMALLER_EQUAL:
+                    for (int i = 0; i < len; i++) {
+                        values[i] = values1[i] <= v;
+                    }
+                    break;
+                case Comparison.SMALLER:
+                    for (int i = 0; i < len; i++) {
+                        values[i] = values1[i] < v;
+                    }
+                    break;
+                case Comparison.NOT_EQUAL:
+                case Comparison.NOT_EQUAL_NULL_SAFE:
+                    for (int i = 0; i < len; i++) {
+                        values[i] = values1[i] != v;
+                    }
+                    break;
+                default:
+                    throw DbException.getInternalError("compareType=" + compareType);
+                }
+                return createBooleanVector(values, nulls, null, compareType);
+            }
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(getBigDecimal(i).compareTo(bd), compareType);
+            }
+            return createBooleanVector(values, nulls, null, compareType);
+        }
+        DecimalVector dv = toDecimalVector(vv);
+        if (unscaledValues != null && dv.unscaledValues != null && scale == dv.scale) {
+            long[] values1 = this.unscaledValues;
+            long[] values2 = dv.unscaledValues;
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(Long.compare(values1[i], values2[i]), compareType);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(getBigDecimal(i).compareTo(dv.getBigDecimal(i)), compareType);
+            }
+        }
+        return createBooleanVector(values, nulls, dv.nulls, compareType);
+    }
+
+    private static boolean compare(int c, int compareType) {
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            return c == 0;
+        case Comparison.BIGGER_EQUAL:
+            return c >= 0;
+        case Comparison.BIGGER:
+            return c > 0;
+        case Comparison.SMALLER_EQUAL:
+            return c <= 0;
+        case Comparison.SMALLER:
+            return c < 0;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            return c != 0;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+    }
+
+    @Override
+    public ValueVector negate() {
+        if (unscaledValues != null) {
+            long[] values1 = this.unscaledValues;
+            long[] values = new long[values1.length];
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = -values1[i]; // 不超过18位数字，不会溢出
+            }
+            return withNulls(new DecimalVector(values, scale), nulls);
+        }
+        BigDecimal[] values1 = this.values;
+        BigDecimal[] values = new BigDecimal[values1.length];
+        for (int i = 0; i < values1.length; i++) {
+            values[i] = getBigDecimal(i).negate();
+        }
+        return withNulls(new DecimalVector(values), nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        return addOrSubtract(vv, false);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        return addOrSubtract(vv, true);
+    }
+
+    private ValueVector addOrSubtract(ValueVector vv, boolean subtract) {
+        int len = size();
+        if (isNullConstant(vv))
+            return withNulls(new DecimalVector(new long[len], scale), allNulls(len));
+        DecimalVector dv = vv instanceof SingleValueVector ? null : toDecimalVector(vv);
+        long[] nulls = dv == null ? this.nulls : orNulls(this.nulls, dv.nulls);
+        if (unscaledValues != null) {
+            long[] values1 = this.unscaledValues;
+            long[] values2 = null;
+            long v = Long.MIN_VALUE;
+            if (vv instanceof SingleValueVector) {
+                v = toUnscaled(((SingleValueVector) vv).getValue().getBigDecimal());
+            } else {
+                if (dv.unscaledValues != null && dv.scale == scale)
+                    values2 = dv.unscaledValues;
+            }
+            if (v != Long.MIN_VALUE || values2 != null) {
+                long[] values = new long[len];
+                boolean overflow = false;
+                for (int i = 0; i < len; i++) {
+                    long x = values2 == null ? v : values2[i];
+                    long r = subtract ? values1[i] - x : values1[i] + x;
+                    values[i] = r;
+                    // 结果超过18位数字时不再使用long[]
+                    if (r > MAX_UNSCALED_VALUE || r < -MAX_UNSCALED_VALUE)
+                        overflow = true;
+                }
+                if (!overflow)
+                    return withNulls(new DecimalVector(values, scale), nulls);
+            }
+        }
+        BigDecimal[] values = new BigDecimal[len];
+        if (vv instanceof SingleValueVector) {
+            BigDecimal v = ((SingleValueVector) vv).getValue().getBigDecimal();
+            for (int i = 0; i < len; i++) {
+                values[i] = subtract ? getBigDecimal(i).subtract(v) : getBigDecimal(i).add(v);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                BigDecimal v = dv.getBigDecimal(i);
+                values[i] = subtract ? getBigDecimal(i).subtract(v) : getBigDecimal(i).add(v);
+            }
+        }
+        return withNulls(new DecimalVector(values), nulls);
+    }
+
+    @Override
+    public ValueVector multiply(ValueVector vv) {
+        int len = size();
+        if (isNullConstant(vv))
+            return withNulls(new DecimalVector(new long[len], scale), allNulls(len));
+        DecimalVector dv = vv instanceof SingleValueVector ? null : toDecimalVector(vv);
+        long[] nulls = dv == null ? this.nulls : orNulls(this.nulls, dv.nulls);
+        if (unscaledValues != null) {
+            long[] values1 = this.unscaledValues;
+            long[] values = new long[len];
+            boolean overflow = false;
+            int scale2;
+            if (vv instanceof SingleValueVector) {
+                BigDecimal bd = ((SingleValueVector) vv).getValue().getBigDecimal();
+                scale2 = bd.scale();
+                if (scale2 < 0 || bd.precision() > 18) {
+                    overflow = true;
+                } else {
+                    long v = bd.unscaledValue().longValue();
+                    for (int i = 0; i < len; i++) {
+                        long r = values1[i] * v;
+                        values[i] = r;
+                        if (r > MAX_UNSCALED_VALUE || r < -MAX_UNSCALED_VALUE
+                                || Math.multiplyHigh(values1[i], v) != (r >> 63))
+                            overflow = true;
+                    }
+                }
+            } else {
+                scale2 = dv.scale;
+                if (dv.unscaledValues == null) {
+                    overflow = true;
+                } else {
+                    long[] values2 = dv.unscaledValues;
+                    for (int i = 0; i < len; i++) {
+                        long r = values1[i] * values2[i];
+                        values[i] = r;
+                        if (r > MAX_UNSCALED_VALUE || r < -MAX_UNSCALED_VALUE
+                                || Math.multiplyHigh(values1[i], values2[i]) != (r >> 63))
+                            overflow = true;
+                    }
+                }
+            }
+            if (!overflow)
+                return withNulls(new DecimalVector(values, scale + scale2), nulls);
+        }
+        BigDecimal[] values = new BigDecimal[len];
+        if (vv instanceof SingleValueVector) {
+            BigDecimal v = ((SingleValueVector) vv).getValue().getBigDecimal();
+            for (int i = 0; i < len; i++) {
+                values[i] = getBigDecimal(i).multiply(v);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                values[i] = getBigDecimal(i).multiply(dv.getBigDecimal(i));
+            }
+        }
+        return withNulls(new DecimalVector(values), nulls);
+    }
+
+    // 除法和取模的scale规则比较复杂，直接使用ValueDecimal的实现
+    @Override
+    public ValueVector divide(ValueVector vv) {
+        int len = size();
+        if (isNullConstant(vv))
+            return withNulls(new DecimalVector(new long[len], scale), allNulls(len));
+        BigDecimal[] values = new BigDecimal[len];
+        long[] nulls;
+        if (vv instanceof SingleValueVector) {
+            Value v = ((SingleValueVector) vv).getValue();
+            nulls = this.nulls;
+            for (int i = 0; i < len; i++) {
+                if (!isNull(nulls, i))
+                    values[i] = getValue(i).divide(v).getBigDecimal();
+            }
+        } else {
+            DecimalVector dv = toDecimalVector(vv);
+            nulls = orNulls(this.nulls, dv.nulls);
+            for (int i = 0; i < len; i++) {
+                if (!isNull(nulls, i))
+                    values[i] = getValue(i).divide(dv.getValue(i)).getBigDecimal();
+            }
+        }
+        return withNulls(new DecimalVector(values), nulls);
+    }
+
+    @Override
+    public ValueVector modulus(ValueVector vv) {
+        int len = size();
+        if (isNullConstant(vv))
+            return withNulls(new DecimalVector(new long[len], scale), allNulls(len));
+        BigDecimal[] values = new BigDecimal[len];
+        long[] nulls;
+        if (vv instanceof SingleValueVector) {
+            Value v = ((SingleValueVector) vv).getValue();
+            nulls = this.nulls;
+            for (int i = 0; i < len; i++) {
+                if (!isNull(nulls, i))
+                    values[i] = getValue(i).modulus(v).getBigDecimal();
+            }
+        } else {
+            DecimalVector dv = toDecimalVector(vv);
+            nulls = orNulls(this.nulls, dv.nulls);
+            for (int i = 0; i < len; i++) {
+                if (!isNull(nulls, i))
+                    values[i] = getValue(i).modulus(dv.getValue(i)).getBigDecimal();
+            }
+        }
+        return withNulls(new DecimalVector(values), nulls);
+    }
+
+    private static boolean isNullConstant(ValueVector vv) {
+        return vv instanceof SingleValueVector && ((SingleValueVector) vv).getValue() == ValueNull.INSTANCE;
+    }
+
+    @Override
+    public int size() {
+        return unscaledValues != null ? unscaledValues.length : values.length;
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueDecimal.get(getBigDecimal(index));
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int len = size();
+        int size;
+        if (bvv == null)
+            size = len;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value sum() {
+        return sum((ValueVector) null);
+    }
+
+    @Override
+    public Value sum(ValueVector bvv) {
+        BigDecimal sum = sumBigDecimal(bvv);
+        return sum == null ? ValueNull.INSTANCE : ValueDecimal.get(sum);
+    }
+
+    // 没有一个非NULL值时返回null
+    private BigDecimal sumBigDecimal(ValueVector bvv) {
+        boolean found = false;
+        if (unscaledValues != null) {
+            long[] values = this.unscaledValues;
+            long sum = 0;
+            try {
+                int len = values.length;
+                int[] sel = getValidPositions(bvv);
+                for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+                    int i = sel == null ? k : sel[k];
+                    found = true;
+                    sum = Math.addExact(sum, values[i]);
+                }
+                return found ? BigDecimal.valueOf(sum, scale) : null;
+            } catch (ArithmeticException e) {
+                // 溢出了，用BigDecimal重新计算
+            }
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        int len = size();
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
+            sum = sum.add(getBigDecimal(i));
+        }
+        return found ? sum : null;
+    }
+
+    /**
+     * 把这一批数据的和累加到上一批的结果中，上一批结果的scale相同并且不超过18位数字时直接用long相加。
+     */
+    public Value sum(Value previous, ValueVector bvv) {
+        if (previous == null || previous == ValueNull.INSTANCE)
+            return sum(bvv);
+        if (unscaledValues != null) {
+            BigDecimal p = previous.getBigDecimal();
+            if (p.scale() == scale && p.precision() <= 18) {
+                long sum = p.unscaledValue().longValue();
+                long[] values = this.unscaledValues;
+                boolean found = false;
+                try {
+                    int len = values.length;
+                    int[] sel = getValidPositions(bvv);
+                    for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+                        int i = sel == null ? k : sel[k];
+                        found = true;
+                        sum = Math.addExact(sum, values[i]);
+                    }
+                    return found ? ValueDecimal.get(BigDecimal.valueOf(sum, scale)) : previous;
+                } catch (ArithmeticException e) {
+                    // 溢出了，用BigDecimal重新计算
+                }
+            }
+        }
+        BigDecimal sum = sumBigDecimal(bvv);
+        return sum == null ? previous : ValueDecimal.get(previous.getBigDecimal().add(sum));
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        return minOrMax(bvv, true);
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        return minOrMax(bvv, false);
+    }
+
+    private Value minOrMax(ValueVector bvv, boolean min) {
+        int len = size();
+        int index = -1;
+        if (unscaledValues != null) {
+            long[] values = this.unscaledValues;
+            int[] sel = getValidPositions(bvv);
+            for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+                int i = sel == null ? k : sel[k];
+                if (index < 0 || (min ? values[i] < values[index] : values[i] > values[index]))
+                    index = i;
+            }
+        } else {
+            int[] sel = getValidPositions(bvv);
+            for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+                int i = sel == null ? k : sel[k];
+                if (index < 0) {
+                    index = i;
+                } else {
+                    int c = getBigDecimal(i).compareTo(getBigDecimal(index));
+                    if (min ? c < 0 : c > 0)
+                        index = i;
+                }
+            }
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        int len = size();
+        long[] bits = mask.getBits();
+        if (vv instanceof SingleValueVector) {
+            SingleValueVector sv = (SingleValueVector) vv;
+            Value v0 = sv.getValue();
+            BigDecimal bd = v0 == ValueNull.INSTANCE ? BigDecimal.ZERO : v0.getBigDecimal();
+            long v;
+            if (unscaledValues != null && (v = toUnscaled(bd)) != Long.MIN_VALUE) {
+                long[] values1 = this.unscaledValues;
+                long[] values = new long[len];
+                for (int i = 0; i < len; i++) {
+                    values[i] = isSet(bits, i) ? v : values1[i];
+                }
+                return withNulls(new DecimalVector(values, scale), blendNulls(sv, mask));
+            }
+            BigDecimal[] values = new BigDecimal[len];
+            for (int i = 0; i < len; i++) {
+                values[i] = isSet(bits, i) ? bd : getBigDecimal(i);
+            }
+            return withNulls(new DecimalVector(values), blendNulls(sv, mask));
+        }
+        if (!(vv instanceof DecimalVector))
+            return super.blend(vv, mask);
+        DecimalVector dv = (DecimalVector) vv;
+        if (unscaledValues != null && dv.unscaledValues != null && dv.scale == scale) {
+            long[] values1 = this.unscaledValues;
+            long[] values2 = dv.unscaledValues;
+            long[] values = new long[len];
+            for (int i = 0; i < len; i++) {
+                values[i] = isSet(bits, i) ? values2[i] : values1[i];
+            }
+            return withNulls(new DecimalVector(values, scale), blendNulls(dv.nulls, mask));
+        }
+        // scale不同时只能用BigDecimal[]
+        BigDecimal[] values = new BigDecimal[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = isSet(bits, i) ? dv.getBigDecimal(i) : getBigDecimal(i);
+        }
+        return withNulls(new DecimalVector(values), blendNulls(dv.nulls, mask));
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null) {
+            if (unscaledValues != null)
+                return withNulls(new DecimalVector(unscaledValues, scale), nulls);
+            return withNulls(new DecimalVector(values), nulls);
+        }
+        int size = bvv.trueCount();
+        int j = 0;
+        if (unscaledValues != null) {
+            long[] a = new long[size];
+            for (int i : getSelection(bvv)) {
+                a[j++] = unscaledValues[i];
+            }
+            return withNulls(new DecimalVector(a, scale), filterNulls(bvv));
+        }
+        BigDecimal[] a = new BigDecimal[size];
+        for (int i : getSelection(bvv)) {
+            a[j++] = values[i];
+        }
+        return withNulls(new DecimalVector(a), filterNulls(bvv));
+    }
+}
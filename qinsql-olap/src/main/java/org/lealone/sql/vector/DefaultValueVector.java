@@ -7,6 +7,7 @@ package org.lealone.sql.vector;
 
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
 import org.lealone.sql.expression.condition.Comparison;
 
 public class DefaultValueVector extends ValueVector {
@@ -15,70 +16,102 @@ public class DefaultValueVector extends ValueVector {
 
     public DefaultValueVector(Value[] values) {
         this.values = values;
+        for (int i = 0, len = values.length; i < len; i++) {
+            if (values[i] == ValueNull.INSTANCE)
+                nulls = setNull(nulls, i, len);
+        }
     }
 
     @Override
     public BooleanVector compare(ValueVector vv, int compareType) {
-        switch (compareType) {
-        case Comparison.EQUAL: {
-            if (vv instanceof SingleValueVector) {
-                Value[] values1 = this.values;
-                Value v = ((SingleValueVector) vv).getValue();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
+        Value[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v = ((SingleValueVector) vv).getValue();
+            if (v == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
                     values[i] = values1[i].compareTo(v) == 0;
                 }
-                return new BooleanVector(values);
-            }
-            Value[] values1 = this.values;
-            boolean[] values = new boolean[values1.length];
-            for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i].compareTo(vv.getValue(i)) == 0;
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].compareTo(v) >= 0;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].compareTo(v) > 0;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].compareTo(v) <= 0;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].compareTo(v) < 0;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].compareTo(v) != 0;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
             }
-            return new BooleanVector(values);
+            return createBooleanVector(values, nulls, null, compareType);
         }
+        // 另一个向量可以是任意类型，逐行取出Value来比较
+        switch (compareType) {
+        case Comparison.EQUAL:
         case Comparison.EQUAL_NULL_SAFE:
-            return null;
-        case Comparison.BIGGER_EQUAL: {
-            if (vv instanceof SingleValueVector) {
-                Value[] values1 = this.values;
-                Value v = ((SingleValueVector) vv).getValue();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
-                    values[i] = values1[i].compareTo(v) >= 0;
-                }
-                return new BooleanVector(values);
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i].compareTo(vv.getValue(i)) == 0;
             }
-            Value[] values1 = this.values;
-            boolean[] values = new boolean[values1.length];
-            for (int i = 0; i < values1.length; i++) {
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
                 values[i] = values1[i].compareTo(vv.getValue(i)) >= 0;
             }
-            return new BooleanVector(values);
-        }
-        case Comparison.BIGGER: {
-            if (vv instanceof SingleValueVector) {
-                Value[] values1 = this.values;
-                Value v = ((SingleValueVector) vv).getValue();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
-                    values[i] = values1[i].compareTo(v) > 0;
-                }
-                return new BooleanVector(values);
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i].compareTo(vv.getValue(i)) > 0;
             }
-            return null;
-        }
+            break;
         case Comparison.SMALLER_EQUAL:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i].compareTo(vv.getValue(i)) <= 0;
+            }
+            break;
         case Comparison.SMALLER:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i].compareTo(vv.getValue(i)) < 0;
+            }
+            break;
         case Comparison.NOT_EQUAL:
-            return null;
         case Comparison.NOT_EQUAL_NULL_SAFE:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i].compareTo(vv.getValue(i)) != 0;
+            }
+            break;
         default:
             throw DbException.getInternalError("compareType=" + compareType);
         }
+        return createBooleanVector(values, nulls, vv.getNulls(), compareType);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
     }
 
     @Override
@@ -95,9 +128,11 @@ public class DefaultValueVector extends ValueVector {
             size = bvv.trueCount();
         Value[] a = new Value[size];
         int j = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv == null || bvv.isTrue(i))
-                a[j++] = values[i];
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = values[i];
         }
         return new DefaultValueVector(a);
     }
@@ -5,11 +5,15 @@
  */
 package org.lealone.sql.vector;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 import org.lealone.db.result.Row;
 import org.lealone.db.table.Column;
 import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+import org.lealone.db.value.ValueTime;
+import org.lealone.db.value.ValueTimestamp;
 
 public class DefaultValueVectorFactory implements ValueVectorFactory {
 
@@ -22,19 +26,121 @@ public class DefaultValueVectorFactory implements ValueVectorFactory {
         switch (column.getType()) {
         case Value.INT: {
             int[] values = new int[size];
+            long[] nulls = null;
             for (int i = 0; i < size; i++) {
-                values[i] = batch.get(i).getValue(columnId).getInt();
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE)
+                    nulls = ValueVector.setNull(nulls, i, size);
+                else
+                    values[i] = v.getInt();
             }
-            return new IntVector(values);
+            return new IntVector(values, nulls);
+        }
+        case Value.LONG: {
+            long[] values = new long[size];
+            long[] nulls = null;
+            for (int i = 0; i < size; i++) {
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE)
+                    nulls = ValueVector.setNull(nulls, i, size);
+                else
+                    values[i] = v.getLong();
+            }
+            return new LongVector(values, nulls);
+        }
+        case Value.DECIMAL: {
+            BigDecimal[] values = new BigDecimal[size];
+            long[] nulls = null;
+            for (int i = 0; i < size; i++) {
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE)
+                    nulls = ValueVector.setNull(nulls, i, size);
+                else
+                    values[i] = v.getBigDecimal();
+            }
+            DecimalVector vv = DecimalVector.valueOf(values, column.getScale());
+            vv.setNulls(nulls);
+            return vv;
+        }
+        case Value.DOUBLE: {
+            double[] values = new double[size];
+            long[] nulls = null;
+            for (int i = 0; i < size; i++) {
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE)
+                    nulls = ValueVector.setNull(nulls, i, size);
+                else
+                    values[i] = v.getDouble();
+            }
+            return new DoubleVector(values, nulls);
+        }
+        case Value.FLOAT: {
+            float[] values = new float[size];
+            long[] nulls = null;
+            for (int i = 0; i < size; i++) {
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE)
+                    nulls = ValueVector.setNull(nulls, i, size);
+                else
+                    values[i] = v.getFloat();
+            }
+            return new FloatVector(values, nulls);
+        }
+        case Value.DATE: {
+            int[] values = new int[size];
+            long[] nulls = null;
+            for (int i = 0; i < size; i++) {
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE)
+                    nulls = ValueVector.setNull(nulls, i, size);
+                else
+                    values[i] = DateVector.toAbsoluteDay(v);
+            }
+            return new DateVector(values, nulls);
+        }
+        case Value.TIME: {
+            long[] values = new long[size];
+            long[] nulls = null;
+            for (int i = 0; i < size; i++) {
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE)
+                    nulls = ValueVector.setNull(nulls, i, size);
+                else
+                    values[i] = ((ValueTime) v).getNanos();
+            }
+            return new TimeVector(values, nulls);
+        }
+        case Value.TIMESTAMP: {
+            long[] dateValues = new long[size];
+            long[] timeNanos = new long[size];
+            long[] nulls = null;
+            for (int i = 0; i < size; i++) {
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE) {
+                    nulls = ValueVector.setNull(nulls, i, size);
+                } else {
+                    ValueTimestamp ts = (ValueTimestamp) v;
+                    dateValues[i] = ts.getDateValue();
+                    timeNanos[i] = ts.getTimeNanos();
+                }
+            }
+            return new TimestampVector(dateValues, timeNanos, nulls);
         }
         case Value.STRING:
         case Value.STRING_FIXED:
         case Value.STRING_IGNORECASE: {
             String[] values = new String[size];
+            long[] nulls = null;
             for (int i = 0; i < size; i++) {
-                values[i] = batch.get(i).getValue(columnId).getString();
+                Value v = batch.get(i).getValue(columnId);
+                if (v == ValueNull.INSTANCE) {
+                    nulls = ValueVector.setNull(nulls, i, size);
+                    values[i] = "";
+                } else {
+                    values[i] = v.getString();
+                }
             }
-            return new StringVector(values);
+            return DictionaryStringVector.valueOf(values, nulls, column.getType() == Value.STRING_IGNORECASE);
         }
         default:
             return createDefaultValueVector(batch, column);
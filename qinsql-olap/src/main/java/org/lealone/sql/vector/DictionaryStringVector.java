@@ -0,0 +1,315 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+import org.lealone.db.value.ValueString;
+import org.lealone.db.value.ValueStringIgnoreCase;
+import org.lealone.sql.expression.condition.Comparison;
+
+// 字典编码的字符串向量，每一行只存放它在dictionary中的下标，适合不同值很少的列(例如状态、地区、类别)。
+// 条件先在字典上算一次，再按下标取结果，等值比较只需要比较下标
+public class DictionaryStringVector extends ValueVector {
+
+    // 不同的值不超过行数的1/DICTIONARY_RATIO时才用字典编码
+    private static final int DICTIONARY_RATIO = 4;
+
+    private final int[] codes;
+    private final String[] dictionary;
+    private Value[] dictionaryValues; // getValue时复用，不用每一行都创建ValueString
+    // 字典中的值保留原来的大小写，所以不区分大小写时只有大小写也相同的值才有相同的下标，
+    // 这时不能只比较下标，要先在字典上比较
+    private final boolean ignoreCase;
+
+    public DictionaryStringVector(int[] codes, String[] dictionary, long[] nulls) {
+        this(codes, dictionary, nulls, false);
+    }
+
+    public DictionaryStringVector(int[] codes, String[] dictionary, long[] nulls, boolean ignoreCase) {
+        this.codes = codes;
+        this.dictionary = dictionary;
+        this.nulls = nulls;
+        this.ignoreCase = ignoreCase;
+    }
+
+    // NULL的位置跟StringVector一样存放空串
+    public static ValueVector valueOf(String[] values, long[] nulls) {
+        return valueOf(values, nulls, false);
+    }
+
+    public static ValueVector valueOf(String[] values, long[] nulls, boolean ignoreCase) {
+        int size = values.length;
+        int max = size / DICTIONARY_RATIO;
+        HashMap<String, Integer> map = new HashMap<>();
+        int[] codes = new int[size];
+        for (int i = 0; i < size; i++) {
+            Integer code = map.get(values[i]);
+            if (code == null) {
+                if (map.size() >= max)
+                    return new StringVector(values, nulls, ignoreCase);
+                code = map.size();
+                map.put(values[i], code);
+            }
+            codes[i] = code;
+        }
+        String[] dictionary = new String[map.size()];
+        for (Map.Entry<String, Integer> e : map.entrySet()) {
+            dictionary[e.getValue()] = e.getKey();
+        }
+        return new DictionaryStringVector(codes, dictionary, nulls, ignoreCase);
+    }
+
+    // 下标只在这个向量(也就是这一批数据)中有效，GroupHashTable在一批内分组和去重时直接用下标做key
+    public int[] getCodes() {
+        return codes;
+    }
+
+    public String[] getDictionary() {
+        return dictionary;
+    }
+
+    // 对字典中的每个值做同样的转换(例如UPPER)后得到新的字典，下标不变，转换后相同的值要合并成一个，
+    // 跟row模式一样，这些函数的结果是区分大小写的VARCHAR
+    public DictionaryStringVector withDictionary(String[] newDictionary) {
+        HashMap<String, Integer> map = new HashMap<>();
+        int dlen = newDictionary.length;
+        int[] remap = new int[dlen];
+        boolean merged = false;
+        for (int i = 0; i < dlen; i++) {
+            Integer code = map.get(newDictionary[i]);
+            if (code == null) {
+                code = map.size();
+                map.put(newDictionary[i], code);
+            }
+            remap[i] = code;
+            if (code != i)
+                merged = true;
+        }
+        if (!merged)
+            return new DictionaryStringVector(codes, newDictionary, nulls);
+        String[] dictionary = new String[map.size()];
+        for (Map.Entry<String, Integer> e : map.entrySet()) {
+            dictionary[e.getValue()] = e.getKey();
+        }
+        int len = codes.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = remap[codes[i]];
+        }
+        return new DictionaryStringVector(a, dictionary, nulls);
+    }
+
+    public StringVector toStringVector() {
+        int len = codes.length;
+        String[] a = new String[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = dictionary[codes[i]];
+        }
+        return new StringVector(a, nulls, ignoreCase);
+    }
+
+    private StringVector getDictionaryVector() {
+        return new StringVector(dictionary, null, ignoreCase);
+    }
+
+    @Override
+    public int getValueType() {
+        return ignoreCase ? Value.STRING_IGNORECASE : Value.STRING;
+    }
+
+    @Override
+    public int size() {
+        return codes.length;
+    }
+
+    private int compareTo(String a, String b) {
+        return ignoreCase ? a.compareToIgnoreCase(b) : a.compareTo(b);
+    }
+
+    private int indexOf(String v) {
+        String[] dictionary = this.dictionary;
+        for (int i = 0; i < dictionary.length; i++) {
+            if (dictionary[i].equals(v))
+                return i;
+        }
+        return -1;
+    }
+
+    // 字典上每个值的结果按下标展开到每一行
+    private boolean[] gather(BooleanVector dictionaryResult) {
+        int[] codes = this.codes;
+        int len = codes.length;
+        boolean[] values = new boolean[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = dictionaryResult.isTrue(codes[i]);
+        }
+        return values;
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        int[] codes1 = this.codes;
+        int len = codes1.length;
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            if (ignoreCase || v0.getType() == Value.STRING_IGNORECASE)
+                return createBooleanVector(gather(getDictionaryVector().compare(vv, compareType)), nulls, null,
+                        compareType);
+            boolean[] values;
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                int code = indexOf(v0.getString());
+                values = new boolean[len];
+                for (int i = 0; i < len; i++) {
+                    values[i] = codes1[i] == code;
+                }
+                break;
+            }
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE: {
+                int code = indexOf(v0.getString());
+                values = new boolean[len];
+                for (int i = 0; i < len; i++) {
+                    values[i] = codes1[i] != code;
+                }
+                break;
+            }
+            default:
+                values = gather(getDictionaryVector().compare(vv, compareType));
+            }
+            return createBooleanVector(values, nulls, null, compareType);
+        }
+        if (vv instanceof DictionaryStringVector && ((DictionaryStringVector) vv).dictionary == dictionary
+                && !ignoreCase) {
+            // 共享同一个字典时只比较下标
+            DictionaryStringVector vv2 = (DictionaryStringVector) vv;
+            int[] codes2 = vv2.codes;
+            boolean[] values = new boolean[len];
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = codes1[i] == codes2[i];
+                }
+                return createBooleanVector(values, nulls, vv2.nulls, compareType);
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = codes1[i] != codes2[i];
+                }
+                return createBooleanVector(values, nulls, vv2.nulls, compareType);
+            }
+        }
+        return toStringVector().compare(vv, compareType);
+    }
+
+    @Override
+    public BooleanVector in(ConstantSet set) {
+        return createInResult(gather(getDictionaryVector().in(set)), set);
+    }
+
+    @Override
+    public BooleanVector like(LikePattern pattern) {
+        return new BooleanVector(gather(getDictionaryVector().like(pattern)), nulls);
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        if (dictionaryValues == null)
+            dictionaryValues = new Value[dictionary.length];
+        int code = codes[index];
+        Value v = dictionaryValues[code];
+        if (v == null) {
+            v = ignoreCase ? ValueStringIgnoreCase.get(dictionary[code]) : ValueString.get(dictionary[code]);
+            dictionaryValues[code] = v;
+        }
+        return v;
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int size;
+        if (bvv == null)
+            size = codes.length;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int len = codes.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        int index = -1;
+        int len = codes.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || compareTo(dictionary[codes[index]], dictionary[codes[i]]) > 0)
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        int index = -1;
+        int len = codes.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || compareTo(dictionary[codes[index]], dictionary[codes[i]]) < 0)
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        return toStringVector().blend(vv, mask);
+    }
+
+    // 过滤后的向量跟当前向量共享同一个字典
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new DictionaryStringVector(codes, dictionary, nulls, ignoreCase);
+        int size = bvv.trueCount();
+        int[] a = new int[size];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            a[j++] = codes[i];
+        }
+        DictionaryStringVector vv = new DictionaryStringVector(a, dictionary, filterNulls(bvv), ignoreCase);
+        vv.dictionaryValues = dictionaryValues;
+        return vv;
+    }
+}
@@ -5,6 +5,444 @@
  */
 package org.lealone.sql.vector;
 
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDouble;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
+
 public class DoubleVector extends ValueVector {
 
+    private double[] values;
+
+    public DoubleVector(double[] values) {
+        this.values = values;
+    }
+
+    public DoubleVector(double[] values, long[] nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    // 跟row模式的ValueDouble一样比较：NaN比其他值都大并且等于自身，0.0和-0.0相等
+    public static int compare(double a, double b) {
+        return a == b ? 0 : Double.compare(a, b);
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.DOUBLE;
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        switch (targetType) {
+        case Value.DOUBLE:
+            return this;
+        case Value.BOOLEAN: {
+            int len = values.length;
+            boolean[] a = new boolean[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = values[i] != 0;
+            }
+            return new BooleanVector(a, nulls);
+        }
+        default:
+            return this;
+        }
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        double[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            double v = v0.getDouble();
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) == 0;
+                }
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) >= 0;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) > 0;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) <= 0;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) < 0;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) != 0;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
+            }
+            return createBooleanVector(values, nulls, null, compareType);
+        }
+        DoubleVector vv2 = (DoubleVector) vv.convertTo(Value.DOUBLE);
+        double[] values2 = vv2.values;
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) == 0;
+            }
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) >= 0;
+            }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) > 0;
+            }
+            break;
+        case Comparison.SMALLER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) <= 0;
+            }
+            break;
+        case Comparison.SMALLER:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) < 0;
+            }
+            break;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) != 0;
+            }
+            break;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+        return createBooleanVector(values, nulls, vv2.nulls, compareType);
+    }
+
+    @Override
+    public ValueVector negate() {
+        double[] values1 = this.values;
+        double[] values = new double[values1.length];
+        for (int i = 0; i < values1.length; i++) {
+            values[i] = -values1[i];
+        }
+        return new DoubleVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        double[] values1 = this.values;
+        double[] values = new double[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new DoubleVector(values, allNulls(values.length));
+            double v = v0.getDouble();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] + v;
+            }
+            return new DoubleVector(values, this.nulls);
+        }
+        DoubleVector vv2 = (DoubleVector) vv;
+        double[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            values[i] = values1[i] + values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new DoubleVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        double[] values1 = this.values;
+        double[] values = new double[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new DoubleVector(values, allNulls(values.length));
+            double v = v0.getDouble();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] - v;
+            }
+            return new DoubleVector(values, this.nulls);
+        }
+        DoubleVector vv2 = (DoubleVector) vv;
+        double[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            values[i] = values1[i] - values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new DoubleVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector multiply(ValueVector vv) {
+        double[] values1 = this.values;
+        double[] values = new double[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new DoubleVector(values, allNulls(values.length));
+            double v = v0.getDouble();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] * v;
+            }
+            return new DoubleVector(values, this.nulls);
+        }
+        DoubleVector vv2 = (DoubleVector) vv;
+        double[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            values[i] = values1[i] * values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new DoubleVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector divide(ValueVector vv) {
+        double[] values1 = this.values;
+        double[] values = new double[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new DoubleVector(values, allNulls(values.length));
+            double v = v0.getDouble();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new DoubleVector(values, nulls); // 都是NULL，结果也都是NULL
+            }
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] / v;
+            }
+            return new DoubleVector(values, this.nulls);
+        }
+        DoubleVector vv2 = (DoubleVector) vv;
+        double[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            if (values2[i] == 0 && !isNull(nulls, i)) {
+                throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Double.toString(values1[i]));
+            }
+            values[i] = values1[i] / values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new DoubleVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector modulus(ValueVector vv) {
+        double[] values1 = this.values;
+        double[] values = new double[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new DoubleVector(values, allNulls(values.length));
+            double v = v0.getDouble();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new DoubleVector(values, nulls); // 都是NULL，结果也都是NULL
+            }
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] % v;
+            }
+            return new DoubleVector(values, this.nulls);
+        }
+        DoubleVector vv2 = (DoubleVector) vv;
+        double[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            if (values2[i] == 0 && !isNull(nulls, i)) {
+                throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Double.toString(values1[i]));
+            }
+            values[i] = values1[i] % values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new DoubleVector(values, nulls);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueDouble.get(values[index]);
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int size;
+        if (bvv == null)
+            size = values.length;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value sum() {
+        return sum(null);
+    }
+
+    @Override
+    public Value sum(ValueVector bvv) {
+        double sum = 0;
+        int len = values.length;
+        if (bvv == null && nulls == null) {
+            if (len == 0)
+                return ValueNull.INSTANCE;
+            for (int i = 0; i < len; i++) {
+                sum += values[i];
+            }
+            return ValueDouble.get(sum);
+        }
+        boolean found = false;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
+            sum += values[i];
+        }
+        return found ? ValueDouble.get(sum) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        boolean found = false;
+        double min = 0;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (!found || compare(values[i], min) < 0)
+                min = values[i];
+            found = true;
+        }
+        return found ? ValueDouble.get(min) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        boolean found = false;
+        double max = 0;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (!found || compare(values[i], max) > 0)
+                max = values[i];
+            found = true;
+        }
+        return found ? ValueDouble.get(max) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        double[] values1 = this.values;
+        int len = values1.length;
+        long[] bits = mask.getBits();
+        double[] values = new double[len];
+        if (vv instanceof SingleValueVector) {
+            SingleValueVector sv = (SingleValueVector) vv;
+            double v = sv.getValue() == ValueNull.INSTANCE ? 0 : sv.getValue().getDouble();
+            for (int i = 0; i < len; i++) {
+                values[i] = isSet(bits, i) ? v : values1[i];
+            }
+            return new DoubleVector(values, blendNulls(sv, mask));
+        }
+        if (!(vv instanceof DoubleVector))
+            return super.blend(vv, mask);
+        DoubleVector vv2 = (DoubleVector) vv;
+        double[] values2 = vv2.values;
+        for (int i = 0; i < len; i++) {
+            values[i] = isSet(bits, i) ? values2[i] : values1[i];
+        }
+        return new DoubleVector(values, blendNulls(vv2.nulls, mask));
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new DoubleVector(values, nulls);
+        int size = bvv.trueCount();
+        double[] a = new double[size];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            a[j++] = values[i];
+        }
+        return new DoubleVector(a, filterNulls(bvv));
+    }
 }
@@ -5,6 +5,429 @@
  */
 package org.lealone.sql.vector;
 
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDouble;
+import org.lealone.db.value.ValueFloat;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
+
 public class FloatVector extends ValueVector {
 
+    private float[] values;
+
+    public FloatVector(float[] values) {
+        this.values = values;
+    }
+
+    public FloatVector(float[] values, long[] nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public float[] getValues() {
+        return values;
+    }
+
+    // 跟row模式的ValueFloat一样比较：NaN比其他值都大并且等于自身，0.0和-0.0相等
+    public static int compare(float a, float b) {
+        return a == b ? 0 : Float.compare(a, b);
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.FLOAT;
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        switch (targetType) {
+        case Value.FLOAT:
+            return this;
+        case Value.DOUBLE: {
+            int len = values.length;
+            double[] a = new double[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = values[i];
+            }
+            return new DoubleVector(a, nulls);
+        }
+        case Value.BOOLEAN: {
+            int len = values.length;
+            boolean[] a = new boolean[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = values[i] != 0;
+            }
+            return new BooleanVector(a, nulls);
+        }
+        default:
+            return this;
+        }
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        float[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            float v = v0.getFloat();
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) == 0;
+                }
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) >= 0;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) > 0;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) <= 0;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) < 0;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compare(values1[i], v) != 0;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
+            }
+            return createBooleanVector(values, nulls, null, compareType);
+        }
+        FloatVector vv2 = (FloatVector) vv.convertTo(Value.FLOAT);
+        float[] values2 = vv2.values;
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) == 0;
+            }
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) >= 0;
+            }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) > 0;
+            }
+            break;
+        case Comparison.SMALLER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) <= 0;
+            }
+            break;
+        case Comparison.SMALLER:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) < 0;
+            }
+            break;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = compare(values1[i], values2[i]) != 0;
+            }
+            break;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+        return createBooleanVector(values, nulls, vv2.nulls, compareType);
+    }
+
+    @Override
+    public ValueVector negate() {
+        float[] values1 = this.values;
+        float[] values = new float[values1.length];
+        for (int i = 0; i < values1.length; i++) {
+            values[i] = -values1[i];
+        }
+        return new FloatVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        float[] values1 = this.values;
+        float[] values = new float[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new FloatVector(values, allNulls(values.length));
+            float v = v0.getFloat();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] + v;
+            }
+            return new FloatVector(values, this.nulls);
+        }
+        FloatVector vv2 = (FloatVector) vv;
+        float[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            values[i] = values1[i] + values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new FloatVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        float[] values1 = this.values;
+        float[] values = new float[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new FloatVector(values, allNulls(values.length));
+            float v = v0.getFloat();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] - v;
+            }
+            return new FloatVector(values, this.nulls);
+        }
+        FloatVector vv2 = (FloatVector) vv;
+        float[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            values[i] = values1[i] - values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new FloatVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector multiply(ValueVector vv) {
+        float[] values1 = this.values;
+        float[] values = new float[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new FloatVector(values, allNulls(values.length));
+            float v = v0.getFloat();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] * v;
+            }
+            return new FloatVector(values, this.nulls);
+        }
+        FloatVector vv2 = (FloatVector) vv;
+        float[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            values[i] = values1[i] * values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new FloatVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector divide(ValueVector vv) {
+        float[] values1 = this.values;
+        float[] values = new float[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new FloatVector(values, allNulls(values.length));
+            float v = v0.getFloat();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new FloatVector(values, nulls); // 都是NULL，结果也都是NULL
+            }
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] / v;
+            }
+            return new FloatVector(values, this.nulls);
+        }
+        FloatVector vv2 = (FloatVector) vv;
+        float[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            if (values2[i] == 0 && !isNull(nulls, i)) {
+                throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Float.toString(values1[i]));
+            }
+            values[i] = values1[i] / values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new FloatVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector modulus(ValueVector vv) {
+        float[] values1 = this.values;
+        float[] values = new float[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new FloatVector(values, allNulls(values.length));
+            float v = v0.getFloat();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new FloatVector(values, nulls); // 都是NULL，结果也都是NULL
+            }
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] % v;
+            }
+            return new FloatVector(values, this.nulls);
+        }
+        FloatVector vv2 = (FloatVector) vv;
+        float[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            if (values2[i] == 0 && !isNull(nulls, i)) {
+                throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Float.toString(values1[i]));
+            }
+            values[i] = values1[i] % values2[i];
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new FloatVector(values, nulls);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueFloat.get(values[index]);
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int size;
+        if (bvv == null)
+            size = values.length;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value sum() {
+        return sum(null);
+    }
+
+    @Override
+    public Value sum(ValueVector bvv) {
+        double sum = 0;
+        int len = values.length;
+        if (bvv == null && nulls == null) {
+            if (len == 0)
+                return ValueNull.INSTANCE;
+            for (int i = 0; i < len; i++) {
+                sum += values[i];
+            }
+            return ValueDouble.get(sum);
+        }
+        boolean found = false;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
+            sum += values[i];
+        }
+        return found ? ValueDouble.get(sum) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        boolean found = false;
+        float min = 0;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (!found || compare(values[i], min) < 0)
+                min = values[i];
+            found = true;
+        }
+        return found ? ValueFloat.get(min) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        boolean found = false;
+        float max = 0;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (!found || compare(values[i], max) > 0)
+                max = values[i];
+            found = true;
+        }
+        return found ? ValueFloat.get(max) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new FloatVector(values, nulls);
+        int size = bvv.trueCount();
+        float[] a = new float[size];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            a[j++] = values[i];
+        }
+        return new FloatVector(a, filterNulls(bvv));
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+
+// 分组聚合用的开放寻址哈希表，分组字段都是定长的整数类型时，每一组的key按字段编码成long，
+// 一批数据先按列把所有行的key解码出来并算出哈希值，再逐行线性探测得到组号(从0开始连续分配)，
+// 调用者按组号把聚合状态放在基本类型数组中，不用像ValueHashMap那样每一组都创建Value和HashMap。
+// 字符串的分组字段按这一批数据内的编码(字典下标)编成long，只在同一批中有效，所以只能用于每一批都clear的表
+public class GroupHashTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int keyCount; // 分组字段的个数
+    private final int width; // 每个key占用的long个数，最后一个long是各个分组字段的NULL标记
+    private long[] keys; // 按组号顺序存放的key
+    private int[] hashes; // 每一组的哈希值，扩容时不用重新计算
+    private int[] slots; // 存放组号+1，0表示空槽
+    private int mask;
+    private int groupCount;
+
+    // 一批数据解码出来的key和哈希值，批与批之间重用
+    private long[] batchKeys = new long[0];
+    private int[] batchHashes = new int[0];
+
+    public GroupHashTable(int keyCount) {
+        this.keyCount = keyCount;
+        width = keyCount + 1;
+        keys = new long[INITIAL_CAPACITY * width];
+        hashes = new int[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+        mask = slots.length - 1;
+    }
+
+    // 只有这些类型的分组字段才能编码成一个long
+    public static boolean isSupportedType(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * 这一批的分组字段向量能不能编码成long，字符串向量的编码只在当前这一批中有效。
+     */
+    public static boolean canEncodeInBatch(ValueVector[] vectors) {
+        for (ValueVector vv : vectors) {
+            if (!(vv instanceof IntVector || vv instanceof LongVector || vv instanceof ShortVector
+                    || vv instanceof ByteVector || vv instanceof DictionaryStringVector
+                    || vv instanceof StringVector))
+                return false;
+        }
+        return true;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    // 每个key占用的long个数，最后一个long是NULL标记
+    public int getWidth() {
+        return width;
+    }
+
+    public long getKey(int groupId, int index) {
+        return keys[groupId * width + index];
+    }
+
+    public int getHash(int groupId) {
+        return hashes[groupId];
+    }
+
+    // 按当前的组数估算占用的字节数: key、哈希值，再加上装载因子为0.5时的两个槽，
+    // clear之后数组还留着，如果按数组的大小算，溢出一次之后每一批都会超过上限
+    public long getMemory() {
+        return (long) groupCount * (width * 8 + 4 + 2 * 4);
+    }
+
+    // 清掉所有的组，数组留着给后面的组用
+    public void clear() {
+        Arrays.fill(slots, 0);
+        groupCount = 0;
+    }
+
+    /**
+     * 查找从offset开始的width个long组成的key，找不到时加入一个新组，返回组号。
+     */
+    public int findOrAdd(long[] key, int offset) {
+        return findOrAdd(key, offset, hash(key, offset, width));
+    }
+
+    /**
+     * 为这一批中要处理的行分配组号，放到groupIds中返回，groupIds不够大时会重新分配。
+     * vectors是各个分组字段的向量，positions为null时按0到rowCount-1的顺序读取，否则按positions中的位置读取。
+     */
+    public int[] getGroupIds(ValueVector[] vectors, int[] positions, int rowCount, int[] groupIds) {
+        if (groupIds == null || groupIds.length < rowCount)
+            groupIds = new int[rowCount];
+        decode(vectors, positions, rowCount);
+        long[] batchKeys = this.batchKeys;
+        int[] batchHashes = this.batchHashes;
+        for (int k = 0; k < rowCount; k++) {
+            groupIds[k] = findOrAdd(batchKeys, k * width, batchHashes[k]);
+        }
+        return groupIds;
+    }
+
+    // 按列解码，每一列的循环里只有一种向量类型，最后一次性算出所有行的哈希值
+    private void decode(ValueVector[] vectors, int[] positions, int rowCount) {
+        if (batchKeys.length < rowCount * width) {
+            batchKeys = new long[rowCount * width];
+            batchHashes = new int[rowCount];
+        }
+        long[] batchKeys = this.batchKeys;
+        Arrays.fill(batchKeys, 0, rowCount * width, 0);
+        for (int c = 0; c < keyCount; c++) {
+            ValueVector vv = vectors[c];
+            long nullBit = 1L << c;
+            if (vv instanceof IntVector) {
+                int[] values = ((IntVector) vv).getValues();
+                boolean hasNulls = vv.hasNulls();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (hasNulls && vv.isNull(i))
+                        batchKeys[k * width + keyCount] |= nullBit;
+                    else
+                        batchKeys[k * width + c] = values[i];
+                }
+            } else if (vv instanceof LongVector) {
+                long[] values = ((LongVector) vv).getValues();
+                boolean hasNulls = vv.hasNulls();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (hasNulls && vv.isNull(i))
+                        batchKeys[k * width + keyCount] |= nullBit;
+                    else
+                        batchKeys[k * width + c] = values[i];
+                }
+            } else if (vv instanceof DictionaryStringVector) {
+                int[] codes = ((DictionaryStringVector) vv).getCodes();
+                boolean hasNulls = vv.hasNulls();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (hasNulls && vv.isNull(i))
+                        batchKeys[k * width + keyCount] |= nullBit;
+                    else
+                        batchKeys[k * width + c] = codes[i];
+                }
+            } else if (vv instanceof StringVector) {
+                // 没有字典时在这一批内临时编码，每个不同的字符串只创建一个Integer
+                String[] values = ((StringVector) vv).getValues();
+                HashMap<String, Integer> codes = new HashMap<>();
+                boolean hasNulls = vv.hasNulls();
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    if (hasNulls && vv.isNull(i)) {
+                        batchKeys[k * width + keyCount] |= nullBit;
+                    } else {
+                        Integer code = codes.get(values[i]);
+                        if (code == null) {
+                            code = codes.size();
+                            codes.put(values[i], code);
+                        }
+                        batchKeys[k * width + c] = code;
+                    }
+                }
+            } else {
+                for (int k = 0; k < rowCount; k++) {
+                    int i = positions == null ? k : positions[k];
+                    Value v = vv.getValue(i);
+                    if (v == ValueNull.INSTANCE)
+                        batchKeys[k * width + keyCount] |= nullBit;
+                    else
+                        batchKeys[k * width + c] = v.getLong();
+                }
+            }
+        }
+        int[] batchHashes = this.batchHashes;
+        for (int k = 0; k < rowCount; k++) {
+            batchHashes[k] = hash(batchKeys, k * width, width);
+        }
+    }
+
+    private static int hash(long[] key, int offset, int width) {
+        long h = 0;
+        for (int c = 0; c < width; c++) {
+            h = (h + key[offset + c]) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int findOrAdd(long[] batchKeys, int offset, int hash) {
+        int[] slots = this.slots;
+        int i = hash & mask;
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0)
+                break;
+            int groupId = slot - 1;
+            if (hashes[groupId] == hash && equalsKey(groupId, batchKeys, offset))
+                return groupId;
+            i = (i + 1) & mask;
+        }
+        int groupId = groupCount++;
+        if (groupId == hashes.length) {
+            grow();
+            i = hash & mask; // 扩容后重新找空槽
+            while (this.slots[i] != 0)
+                i = (i + 1) & mask;
+        }
+        System.arraycopy(batchKeys, offset, keys, groupId * width, width);
+        hashes[groupId] = hash;
+        this.slots[i] = groupId + 1;
+        return groupId;
+    }
+
+    private boolean equalsKey(int groupId, long[] batchKeys, int offset) {
+        int start = groupId * width;
+        for (int c = 0; c < width; c++) {
+            if (keys[start + c] != batchKeys[offset + c])
+                return false;
+        }
+        return true;
+    }
+
+    // 组数和槽数一起翻倍，保证装载因子不超过0.5
+    private void grow() {
+        int capacity = hashes.length * 2;
+        keys = Arrays.copyOf(keys, capacity * width);
+        hashes = Arrays.copyOf(hashes, capacity);
+        slots = new int[capacity * 2];
+        mask = slots.length - 1;
+        for (int groupId = 0, count = groupCount - 1; groupId < count; groupId++) {
+            int i = hashes[groupId] & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = groupId + 1;
+        }
+    }
+
+    /**
+     * 把组号对应的key还原成各个分组字段的值，types是各个分组字段的类型。
+     */
+    public Value[] getKeyValues(int groupId, int[] types) {
+        Value[] keyValues = new Value[keyCount];
+        int start = groupId * width;
+        long nullBits = keys[start + keyCount];
+        for (int c = 0; c < keyCount; c++) {
+            if ((nullBits & (1L << c)) != 0)
+                keyValues[c] = ValueNull.INSTANCE;
+            else
+                keyValues[c] = ValueLong.get(keys[start + c]).convertTo(types[c]);
+        }
+        return keyValues;
+    }
+}
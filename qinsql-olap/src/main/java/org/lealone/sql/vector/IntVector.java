@@ -10,6 +10,7 @@ import org.lealone.db.api.ErrorCode;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueInt;
 import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
 import org.lealone.sql.expression.condition.Comparison;
 
 public class IntVector extends ValueVector {
@@ -20,6 +21,15 @@ public class IntVector extends ValueVector {
         this.values = values;
     }
 
+    public IntVector(int[] values, long[] nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public int[] getValues() {
+        return values;
+    }
+
     @Override
     public int getValueType() {
         return Value.INT;
@@ -37,7 +47,7 @@ public class IntVector extends ValueVector {
                 for (int i = 0; i < len; i++) {
                     a[i] = Integer.signum(values[i]) != 0;
                 }
-                return new BooleanVector(a);
+                return new BooleanVector(a, nulls);
             }
             case Value.BYTE: {
                 int len = values.length;
@@ -63,16 +73,33 @@ public class IntVector extends ValueVector {
                 for (int i = 0; i < len; i++) {
                     a[i] = values[i];
                 }
-                return new LongVector(a);
+                return new LongVector(a, nulls);
             }
             case Value.DECIMAL: {
-                // return ValueDecimal.get(BigDecimal.valueOf(getInt()));
+                int len = values.length;
+                long[] a = new long[len];
+                for (int i = 0; i < len; i++) {
+                    a[i] = values[i];
+                }
+                ValueVector dv = new DecimalVector(a, 0);
+                dv.setNulls(nulls);
+                return dv;
             }
             case Value.DOUBLE: {
-                // return ValueDouble.get(getInt());
+                int len = values.length;
+                double[] a = new double[len];
+                for (int i = 0; i < len; i++) {
+                    a[i] = values[i];
+                }
+                return new DoubleVector(a, nulls);
             }
             case Value.FLOAT: {
-                // return ValueFloat.get(getInt());
+                int len = values.length;
+                float[] a = new float[len];
+                for (int i = 0; i < len; i++) {
+                    a[i] = values[i];
+                }
+                return new FloatVector(a, nulls);
             }
             case Value.DATE: {
                 break;
@@ -169,77 +196,194 @@ public class IntVector extends ValueVector {
 
     @Override
     public BooleanVector compare(ValueVector vv, int compareType) {
-        switch (compareType) {
-        case Comparison.EQUAL: {
-            if (vv instanceof SingleValueVector) {
-                int[] values1 = this.values;
-                int v = ((SingleValueVector) vv).getValue().getInt();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
+        int[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            int v = v0.getInt();
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
                     values[i] = values1[i] == v;
                 }
-                return new BooleanVector(values);
-            }
-            int[] values1 = this.values;
-            int[] values2 = ((IntVector) vv).values;
-            boolean[] values = new boolean[values1.length];
-            for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i] == values2[i];
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] >= v;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] > v;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] <= v;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] < v;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] != v;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
             }
-            return new BooleanVector(values);
+            return createBooleanVector(values, nulls, null, compareType);
         }
+        IntVector vv2 = (IntVector) vv.convertTo(Value.INT);
+        int[] values2 = vv2.values;
+        switch (compareType) {
+        case Comparison.EQUAL:
         case Comparison.EQUAL_NULL_SAFE:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] == values2[i];
+            }
+            break;
         case Comparison.BIGGER_EQUAL:
-            return null;
-        case Comparison.BIGGER: {
-            if (vv instanceof SingleValueVector) {
-                int[] values1 = this.values;
-                int v = ((SingleValueVector) vv).getValue().getInt();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
-                    values[i] = values1[i] > v;
-                }
-                return new BooleanVector(values);
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] >= values2[i];
             }
-            return null;
-        }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] > values2[i];
+            }
+            break;
         case Comparison.SMALLER_EQUAL:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] <= values2[i];
+            }
+            break;
         case Comparison.SMALLER:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] < values2[i];
+            }
+            break;
         case Comparison.NOT_EQUAL:
-            return null;
         case Comparison.NOT_EQUAL_NULL_SAFE:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] != values2[i];
+            }
+            break;
         default:
             throw DbException.getInternalError("compareType=" + compareType);
         }
+        return createBooleanVector(values, nulls, vv2.nulls, compareType);
+    }
+
+    @Override
+    public BooleanVector in(ConstantSet set) {
+        if (!(set instanceof ConstantSet.LongSet))
+            return super.in(set);
+        ConstantSet.LongSet set2 = (ConstantSet.LongSet) set;
+        int[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = set2.contains(values1[i]);
+        }
+        return createInResult(values, set);
+    }
+
+    private static final int ADD = 0;
+    private static final int SUBTRACT = 1;
+    private static final int MULTIPLY = 2;
+
+    // 快速路径只能判断这一批数据中有没有溢出，有溢出时再逐行找出第一个溢出的非NULL行，
+    // 跟ValueInt一样抛出NUMERIC_VALUE_OUT_OF_RANGE_1，NULL对应的位置算出什么值都没关系
+    private static void checkOverflow(int[] values1, int[] values2, int v, int len, long[] nulls, int op) {
+        for (int i = 0; i < len; i++) {
+            long x = values1[i];
+            long y = values2 == null ? v : values2[i];
+            long r = op == ADD ? x + y : (op == SUBTRACT ? x - y : x * y);
+            if (r != (int) r && !isNull(nulls, i))
+                throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1, Long.toString(r));
+        }
+    }
+
+    // 绝对值的最大值，用来判断乘积是否可能溢出
+    private static long maxAbs(int[] values, int len) {
+        long max = 0;
+        for (int i = 0; i < len; i++) {
+            max = Math.max(max, Math.abs((long) values[i]));
+        }
+        return max;
+    }
+
+    @Override
+    public ValueVector negate() {
+        int[] values1 = this.values;
+        int len = values1.length;
+        int[] values = new int[len];
+        int overflow = 0;
+        for (int i = 0; i < len; i++) {
+            int x = values1[i];
+            values[i] = -x;
+            overflow |= x & -x; // 只有MIN_VALUE取反后还是负数
+        }
+        if (overflow < 0) {
+            for (int i = 0; i < len; i++) {
+                if (values1[i] == Integer.MIN_VALUE && !isNull(i))
+                    throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1,
+                            Long.toString(-(long) values1[i]));
+            }
+        }
+        return new IntVector(values, nulls);
     }
 
     @Override
     public ValueVector add(ValueVector vv) {
         if (vv instanceof SingleValueVector) {
             int[] values1 = this.values;
-            int v = ((SingleValueVector) vv).getValue().getInt();
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new IntVector(new int[values1.length], allNulls(values1.length));
+            int v = v0.getInt();
             int[] values = new int[values1.length];
+            int overflow = 0;
             for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i] + v;
+                int x = values1[i];
+                int r = x + v;
+                values[i] = r;
+                overflow |= (x ^ r) & (v ^ r); // 两个数的符号相同而结果的符号跟它们不同时就是溢出了
             }
-            return new IntVector(values);
+            if (overflow < 0)
+                checkOverflow(values1, null, v, values1.length, nulls, ADD);
+            return new IntVector(values, this.nulls);
         }
         int[] values1 = this.values;
-        int[] values2 = ((IntVector) vv).values;
+        IntVector vv2 = (IntVector) vv;
+        int[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
         int[] values = new int[values1.length];
         int len = Math.min(values1.length, values2.length);
         int i = 0;
+        int overflow = 0;
         for (; i < len; i++) {
-            values[i] = values1[i] + values2[i]; // TODO 可能会溢出
+            int x = values1[i];
+            int y = values2[i];
+            int r = x + y;
+            values[i] = r;
+            overflow |= (x ^ r) & (y ^ r);
         }
+        if (overflow < 0)
+            checkOverflow(values1, values2, 0, len, nulls, ADD);
         for (; i < values1.length; i++) {
             values[i] = values1[i];
         }
-        return new IntVector(values);
+        return new IntVector(values, nulls);
     }
 
     @Override
@@ -251,100 +395,183 @@ public class IntVector extends ValueVector {
     public ValueVector subtract(ValueVector vv) {
         if (vv instanceof SingleValueVector) {
             int[] values1 = this.values;
-            int v = ((SingleValueVector) vv).getValue().getInt();
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new IntVector(new int[values1.length], allNulls(values1.length));
+            int v = v0.getInt();
             int[] values = new int[values1.length];
+            int overflow = 0;
             for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i] - v;
+                int x = values1[i];
+                int r = x - v;
+                values[i] = r;
+                overflow |= (x ^ v) & (x ^ r); // 两个数的符号不同而结果的符号跟被减数不同时就是溢出了
             }
-            return new IntVector(values);
+            if (overflow < 0)
+                checkOverflow(values1, null, v, values1.length, nulls, SUBTRACT);
+            return new IntVector(values, this.nulls);
         }
         int[] values1 = this.values;
-        int[] values2 = ((IntVector) vv).values;
+        IntVector vv2 = (IntVector) vv;
+        int[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
         int[] values = new int[values1.length];
         int len = Math.min(values1.length, values2.length);
         int i = 0;
+        int overflow = 0;
         for (; i < len; i++) {
-            values[i] = values1[i] - values2[i]; // TODO 可能会溢出
+            int x = values1[i];
+            int y = values2[i];
+            int r = x - y;
+            values[i] = r;
+            overflow |= (x ^ y) & (x ^ r);
         }
+        if (overflow < 0)
+            checkOverflow(values1, values2, 0, len, nulls, SUBTRACT);
         for (; i < values1.length; i++) {
             values[i] = values1[i];
         }
-        return new IntVector(values);
+        return new IntVector(values, nulls);
     }
 
     @Override
     public ValueVector multiply(ValueVector vv) {
         if (vv instanceof SingleValueVector) {
             int[] values1 = this.values;
-            int v = ((SingleValueVector) vv).getValue().getInt();
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new IntVector(new int[values1.length], allNulls(values1.length));
+            int v = v0.getInt();
             int[] values = new int[values1.length];
-            for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i] * v;
+            if (maxAbs(values1, values1.length) * Math.abs((long) v) <= Integer.MAX_VALUE) {
+                for (int i = 0; i < values1.length; i++) {
+                    values[i] = values1[i] * v;
+                }
+            } else {
+                long overflow = 0;
+                for (int i = 0; i < values1.length; i++) {
+                    long r = (long) values1[i] * v;
+                    values[i] = (int) r;
+                    overflow |= r ^ (int) r;
+                }
+                if (overflow != 0)
+                    checkOverflow(values1, null, v, values1.length, nulls, MULTIPLY);
             }
-            return new IntVector(values);
+            return new IntVector(values, this.nulls);
         }
         int[] values1 = this.values;
-        int[] values2 = ((IntVector) vv).values;
+        IntVector vv2 = (IntVector) vv;
+        int[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
         int[] values = new int[values1.length];
         int len = Math.min(values1.length, values2.length);
         int i = 0;
-        for (; i < len; i++) {
-            values[i] = values1[i] * values2[i]; // TODO 可能会溢出
+        // 先用两边绝对值的最大值判断乘积会不会溢出，不会溢出时走不需要检查的快速路径，否则用long计算
+        if (maxAbs(values1, len) * maxAbs(values2, len) <= Integer.MAX_VALUE) {
+            for (; i < len; i++) {
+                values[i] = values1[i] * values2[i];
+            }
+        } else {
+            long overflow = 0;
+            for (; i < len; i++) {
+                long r = (long) values1[i] * values2[i];
+                values[i] = (int) r;
+                overflow |= r ^ (int) r;
+            }
+            if (overflow != 0)
+                checkOverflow(values1, values2, 0, len, nulls, MULTIPLY);
         }
         for (; i < values1.length; i++) {
             values[i] = values1[i];
         }
-        return new IntVector(values);
+        return new IntVector(values, nulls);
     }
 
     @Override
     public ValueVector divide(ValueVector vv) {
         if (vv instanceof SingleValueVector) {
             int[] values1 = this.values;
-            int v = ((SingleValueVector) vv).getValue().getInt();
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new IntVector(new int[values1.length], allNulls(values1.length));
+            int v = v0.getInt();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new IntVector(new int[values1.length], nulls); // 都是NULL，结果也都是NULL
+            }
+            if (v == -1) // MIN_VALUE / -1会溢出，跟取反一样处理
+                return negate();
             int[] values = new int[values1.length];
             for (int i = 0; i < values1.length; i++) {
                 values[i] = values1[i] / v;
             }
-            return new IntVector(values);
+            return new IntVector(values, this.nulls);
         }
         int[] values1 = this.values;
-        int[] values2 = ((IntVector) vv).values;
+        IntVector vv2 = (IntVector) vv;
+        int[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
         int[] values = new int[values1.length];
         int len = Math.min(values1.length, values2.length);
         int i = 0;
         for (; i < len; i++) {
-            values[i] = values1[i] / values2[i]; // TODO 可能会溢出
+            int y = values2[i];
+            if (y == 0) {
+                if (!isNull(nulls, i))
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Integer.toString(values1[i]));
+                continue; // NULL对应的位置不用计算，否则会抛出ArithmeticException
+            }
+            if (y == -1 && values1[i] == Integer.MIN_VALUE && !isNull(nulls, i))
+                throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1,
+                        Long.toString(-(long) Integer.MIN_VALUE));
+            values[i] = values1[i] / y;
         }
         for (; i < values1.length; i++) {
             values[i] = values1[i];
         }
-        return new IntVector(values);
+        return new IntVector(values, nulls);
     }
 
     @Override
     public ValueVector modulus(ValueVector vv) {
         if (vv instanceof SingleValueVector) {
             int[] values1 = this.values;
-            int v = ((SingleValueVector) vv).getValue().getInt();
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new IntVector(new int[values1.length], allNulls(values1.length));
+            int v = v0.getInt();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new IntVector(new int[values1.length], nulls); // 都是NULL，结果也都是NULL
+            }
             int[] values = new int[values1.length];
             for (int i = 0; i < values1.length; i++) {
                 values[i] = values1[i] % v;
             }
-            return new IntVector(values);
+            return new IntVector(values, this.nulls);
         }
         int[] values1 = this.values;
-        int[] values2 = ((IntVector) vv).values;
+        IntVector vv2 = (IntVector) vv;
+        int[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
         int[] values = new int[values1.length];
         int len = Math.min(values1.length, values2.length);
         int i = 0;
         for (; i < len; i++) {
-            values[i] = values1[i] % values2[i]; // TODO 可能会溢出
+            int y = values2[i];
+            if (y == 0) {
+                if (!isNull(nulls, i))
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Integer.toString(values1[i]));
+                continue;
+            }
+            values[i] = values1[i] % y; // MIN_VALUE % -1的结果是0，不会溢出
         }
         for (; i < values1.length; i++) {
             values[i] = values1[i];
         }
-        return new IntVector(values);
+        return new IntVector(values, nulls);
     }
 
     @Override
@@ -354,6 +581,8 @@ public class IntVector extends ValueVector {
 
     @Override
     public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
         return ValueInt.get(values[index]);
     }
 
@@ -366,17 +595,22 @@ public class IntVector extends ValueVector {
             size = bvv.trueCount();
         Value[] a = new Value[size];
         int j = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv == null || bvv.isTrue(i))
-                a[j++] = getValue(i);
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
         }
         return a;
     }
 
     @Override
     public Value sum() {
-        int sum = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
+        int len = values.length;
+        if (nulls != null || len == 0)
+            return sum(null);
+        long sum = 0; // SUM(INT)的结果是LONG，用long累加才不会溢出
+        for (int i = 0; i < len; i++) {
             sum += values[i];
         }
         return ValueLong.get(sum);
@@ -384,71 +618,94 @@ public class IntVector extends ValueVector {
 
     @Override
     public Value sum(ValueVector bvv) {
-        if (bvv == null)
+        if (bvv == null && nulls == null && values.length > 0)
             return sum();
-        int sum = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv.isTrue(i))
-                sum += values[i];
+        boolean found = false;
+        long sum = 0;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
+            sum += values[i];
         }
-        return ValueLong.get(sum);
+        return found ? ValueLong.get(sum) : ValueNull.INSTANCE;
     }
 
     @Override
     public Value min() {
-        int min = Integer.MAX_VALUE;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (min > values[i])
-                min = values[i];
-        }
-        return ValueInt.get(min);
+        return min(null);
     }
 
     @Override
     public Value min(ValueVector bvv) {
-        if (bvv == null)
-            return min();
+        boolean found = false;
         int min = Integer.MAX_VALUE;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv.isTrue(i) && min > values[i])
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
+            if (min > values[i])
                 min = values[i];
         }
-        return ValueInt.get(min);
+        return found ? ValueInt.get(min) : ValueNull.INSTANCE;
     }
 
     @Override
     public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        boolean found = false;
         int max = Integer.MIN_VALUE;
-        for (int i = 0, len = values.length; i < len; i++) {
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
             if (max < values[i])
                 max = values[i];
         }
-        return ValueInt.get(max);
+        return found ? ValueInt.get(max) : ValueNull.INSTANCE;
     }
 
     @Override
-    public Value max(ValueVector bvv) {
-        if (bvv == null)
-            return min(bvv);
-        int max = Integer.MIN_VALUE;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv.isTrue(i) && max < values[i])
-                max = values[i];
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        int[] values1 = this.values;
+        int len = values1.length;
+        long[] bits = mask.getBits();
+        int[] values = new int[len];
+        if (vv instanceof SingleValueVector) {
+            SingleValueVector sv = (SingleValueVector) vv;
+            int v = sv.getValue() == ValueNull.INSTANCE ? 0 : sv.getValue().getInt();
+            for (int i = 0; i < len; i++) {
+                values[i] = isSet(bits, i) ? v : values1[i];
+            }
+            return new IntVector(values, blendNulls(sv, mask));
+        }
+        if (!(vv instanceof IntVector))
+            return super.blend(vv, mask);
+        IntVector vv2 = (IntVector) vv;
+        int[] values2 = vv2.values;
+        for (int i = 0; i < len; i++) {
+            values[i] = isSet(bits, i) ? values2[i] : values1[i];
         }
-        return ValueInt.get(max);
+        return new IntVector(values, blendNulls(vv2.nulls, mask));
     }
 
     @Override
     public ValueVector filter(ValueVector bvv) {
         if (bvv == null)
-            return new IntVector(values);
+            return new IntVector(values, nulls);
         int size = bvv.trueCount();
         int[] a = new int[size];
         int j = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv == null || bvv.isTrue(i))
-                a[j++] = values[i];
+        for (int i : getSelection(bvv)) {
+            a[j++] = values[i];
         }
-        return new IntVector(a);
+        return new IntVector(a, filterNulls(bvv));
     }
 }
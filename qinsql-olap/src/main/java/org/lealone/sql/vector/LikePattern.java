@@ -0,0 +1,191 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.session.ServerSession;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.Expression;
+import org.lealone.sql.expression.condition.CompareLike;
+
+// LIKE的模式只在第一次用到时分析一次，常见的几种模式不需要用正则表达式，
+// 忽略大小写时也不用每一行都调用toUpperCase
+public class LikePattern {
+
+    public static final int EXACT = 0; // abc
+    public static final int PREFIX = 1; // abc%
+    public static final int SUFFIX = 2; // %abc
+    public static final int CONTAINS = 3; // %abc%
+    public static final int GENERAL = 4; // 其他带有_或中间有%的模式，转成正则表达式
+    public static final int REGEXP = 5; // REGEXP运算符
+
+    private static final int PERCENT = -1;
+    private static final int UNDERSCORE = -2;
+
+    private final int type;
+    private final String text; // 去掉了通配符和转义字符后的文本
+    private final boolean ignoreCase;
+    private final Pattern regex;
+
+    private LikePattern(int type, String text, boolean ignoreCase, Pattern regex) {
+        this.type = type;
+        this.text = text;
+        this.ignoreCase = ignoreCase;
+        this.regex = regex;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public Pattern getRegex() {
+        return regex;
+    }
+
+    /**
+     * 模式和转义字符都是常量时才能预先编译，否则返回null，由调用者逐行计算
+     */
+    public static LikePattern create(CompareLike e, ServerSession session) {
+        Expression right = e.getRight();
+        Expression escape = e.getEscape();
+        if (!right.isConstant() || (escape != null && !escape.isConstant()))
+            return null;
+        Value p = right.getValue(session);
+        if (p == ValueNull.INSTANCE)
+            return null;
+        boolean ignoreCase = e.getLeft().getType() == Value.STRING_IGNORECASE;
+        if (e.isRegexp())
+            return compileRegexp(p.getString(), ignoreCase);
+        int escapeChar = '\\';
+        if (escape != null) {
+            String es = escape.getValue(session).getString();
+            if (es != null) {
+                if (es.length() > 1)
+                    return null; // 由CompareLike抛出异常
+                escapeChar = es.length() == 0 ? -1 : es.charAt(0);
+            }
+        }
+        return compile(p.getString(), escapeChar, ignoreCase);
+    }
+
+    public static LikePattern compileRegexp(String pattern, boolean ignoreCase) {
+        try {
+            int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            return new LikePattern(REGEXP, pattern, ignoreCase, Pattern.compile(pattern, flags));
+        } catch (PatternSyntaxException e) {
+            throw DbException.get(ErrorCode.LIKE_ESCAPE_ERROR_1, e, pattern);
+        }
+    }
+
+    /**
+     * @param escape 转义字符，小于0时表示没有转义字符
+     */
+    public static LikePattern compile(String pattern, int escape, boolean ignoreCase) {
+        int len = pattern.length();
+        int[] tokens = new int[len];
+        int count = 0;
+        boolean hasUnderscore = false;
+        for (int i = 0; i < len; i++) {
+            int c = pattern.charAt(i);
+            if (c == escape) {
+                if (i >= len - 1) {
+                    throw DbException.get(ErrorCode.LIKE_ESCAPE_ERROR_1, pattern);
+                }
+                tokens[count++] = pattern.charAt(++i);
+            } else if (c == '%') {
+                if (count == 0 || tokens[count - 1] != PERCENT) // 连续的%只保留一个
+                    tokens[count++] = PERCENT;
+            } else if (c == '_') {
+                tokens[count++] = UNDERSCORE;
+                hasUnderscore = true;
+            } else {
+                tokens[count++] = c;
+            }
+        }
+        int start = count > 0 && tokens[0] == PERCENT ? 1 : 0;
+        int end = count > start && tokens[count - 1] == PERCENT ? count - 1 : count;
+        boolean middlePercent = false;
+        StringBuilder text = new StringBuilder(count);
+        for (int i = start; i < end; i++) {
+            if (tokens[i] == PERCENT)
+                middlePercent = true;
+            else
+                text.append((char) tokens[i]);
+        }
+        if (!hasUnderscore && !middlePercent) {
+            int type;
+            if (start == 0)
+                type = end == count ? EXACT : PREFIX;
+            else
+                type = end == count ? SUFFIX : CONTAINS;
+            return new LikePattern(type, text.toString(), ignoreCase, null);
+        }
+        StringBuilder buff = new StringBuilder(len + 16);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int t = tokens[i];
+            if (t >= 0) {
+                literal.append((char) t);
+                continue;
+            }
+            if (literal.length() > 0) {
+                buff.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+            }
+            buff.append(t == PERCENT ? ".*" : ".");
+        }
+        if (literal.length() > 0)
+            buff.append(Pattern.quote(literal.toString()));
+        int flags = Pattern.DOTALL;
+        if (ignoreCase)
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        return new LikePattern(GENERAL, pattern, ignoreCase, Pattern.compile(buff.toString(), flags));
+    }
+
+    public boolean matches(String s) {
+        switch (type) {
+        case EXACT:
+            return ignoreCase ? s.equalsIgnoreCase(text) : s.equals(text);
+        case PREFIX:
+            return s.regionMatches(ignoreCase, 0, text, 0, text.length());
+        case SUFFIX: {
+            int offset = s.length() - text.length();
+            return offset >= 0 && s.regionMatches(ignoreCase, offset, text, 0, text.length());
+        }
+        case CONTAINS:
+            return ignoreCase ? containsIgnoreCase(s, text) : s.contains(text);
+        case GENERAL:
+            return regex.matcher(s).matches();
+        case REGEXP:
+            return regex.matcher(s).find();
+        default:
+            throw DbException.getInternalError("type=" + type);
+        }
+    }
+
+    // 逐个位置用regionMatches比较，不需要生成大写的拷贝
+    public static boolean containsIgnoreCase(String s, String text) {
+        int n = text.length();
+        for (int i = 0, max = s.length() - n; i <= max; i++) {
+            if (s.regionMatches(true, i, text, 0, n))
+                return true;
+        }
+        return false;
+    }
+}
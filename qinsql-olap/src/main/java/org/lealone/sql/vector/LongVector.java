@@ -5,7 +5,595 @@
  */
 package org.lealone.sql.vector;
 
+import java.math.BigDecimal;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDecimal;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
+
 public class LongVector extends ValueVector {
+
+    private long[] values;
+
     public LongVector(long[] values) {
+        this.values = values;
+    }
+
+    public LongVector(long[] values, long[] nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public long[] getValues() {
+        return values;
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.LONG;
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        switch (targetType) {
+        case Value.LONG:
+            return this;
+        case Value.BOOLEAN: {
+            int len = values.length;
+            boolean[] a = new boolean[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = values[i] != 0;
+            }
+            return new BooleanVector(a, nulls);
+        }
+        case Value.INT: {
+            int len = values.length;
+            int[] a = new int[len];
+            for (int i = 0; i < len; i++) {
+                long x = values[i];
+                if (x > Integer.MAX_VALUE || x < Integer.MIN_VALUE) {
+                    throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1, Long.toString(x));
+                }
+                a[i] = (int) x;
+            }
+            return new IntVector(a, nulls);
+        }
+        case Value.DECIMAL: {
+            int len = values.length;
+            BigDecimal[] a = new BigDecimal[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = BigDecimal.valueOf(values[i]);
+            }
+            ValueVector dv = DecimalVector.valueOf(a, 0);
+            dv.setNulls(nulls);
+            return dv;
+        }
+        case Value.DOUBLE: {
+            int len = values.length;
+            double[] a = new double[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = values[i];
+            }
+            return new DoubleVector(a, nulls);
+        }
+        case Value.FLOAT: {
+            int len = values.length;
+            float[] a = new float[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = values[i];
+            }
+            return new FloatVector(a, nulls);
+        }
+        default:
+            return this;
+        }
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        long[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            long v = v0.getLong();
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] == v;
+                }
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] >= v;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] > v;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] <= v;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] < v;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] != v;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
+            }
+            return createBooleanVector(values, nulls, null, compareType);
+        }
+        LongVector vv2 = (LongVector) vv.convertTo(Value.LONG);
+        long[] values2 = vv2.values;
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] == values2[i];
+            }
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] >= values2[i];
+            }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] > values2[i];
+            }
+            break;
+        case Comparison.SMALLER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] <= values2[i];
+            }
+            break;
+        case Comparison.SMALLER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] < values2[i];
+            }
+            break;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] != values2[i];
+            }
+            break;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+        return createBooleanVector(values, nulls, vv2.nulls, compareType);
+    }
+
+    @Override
+    public BooleanVector in(ConstantSet set) {
+        if (!(set instanceof ConstantSet.LongSet))
+            return super.in(set);
+        ConstantSet.LongSet set2 = (ConstantSet.LongSet) set;
+        long[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = set2.contains(values1[i]);
+        }
+        return createInResult(values, set);
+    }
+
+    private static final int ADD = 0;
+    private static final int SUBTRACT = 1;
+    private static final int MULTIPLY = 2;
+
+    // 快速路径只能判断这一批数据中有没有溢出，有溢出时再逐行找出第一个溢出的非NULL行，
+    // 跟ValueLong一样抛出NUMERIC_VALUE_OUT_OF_RANGE_1
+    private static void checkOverflow(long[] values1, long[] values2, long v, int len, long[] nulls, int op) {
+        for (int i = 0; i < len; i++) {
+            long x = values1[i];
+            long y = values2 == null ? v : values2[i];
+            boolean overflow;
+            switch (op) {
+            case ADD: {
+                long r = x + y;
+                overflow = ((x ^ r) & (y ^ r)) < 0;
+                break;
+            }
+            case SUBTRACT: {
+                long r = x - y;
+                overflow = ((x ^ y) & (x ^ r)) < 0;
+                break;
+            }
+            default:
+                overflow = Math.multiplyHigh(x, y) != ((x * y) >> 63);
+            }
+            if (overflow && !isNull(nulls, i))
+                throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1, Long.toString(x));
+        }
+    }
+
+    // 绝对值的最大值，有MIN_VALUE时返回Long.MAX_VALUE，用来判断乘积是否可能溢出
+    private static long maxAbs(long[] values, int len) {
+        long max = 0;
+        for (int i = 0; i < len; i++) {
+            long a = Math.abs(values[i]);
+            max = Math.max(max, a < 0 ? Long.MAX_VALUE : a);
+        }
+        return max;
+    }
+
+    private static boolean mayOverflow(long maxAbs1, long maxAbs2) {
+        return Math.multiplyHigh(maxAbs1, maxAbs2) != 0 || maxAbs1 * maxAbs2 < 0;
+    }
+
+    @Override
+    public ValueVector negate() {
+        long[] values1 = this.values;
+        long[] values = new long[values1.length];
+        long overflow = 0;
+        for (int i = 0; i < values1.length; i++) {
+            long x = values1[i];
+            values[i] = -x;
+            overflow |= x & -x; // 只有MIN_VALUE取反后还是负数
+        }
+        if (overflow < 0) {
+            for (int i = 0; i < values1.length; i++) {
+                if (values1[i] == Long.MIN_VALUE && !isNull(i))
+                    throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1, Long.toString(values1[i]));
+            }
+        }
+        return new LongVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        long[] values1 = this.values;
+        long[] values = new long[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new LongVector(values, allNulls(values.length));
+            long v = v0.getLong();
+            long overflow = 0;
+            for (int i = 0; i < values1.length; i++) {
+                long x = values1[i];
+                long r = x + v;
+                values[i] = r;
+                overflow |= (x ^ r) & (v ^ r); // 两个数的符号相同而结果的符号跟它们不同时就是溢出了
+            }
+            if (overflow < 0)
+                checkOverflow(values1, null, v, values1.length, nulls, ADD);
+            return new LongVector(values, this.nulls);
+        }
+        LongVector vv2 = (LongVector) vv;
+        long[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        long overflow = 0;
+        for (; i < len; i++) {
+            long x = values1[i];
+            long y = values2[i];
+            long r = x + y;
+            values[i] = r;
+            overflow |= (x ^ r) & (y ^ r);
+        }
+        if (overflow < 0)
+            checkOverflow(values1, values2, 0, len, nulls, ADD);
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new LongVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        long[] values1 = this.values;
+        long[] values = new long[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new LongVector(values, allNulls(values.length));
+            long v = v0.getLong();
+            long overflow = 0;
+            for (int i = 0; i < values1.length; i++) {
+                long x = values1[i];
+                long r = x - v;
+                values[i] = r;
+                overflow |= (x ^ v) & (x ^ r); // 两个数的符号不同而结果的符号跟被减数不同时就是溢出了
+            }
+            if (overflow < 0)
+                checkOverflow(values1, null, v, values1.length, nulls, SUBTRACT);
+            return new LongVector(values, this.nulls);
+        }
+        LongVector vv2 = (LongVector) vv;
+        long[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        long overflow = 0;
+        for (; i < len; i++) {
+            long x = values1[i];
+            long y = values2[i];
+            long r = x - y;
+            values[i] = r;
+            overflow |= (x ^ y) & (x ^ r);
+        }
+        if (overflow < 0)
+            checkOverflow(values1, values2, 0, len, nulls, SUBTRACT);
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new LongVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector multiply(ValueVector vv) {
+        long[] values1 = this.values;
+        long[] values = new long[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new LongVector(values, allNulls(values.length));
+            long v = v0.getLong();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] * v;
+            }
+            long abs = Math.abs(v);
+            if (mayOverflow(maxAbs(values1, values1.length), abs < 0 ? Long.MAX_VALUE : abs))
+                checkOverflow(values1, null, v, values1.length, nulls, MULTIPLY);
+            return new LongVector(values, this.nulls);
+        }
+        LongVector vv2 = (LongVector) vv;
+        long[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            values[i] = values1[i] * values2[i];
+        }
+        // 两边绝对值的最大值相乘都不会溢出时就不用逐行检查了
+        if (mayOverflow(maxAbs(values1, len), maxAbs(values2, len)))
+            checkOverflow(values1, values2, 0, len, nulls, MULTIPLY);
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new LongVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector divide(ValueVector vv) {
+        long[] values1 = this.values;
+        long[] values = new long[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new LongVector(values, allNulls(values.length));
+            long v = v0.getLong();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new LongVector(values, nulls); // 都是NULL，结果也都是NULL
+            }
+            if (v == -1) // MIN_VALUE / -1会溢出，跟取反一样处理
+                return negate();
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] / v;
+            }
+            return new LongVector(values, this.nulls);
+        }
+        LongVector vv2 = (LongVector) vv;
+        long[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            long y = values2[i];
+            if (y == 0) {
+                if (!isNull(nulls, i))
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Long.toString(values1[i]));
+                continue; // NULL对应的位置不用计算，否则会抛出ArithmeticException
+            }
+            if (y == -1 && values1[i] == Long.MIN_VALUE && !isNull(nulls, i))
+                throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1, Long.toString(values1[i]));
+            values[i] = values1[i] / y;
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new LongVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector modulus(ValueVector vv) {
+        long[] values1 = this.values;
+        long[] values = new long[values1.length];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new LongVector(values, allNulls(values.length));
+            long v = v0.getLong();
+            if (v == 0) {
+                if (hasNonNull())
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, v0.getSQL());
+                return new LongVector(values, nulls); // 都是NULL，结果也都是NULL
+            }
+            for (int i = 0; i < values1.length; i++) {
+                values[i] = values1[i] % v;
+            }
+            return new LongVector(values, this.nulls);
+        }
+        LongVector vv2 = (LongVector) vv;
+        long[] values2 = vv2.values;
+        long[] nulls = orNulls(this.nulls, vv2.nulls);
+        int len = Math.min(values1.length, values2.length);
+        int i = 0;
+        for (; i < len; i++) {
+            long y = values2[i];
+            if (y == 0) {
+                if (!isNull(nulls, i))
+                    throw DbException.get(ErrorCode.DIVISION_BY_ZERO_1, Long.toString(values1[i]));
+                continue;
+            }
+            values[i] = values1[i] % y;
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new LongVector(values, nulls);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueLong.get(values[index]);
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int size;
+        if (bvv == null)
+            size = values.length;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value sum() {
+        return sum(null);
+    }
+
+    @Override
+    public Value sum(ValueVector bvv) {
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        int n = sel == null ? len : sel.length;
+        if (n == 0)
+            return ValueNull.INSTANCE;
+        long sum = 0;
+        long overflow = 0;
+        for (int k = 0; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            long x = values[i];
+            long r = sum + x;
+            overflow |= (sum ^ r) & (x ^ r);
+            sum = r;
+        }
+        if (overflow < 0) {
+            // SUM(LONG)的结果是DECIMAL，溢出时改用BigDecimal重新累加
+            BigDecimal bd = BigDecimal.ZERO;
+            for (int k = 0; k < n; k++) {
+                int i = sel == null ? k : sel[k];
+                bd = bd.add(BigDecimal.valueOf(values[i]));
+            }
+            return ValueDecimal.get(bd);
+        }
+        return ValueLong.get(sum);
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        boolean found = false;
+        long min = Long.MAX_VALUE;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
+            if (min > values[i])
+                min = values[i];
+        }
+        return found ? ValueLong.get(min) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        boolean found = false;
+        long max = Long.MIN_VALUE;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            found = true;
+            if (max < values[i])
+                max = values[i];
+        }
+        return found ? ValueLong.get(max) : ValueNull.INSTANCE;
+    }
+
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        long[] values1 = this.values;
+        int len = values1.length;
+        long[] bits = mask.getBits();
+        long[] values = new long[len];
+        if (vv instanceof SingleValueVector) {
+            SingleValueVector sv = (SingleValueVector) vv;
+            long v = sv.getValue() == ValueNull.INSTANCE ? 0 : sv.getValue().getLong();
+            for (int i = 0; i < len; i++) {
+                values[i] = isSet(bits, i) ? v : values1[i];
+            }
+            return new LongVector(values, blendNulls(sv, mask));
+        }
+        if (!(vv instanceof LongVector))
+            return super.blend(vv, mask);
+        LongVector vv2 = (LongVector) vv;
+        long[] values2 = vv2.values;
+        for (int i = 0; i < len; i++) {
+            values[i] = isSet(bits, i) ? values2[i] : values1[i];
+        }
+        return new LongVector(values, blendNulls(vv2.nulls, mask));
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new LongVector(values, nulls);
+        int size = bvv.trueCount();
+        long[] a = new long[size];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            a[j++] = values[i];
+        }
+        return new LongVector(a, filterNulls(bvv));
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.util.Arrays;
+
+import org.lealone.db.value.Value;
+
+// 被选中的行在这一批数据中的位置(从小到大)，跟着批一起传递，
+// 各个列向量不用再按条件各自生成一份过滤后的拷贝，直接按这些位置读取即可
+public class SelectionVector extends ValueVector {
+
+    private final int[] positions;
+    private final int rowCount; // 这一批数据总的行数
+
+    public SelectionVector(int[] positions, int rowCount) {
+        this.positions = positions;
+        this.rowCount = rowCount;
+    }
+
+    public static SelectionVector valueOf(ValueVector bvv) {
+        if (bvv instanceof SelectionVector)
+            return (SelectionVector) bvv;
+        int[] positions = new int[bvv.trueCount()];
+        int j = 0;
+        for (int i = bvv.nextSetBit(0); i >= 0; i = bvv.nextSetBit(i + 1)) {
+            positions[j++] = i;
+        }
+        return new SelectionVector(positions, bvv.size());
+    }
+
+    public int[] getPositions() {
+        return positions;
+    }
+
+    // 选中的行占比
+    public double getSelectivity() {
+        return rowCount == 0 ? 0 : (double) positions.length / rowCount;
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.BOOLEAN;
+    }
+
+    @Override
+    public boolean isTrue(int index) {
+        return Arrays.binarySearch(positions, index) >= 0;
+    }
+
+    @Override
+    public int nextSetBit(int fromIndex) {
+        int i = Arrays.binarySearch(positions, fromIndex);
+        if (i < 0)
+            i = -i - 1;
+        return i < positions.length ? positions[i] : -1;
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public int trueCount() {
+        return positions.length;
+    }
+}
@@ -5,7 +5,11 @@
  */
 package org.lealone.sql.vector;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+
 import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
 
 public class SingleValueVector extends ValueVector {
 
@@ -19,9 +23,60 @@ public class SingleValueVector extends ValueVector {
         return value;
     }
 
+    // 常量在每一行的值都一样
+    @Override
+    public Value getValue(int index) {
+        return value;
+    }
+
     @Override
     public ValueVector convertTo(int targetType) {
         value = value.convertTo(targetType);
         return this;
     }
+
+    // 展开成size行的向量，CASE的常量分支需要跟其他分支合并时才用到
+    public ValueVector expand(int type, int size) {
+        boolean isNull = value == ValueNull.INSTANCE;
+        long[] nulls = isNull ? allNulls(size) : null;
+        switch (type) {
+        case Value.INT: {
+            int[] a = new int[size];
+            if (!isNull)
+                Arrays.fill(a, value.getInt());
+            return new IntVector(a, nulls);
+        }
+        case Value.LONG: {
+            long[] a = new long[size];
+            if (!isNull)
+                Arrays.fill(a, value.getLong());
+            return new LongVector(a, nulls);
+        }
+        case Value.DOUBLE: {
+            double[] a = new double[size];
+            if (!isNull)
+                Arrays.fill(a, value.getDouble());
+            return new DoubleVector(a, nulls);
+        }
+        case Value.DECIMAL: {
+            BigDecimal[] a = new BigDecimal[size];
+            BigDecimal v = isNull ? BigDecimal.ZERO : value.getBigDecimal();
+            Arrays.fill(a, v);
+            DecimalVector vv = DecimalVector.valueOf(a, v.scale());
+            vv.setNulls(nulls);
+            return vv;
+        }
+        case Value.STRING:
+        case Value.STRING_IGNORECASE: {
+            String[] a = new String[size];
+            Arrays.fill(a, isNull ? "" : value.getString());
+            return new StringVector(a, nulls, type == Value.STRING_IGNORECASE);
+        }
+        default: {
+            Value[] a = new Value[size];
+            Arrays.fill(a, value);
+            return new DefaultValueVector(a);
+        }
+        }
+    }
 }
@@ -5,83 +5,218 @@
  */
 package org.lealone.sql.vector;
 
+import java.util.regex.Matcher;
+
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
 import org.lealone.db.value.ValueString;
+import org.lealone.db.value.ValueStringIgnoreCase;
 import org.lealone.sql.expression.condition.Comparison;
 
 public class StringVector extends ValueVector {
 
     private String[] values;
+    // VARCHAR_IGNORECASE类型的列，比较、IN和MIN/MAX都不区分大小写，跟ValueStringIgnoreCase一样
+    private final boolean ignoreCase;
 
     public StringVector(String[] values) {
+        this(values, null, false);
+    }
+
+    // NULL值对应的位置存放空串，这样比较时就不需要判断是否为null了
+    public StringVector(String[] values, long[] nulls) {
+        this(values, nulls, false);
+    }
+
+    public StringVector(String[] values, long[] nulls, boolean ignoreCase) {
         this.values = values;
+        this.nulls = nulls;
+        this.ignoreCase = ignoreCase;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public String[] getValues() {
+        return values;
+    }
+
+    @Override
+    public int getValueType() {
+        return ignoreCase ? Value.STRING_IGNORECASE : Value.STRING;
+    }
+
+    private int compareTo(String a, String b) {
+        return ignoreCase ? a.compareToIgnoreCase(b) : a.compareTo(b);
     }
 
     @Override
     public BooleanVector compare(ValueVector vv, int compareType) {
-        switch (compareType) {
-        case Comparison.EQUAL: {
-            if (vv instanceof SingleValueVector) {
-                String[] values1 = this.values;
-                String v = ((SingleValueVector) vv).getValue().getString();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
-                    values[i] = values1[i].compareTo(v) == 0;
+        String[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            if (v0.getType() == Value.STRING_IGNORECASE && !ignoreCase)
+                return new StringVector(this.values, nulls, true).compare(vv, compareType);
+            String v = v0.getString();
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compareTo(values1[i], v) == 0;
                 }
-                return new BooleanVector(values);
-            }
-            String[] values1 = this.values;
-            String[] values2 = ((StringVector) vv).values;
-            boolean[] values = new boolean[values1.length];
-            for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i].compareTo(values2[i]) == 0;
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compareTo(values1[i], v) >= 0;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compareTo(values1[i], v) > 0;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compareTo(values1[i], v) <= 0;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compareTo(values1[i], v) < 0;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = compareTo(values1[i], v) != 0;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
             }
-            return new BooleanVector(values);
+            return createBooleanVector(values, nulls, null, compareType);
         }
+        if (vv instanceof DictionaryStringVector)
+            vv = ((DictionaryStringVector) vv).toStringVector();
+        StringVector vv2 = (StringVector) vv.convertTo(Value.STRING);
+        // 跟row模式一样，有一边不区分大小写时两边都按不区分大小写比较
+        if (vv2.ignoreCase && !ignoreCase)
+            return new StringVector(this.values, nulls, true).compare(vv2, compareType);
+        String[] values2 = vv2.values;
+        switch (compareType) {
+        case Comparison.EQUAL:
         case Comparison.EQUAL_NULL_SAFE:
-            return null;
-        case Comparison.BIGGER_EQUAL: {
-            if (vv instanceof SingleValueVector) {
-                String[] values1 = this.values;
-                String v = ((SingleValueVector) vv).getValue().getString();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
-                    values[i] = values1[i].compareTo(v) >= 0;
-                }
-                return new BooleanVector(values);
+            for (int i = 0; i < len; i++) {
+                values[i] = compareTo(values1[i], values2[i]) == 0;
             }
-            String[] values1 = this.values;
-            String[] values2 = ((StringVector) vv).values;
-            boolean[] values = new boolean[values1.length];
-            for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i].compareTo(values2[i]) >= 0;
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = compareTo(values1[i], values2[i]) >= 0;
             }
-            return new BooleanVector(values);
-        }
-        case Comparison.BIGGER: {
-            if (vv instanceof SingleValueVector) {
-                String[] values1 = this.values;
-                String v = ((SingleValueVector) vv).getValue().getString();
-                boolean[] values = new boolean[values1.length];
-                for (int i = 0; i < values1.length; i++) {
-                    values[i] = values1[i].compareTo(v) > 0;
-                }
-                return new BooleanVector(values);
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = compareTo(values1[i], values2[i]) > 0;
             }
-            return null;
-        }
+            break;
         case Comparison.SMALLER_EQUAL:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = compareTo(values1[i], values2[i]) <= 0;
+            }
+            break;
         case Comparison.SMALLER:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = compareTo(values1[i], values2[i]) < 0;
+            }
+            break;
         case Comparison.NOT_EQUAL:
-            return null;
         case Comparison.NOT_EQUAL_NULL_SAFE:
-            return null;
+            for (int i = 0; i < len; i++) {
+                values[i] = compareTo(values1[i], values2[i]) != 0;
+            }
+            break;
         default:
             throw DbException.getInternalError("compareType=" + compareType);
         }
+        return createBooleanVector(values, nulls, vv2.nulls, compareType);
+    }
+
+    @Override
+    public BooleanVector in(ConstantSet set) {
+        if (!(set instanceof ConstantSet.StringSet))
+            return super.in(set);
+        ConstantSet.StringSet set2 = (ConstantSet.StringSet) set;
+        String[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = set2.contains(values1[i]);
+        }
+        return createInResult(values, set);
+    }
+
+    // 每种模式用单独的循环，NULL的位置是空串，不需要判断
+    @Override
+    public BooleanVector like(LikePattern pattern) {
+        String[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        String text = pattern.getText();
+        int n = text.length();
+        boolean ignoreCase = pattern.isIgnoreCase();
+        switch (pattern.getType()) {
+        case LikePattern.EXACT:
+            if (ignoreCase) {
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].equalsIgnoreCase(text);
+                }
+            } else {
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].equals(text);
+                }
+            }
+            break;
+        case LikePattern.PREFIX:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i].regionMatches(ignoreCase, 0, text, 0, n);
+            }
+            break;
+        case LikePattern.SUFFIX:
+            for (int i = 0; i < len; i++) {
+                String s = values1[i];
+                int offset = s.length() - n;
+                values[i] = offset >= 0 && s.regionMatches(ignoreCase, offset, text, 0, n);
+            }
+            break;
+        case LikePattern.CONTAINS:
+            if (ignoreCase) {
+                for (int i = 0; i < len; i++) {
+                    values[i] = LikePattern.containsIgnoreCase(values1[i], text);
+                }
+            } else {
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i].indexOf(text) >= 0;
+                }
+            }
+            break;
+        default: {
+            // 复用同一个Matcher
+            Matcher m = pattern.getRegex().matcher("");
+            boolean find = pattern.getType() == LikePattern.REGEXP;
+            for (int i = 0; i < len; i++) {
+                m.reset(values1[i]);
+                values[i] = find ? m.find() : m.matches();
+            }
+        }
+        }
+        return new BooleanVector(values, nulls);
     }
 
     @Override
@@ -116,7 +251,10 @@ public class StringVector extends ValueVector {
 
     @Override
     public Value getValue(int index) {
-        return ValueString.get(values[index]);
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        String v = values[index];
+        return ignoreCase ? ValueStringIgnoreCase.get(v) : ValueString.get(v);
     }
 
     @Override
@@ -128,9 +266,11 @@ public class StringVector extends ValueVector {
             size = bvv.trueCount();
         Value[] a = new Value[size];
         int j = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv == null || bvv.isTrue(i))
-                a[j++] = getValue(i);
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
         }
         return a;
     }
@@ -140,6 +280,68 @@ public class StringVector extends ValueVector {
         return null;
     }
 
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        int index = -1;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || compareTo(values[index], values[i]) > 0)
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        int index = -1;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || compareTo(values[index], values[i]) < 0)
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        String[] values1 = this.values;
+        int len = values1.length;
+        long[] bits = mask.getBits();
+        String[] values = new String[len];
+        if (vv instanceof SingleValueVector) {
+            SingleValueVector sv = (SingleValueVector) vv;
+            String v = sv.getValue() == ValueNull.INSTANCE ? "" : sv.getValue().getString();
+            for (int i = 0; i < len; i++) {
+                values[i] = isSet(bits, i) ? v : values1[i];
+            }
+            return new StringVector(values, blendNulls(sv, mask), ignoreCase);
+        }
+        if (vv instanceof DictionaryStringVector)
+            vv = ((DictionaryStringVector) vv).toStringVector();
+        if (!(vv instanceof StringVector))
+            return super.blend(vv, mask);
+        StringVector vv2 = (StringVector) vv;
+        String[] values2 = vv2.values;
+        for (int i = 0; i < len; i++) {
+            values[i] = isSet(bits, i) ? values2[i] : values1[i];
+        }
+        return new StringVector(values, blendNulls(vv2.nulls, mask), ignoreCase);
+    }
+
     @Override
     public ValueVector filter(ValueVector bvv) {
         int size;
@@ -149,10 +351,12 @@ public class StringVector extends ValueVector {
             size = bvv.trueCount();
         String[] a = new String[size];
         int j = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            if (bvv == null || bvv.isTrue(i))
-                a[j++] = values[i];
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = values[i];
         }
-        return new StringVector(a);
+        return new StringVector(a, filterNulls(bvv), ignoreCase);
     }
 }
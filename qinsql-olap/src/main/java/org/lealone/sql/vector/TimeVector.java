@@ -0,0 +1,204 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+import org.lealone.db.value.ValueTime;
+import org.lealone.sql.expression.condition.Comparison;
+
+// 用一天之中的纳秒数表示TIME
+public class TimeVector extends ValueVector {
+
+    private long[] values;
+
+    public TimeVector(long[] values) {
+        this.values = values;
+    }
+
+    public TimeVector(long[] values, long[] nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public long[] getValues() {
+        return values;
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.TIME;
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        if (vv instanceof SingleValueVector && ((SingleValueVector) vv).getValue() == ValueNull.INSTANCE)
+            return compareNull(compareType);
+        long[] values1 = this.values;
+        int len = values1.length;
+        boolean[] values = new boolean[len];
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue().convertTo(Value.TIME);
+            long v = ((ValueTime) v0).getNanos();
+            switch (compareType) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] == v;
+                }
+                break;
+            case Comparison.BIGGER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] >= v;
+                }
+                break;
+            case Comparison.BIGGER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] > v;
+                }
+                break;
+            case Comparison.SMALLER_EQUAL:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] <= v;
+                }
+                break;
+            case Comparison.SMALLER:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] < v;
+                }
+                break;
+            case Comparison.NOT_EQUAL:
+            case Comparison.NOT_EQUAL_NULL_SAFE:
+                for (int i = 0; i < len; i++) {
+                    values[i] = values1[i] != v;
+                }
+                break;
+            default:
+                throw DbException.getInternalError("compareType=" + compareType);
+            }
+            return createBooleanVector(values, nulls, null, compareType);
+        }
+        TimeVector vv2 = (TimeVector) vv.convertTo(Value.TIME);
+        long[] values2 = vv2.values;
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] == values2[i];
+            }
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] >= values2[i];
+            }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] > values2[i];
+            }
+            break;
+        case Comparison.SMALLER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] <= values2[i];
+            }
+            break;
+        case Comparison.SMALLER:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] < values2[i];
+            }
+            break;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = values1[i] != values2[i];
+            }
+            break;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+        return createBooleanVector(values, nulls, vv2.nulls, compareType);
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueTime.fromNanos(values[index]);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int size;
+        if (bvv == null)
+            size = values.length;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int len = values.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        int index = -1;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || values[index] > values[i])
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        int index = -1;
+        int len = values.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || values[index] < values[i])
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new TimeVector(values, nulls);
+        int size = bvv.trueCount();
+        long[] a = new long[size];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            a[j++] = values[i];
+        }
+        return new TimeVector(a, filterNulls(bvv));
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.util.DateTimeUtils;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+import org.lealone.db.value.ValueTimestamp;
+import org.lealone.sql.expression.condition.Comparison;
+
+// 用dateValue加上一天之中的纳秒数表示TIMESTAMP，dateValue的编码方式与日期的先后顺序一致，所以可以直接比较
+public class TimestampVector extends ValueVector {
+
+    private long[] dateValues;
+    private long[] timeNanos;
+
+    public TimestampVector(long[] dateValues, long[] timeNanos) {
+        this.dateValues = dateValues;
+        this.timeNanos = timeNanos;
+    }
+
+    public TimestampVector(long[] dateValues, long[] timeNanos, long[] nulls) {
+        this.dateValues = dateValues;
+        this.timeNanos = timeNanos;
+        this.nulls = nulls;
+    }
+
+    public long[] getDateValues() {
+        return dateValues;
+    }
+
+    public long[] getTimeNanos() {
+        return timeNanos;
+    }
+
+    @Override
+    public int getValueType() {
+        return Value.TIMESTAMP;
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        switch (targetType) {
+        case Value.TIMESTAMP:
+            return this;
+        case Value.DATE: {
+            int len = dateValues.length;
+            int[] a = new int[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = (int) DateTimeUtils.absoluteDayFromDateValue(dateValues[i]);
+            }
+            return new DateVector(a, nulls);
+        }
+        case Value.TIME:
+            return new TimeVector(timeNanos, nulls);
+        default:
+            return this;
+        }
+    }
+
+    // 先比较日期部分，日期相同时再比较时间部分，结果是-1、0、1
+    private static int compare(long d1, long n1, long d2, long n2) {
+        int c = Long.compare(d1, d2);
+        return c != 0 ? c : Long.compare(n1, n2);
+    }
+
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        if (vv instanceof SingleValueVector && ((SingleValueVector) vv).getValue() == ValueNull.INSTANCE)
+            return compareNull(compareType);
+        long[] dateValues1 = this.dateValues;
+        long[] timeNanos1 = this.timeNanos;
+        int len = dateValues1.length;
+        int[] c = new int[len];
+        long[] nulls2 = null;
+        if (vv instanceof SingleValueVector) {
+            Value v = ((SingleValueVector) vv).getValue().convertTo(Value.TIMESTAMP);
+            long d = ((ValueTimestamp) v).getDateValue();
+            long n = ((ValueTimestamp) v).getTimeNanos();
+            for (int i = 0; i < len; i++) {
+                c[i] = compare(dateValues1[i], timeNanos1[i], d, n);
+            }
+        } else {
+            TimestampVector tv = (TimestampVector) vv.convertTo(Value.TIMESTAMP);
+            nulls2 = tv.nulls;
+            long[] dateValues2 = tv.dateValues;
+            long[] timeNanos2 = tv.timeNanos;
+            for (int i = 0; i < len; i++) {
+                c[i] = compare(dateValues1[i], timeNanos1[i], dateValues2[i], timeNanos2[i]);
+            }
+        }
+        boolean[] values = new boolean[len];
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = c[i] == 0;
+            }
+            break;
+        case Comparison.BIGGER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = c[i] >= 0;
+            }
+            break;
+        case Comparison.BIGGER:
+            for (int i = 0; i < len; i++) {
+                values[i] = c[i] > 0;
+            }
+            break;
+        case Comparison.SMALLER_EQUAL:
+            for (int i = 0; i < len; i++) {
+                values[i] = c[i] <= 0;
+            }
+            break;
+        case Comparison.SMALLER:
+            for (int i = 0; i < len; i++) {
+                values[i] = c[i] < 0;
+            }
+            break;
+        case Comparison.NOT_EQUAL:
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            for (int i = 0; i < len; i++) {
+                values[i] = c[i] != 0;
+            }
+            break;
+        default:
+            throw DbException.getInternalError("compareType=" + compareType);
+        }
+        return createBooleanVector(values, nulls, nulls2, compareType);
+    }
+
+    @Override
+    public int size() {
+        return dateValues.length;
+    }
+
+    @Override
+    public Value getValue(int index) {
+        if (isNull(index))
+            return ValueNull.INSTANCE;
+        return ValueTimestamp.fromDateValueAndNanos(dateValues[index], timeNanos[index]);
+    }
+
+    @Override
+    public Value[] getValues(ValueVector bvv) {
+        int size;
+        if (bvv == null)
+            size = dateValues.length;
+        else
+            size = bvv.trueCount();
+        Value[] a = new Value[size];
+        int j = 0;
+        int len = dateValues.length;
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            a[j++] = getValue(i);
+        }
+        return a;
+    }
+
+    @Override
+    public Value min() {
+        return min(null);
+    }
+
+    @Override
+    public Value min(ValueVector bvv) {
+        int index = -1;
+        int len = dateValues.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || compare(dateValues[index], timeNanos[index], dateValues[i], timeNanos[i]) > 0)
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    @Override
+    public Value max() {
+        return max(null);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        int index = -1;
+        int len = dateValues.length;
+        int[] sel = getValidPositions(bvv);
+        for (int k = 0, n = sel == null ? len : sel.length; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (index < 0 || compare(dateValues[index], timeNanos[index], dateValues[i], timeNanos[i]) < 0)
+                index = i;
+        }
+        return index < 0 ? ValueNull.INSTANCE : getValue(index);
+    }
+
+    public IntVector year() {
+        int len = dateValues.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = DateTimeUtils.yearFromDateValue(dateValues[i]);
+        }
+        return new IntVector(a, nulls);
+    }
+
+    public IntVector month() {
+        int len = dateValues.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = DateTimeUtils.monthFromDateValue(dateValues[i]);
+        }
+        return new IntVector(a, nulls);
+    }
+
+    public IntVector dayOfMonth() {
+        int len = dateValues.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = DateTimeUtils.dayFromDateValue(dateValues[i]);
+        }
+        return new IntVector(a, nulls);
+    }
+
+    public TimestampVector truncateToYear() {
+        int len = dateValues.length;
+        long[] a = new long[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = DateTimeUtils.dateValue(DateTimeUtils.yearFromDateValue(dateValues[i]), 1, 1);
+        }
+        return new TimestampVector(a, new long[len], nulls);
+    }
+
+    public TimestampVector truncateToMonth() {
+        int len = dateValues.length;
+        long[] a = new long[len];
+        for (int i = 0; i < len; i++) {
+            long dateValue = dateValues[i];
+            a[i] = DateTimeUtils.dateValue(DateTimeUtils.yearFromDateValue(dateValue),
+                    DateTimeUtils.monthFromDateValue(dateValue), 1);
+        }
+        return new TimestampVector(a, new long[len], nulls);
+    }
+
+    public TimestampVector truncateToDay() {
+        return new TimestampVector(dateValues, new long[dateValues.length], nulls);
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        if (bvv == null)
+            return new TimestampVector(dateValues, timeNanos, nulls);
+        int size = bvv.trueCount();
+        long[] a = new long[size];
+        long[] b = new long[size];
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            a[j] = dateValues[i];
+            b[j++] = timeNanos[i];
+        }
+        return new TimestampVector(a, b, filterNulls(bvv));
+    }
+}
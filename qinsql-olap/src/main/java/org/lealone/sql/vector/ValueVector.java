@@ -5,25 +5,272 @@
  */
 package org.lealone.sql.vector;
 
+import java.util.Arrays;
+
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
 
 public abstract class ValueVector {
 
+    // 第i位为1表示第i个值是NULL，为null时表示这一批数据中没有NULL，此时各种运算都走无分支的快速路径
+    protected long[] nulls;
+
+    public long[] getNulls() {
+        return nulls;
+    }
+
+    public void setNulls(long[] nulls) {
+        this.nulls = nulls;
+    }
+
+    public boolean hasNulls() {
+        return nulls != null;
+    }
+
+    public boolean isNull(int index) {
+        return nulls != null && (nulls[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public int nullCount() {
+        if (nulls == null)
+            return 0;
+        int c = 0;
+        for (long n : nulls) {
+            c += Long.bitCount(n);
+        }
+        return c;
+    }
+
     public int getValueType() {
         return Value.UNKNOWN;
     }
 
     public BooleanVector isNull() {
-        return new BooleanVector();
+        int len = size();
+        if (nulls == null)
+            return new BooleanVector(new long[BooleanVector.wordCount(len)], len);
+        return new BooleanVector(nulls.clone(), len);
     }
 
     public BooleanVector isNotNull() {
-        return new BooleanVector();
+        int len = size();
+        if (nulls == null)
+            return BooleanVector.allTrue(len);
+        return new BooleanVector(nulls.clone(), len).not();
     }
 
+    // 跟NULL常量比较，除了null safe的比较之外结果都是NULL
+    protected BooleanVector compareNull(int compareType) {
+        switch (compareType) {
+        case Comparison.EQUAL_NULL_SAFE:
+            return isNull();
+        case Comparison.NOT_EQUAL_NULL_SAFE:
+            return isNotNull();
+        default:
+            int len = size();
+            return new BooleanVector(new boolean[len], allNulls(len));
+        }
+    }
+
+    protected static BooleanVector createBooleanVector(boolean[] values, long[] nulls1, long[] nulls2,
+            int compareType) {
+        if (nulls1 == null && nulls2 == null)
+            return new BooleanVector(values);
+        switch (compareType) {
+        case Comparison.EQUAL_NULL_SAFE:
+        case Comparison.NOT_EQUAL_NULL_SAFE: {
+            boolean equal = compareType == Comparison.EQUAL_NULL_SAFE;
+            for (int i = 0, len = values.length; i < len; i++) {
+                boolean n1 = isNull(nulls1, i);
+                boolean n2 = isNull(nulls2, i);
+                if (n1 || n2)
+                    values[i] = (n1 && n2) == equal;
+            }
+            return new BooleanVector(values);
+        }
+        default:
+            return new BooleanVector(values, orNulls(nulls1, nulls2));
+        }
+    }
+
+    // 跟上面的方法一样，只是比较结果已经按位存放在bits中了，null safe的比较按64位一组处理NULL
+    protected static BooleanVector createBooleanVector(long[] bits, int size, long[] nulls1, long[] nulls2,
+            int compareType) {
+        if (nulls1 == null && nulls2 == null)
+            return new BooleanVector(bits, size);
+        switch (compareType) {
+        case Comparison.EQUAL_NULL_SAFE:
+        case Comparison.NOT_EQUAL_NULL_SAFE: {
+            boolean equal = compareType == Comparison.EQUAL_NULL_SAFE;
+            for (int w = 0; w < bits.length; w++) {
+                long n1 = nulls1 == null || w >= nulls1.length ? 0 : nulls1[w];
+                long n2 = nulls2 == null || w >= nulls2.length ? 0 : nulls2[w];
+                long n = n1 | n2;
+                long both = n1 & n2;
+                bits[w] = (bits[w] & ~n) | (equal ? both : n & ~both);
+            }
+            return new BooleanVector(bits, size);
+        }
+        default:
+            return new BooleanVector(bits, size, orNulls(nulls1, nulls2));
+        }
+    }
+
+    public static boolean isNull(long[] nulls, int index) {
+        return nulls != null && (nulls[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public static long[] setNull(long[] nulls, int index, int size) {
+        if (nulls == null)
+            nulls = new long[(size + 63) >>> 6];
+        nulls[index >>> 6] |= 1L << index;
+        return nulls;
+    }
+
+    public static long[] allNulls(int size) {
+        long[] nulls = new long[(size + 63) >>> 6];
+        for (int i = 0; i < size; i++) {
+            nulls[i >>> 6] |= 1L << i;
+        }
+        return nulls;
+    }
+
+    public static long[] orNulls(long[] nulls1, long[] nulls2) {
+        if (nulls1 == null)
+            return nulls2;
+        if (nulls2 == null)
+            return nulls1;
+        int len = Math.min(nulls1.length, nulls2.length);
+        long[] nulls = new long[len];
+        for (int i = 0; i < len; i++) {
+            nulls[i] = nulls1[i] | nulls2[i];
+        }
+        return nulls;
+    }
+
+    // 按bvv过滤后的NULL位图，bvv为null时不需要过滤
+    protected long[] filterNulls(ValueVector bvv) {
+        if (nulls == null || bvv == null)
+            return nulls;
+        long[] a = null;
+        int size = bvv.trueCount();
+        int j = 0;
+        for (int i : getSelection(bvv)) {
+            if (isNull(i))
+                a = setNull(a, j, size);
+            j++;
+        }
+        return a;
+    }
+
+    // 除数是常量0时，只要有一个非NULL的被除数就要报错，未选中的行在计算前已经被当成NULL了
+    protected boolean hasNonNull() {
+        return nullCount() < size();
+    }
+
+    // 被bvv选中的行的位置，bvv本身就是SelectionVector时不需要再转换
+    protected static int[] getSelection(ValueVector bvv) {
+        return SelectionVector.valueOf(bvv).getPositions();
+    }
+
+    // 被bvv选中并且不是NULL的行的位置，返回null时表示所有行都有效，此时可以走无分支的快速路径
+    protected int[] getValidPositions(ValueVector bvv) {
+        if (nulls == null)
+            return bvv == null ? null : getSelection(bvv);
+        int[] sel = bvv == null ? null : getSelection(bvv);
+        int n = sel == null ? size() : sel.length;
+        int[] a = new int[n];
+        int j = 0;
+        for (int k = 0; k < n; k++) {
+            int i = sel == null ? k : sel[k];
+            if (!isNull(i))
+                a[j++] = i;
+        }
+        return j == n ? a : Arrays.copyOf(a, j);
+    }
+
+    // 跟getValidPositions一样，只是用位图表示，可以直接转成SIMD的VectorMask，返回null时表示所有行都有效
+    protected long[] getValidBits(ValueVector bvv) {
+        if (bvv == null && nulls == null)
+            return null;
+        int size = size();
+        long[] bits = new long[(size + 63) >>> 6];
+        if (bvv == null) {
+            Arrays.fill(bits, -1L);
+            if ((size & 63) != 0)
+                bits[bits.length - 1] = (1L << size) - 1; // 超出size的位要清掉
+        } else if (bvv instanceof BooleanVector) {
+            long[] a = ((BooleanVector) bvv).getBits();
+            System.arraycopy(a, 0, bits, 0, Math.min(a.length, bits.length));
+        } else {
+            for (int i : getSelection(bvv)) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        if (nulls != null) {
+            for (int w = 0, len = Math.min(bits.length, nulls.length); w < len; w++) {
+                bits[w] &= ~nulls[w];
+            }
+        }
+        return bits;
+    }
+
+    public static int cardinality(long[] bits) {
+        int c = 0;
+        for (long w : bits) {
+            c += Long.bitCount(w);
+        }
+        return c;
+    }
+
+    // 被bvv选中的行中有多少个NULL
+    public int nullCount(ValueVector bvv) {
+        if (bvv == null || nulls == null)
+            return nullCount();
+        int c = 0;
+        for (int i : getSelection(bvv)) {
+            if (isNull(i))
+                c++;
+        }
+        return c;
+    }
+
+    // 返回null表示这种向量不支持向量化的比较，由调用者逐行计算
     public ValueVector compare(ValueVector vv, int compareType) {
-        return new BooleanVector();
+        return null;
+    }
+
+    // x IN (...)，集合中有NULL时找不到的行是NULL
+    public BooleanVector in(ConstantSet set) {
+        int len = size();
+        boolean[] values = new boolean[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = !isNull(i) && set.contains(getValue(i));
+        }
+        return createInResult(values, set);
+    }
+
+    public BooleanVector like(LikePattern pattern) {
+        int len = size();
+        boolean[] values = new boolean[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = !isNull(i) && pattern.matches(getValue(i).getString());
+        }
+        return new BooleanVector(values, nulls);
+    }
+
+    protected BooleanVector createInResult(boolean[] values, ConstantSet set) {
+        long[] nulls = this.nulls;
+        if (set.hasNull()) {
+            int len = values.length;
+            nulls = nulls == null ? null : nulls.clone();
+            for (int i = 0; i < len; i++) {
+                if (!values[i])
+                    nulls = setNull(nulls, i, len);
+            }
+        }
+        return new BooleanVector(values, nulls);
     }
 
     public ValueVector convertTo(int targetType) {
@@ -105,10 +352,55 @@ public abstract class ValueVector {
         return ValueNull.INSTANCE;
     }
 
+    public int nextSetBit(int fromIndex) {
+        for (int i = fromIndex, len = size(); i < len; i++) {
+            if (isTrue(i))
+                return i;
+        }
+        return -1;
+    }
+
     public int trueCount() {
         return 0;
     }
 
+    // CASE等条件表达式用来合并各个分支的结果，mask为true的行取vv的值，其他行保留当前向量的值，vv可以是常量
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        int len = size();
+        Value[] values = new Value[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = mask.isTrue(i) ? vv.getValue(i) : getValue(i);
+        }
+        return new DefaultValueVector(values);
+    }
+
+    // 按mask合并两个NULL位图，nulls2为null时表示vv中没有NULL
+    protected long[] blendNulls(long[] nulls2, BooleanVector mask) {
+        long[] nulls1 = this.nulls;
+        if (nulls1 == null && nulls2 == null)
+            return null;
+        long[] bits = mask.getBits();
+        long[] a = new long[bits.length];
+        for (int i = 0; i < bits.length; i++) {
+            long n1 = nulls1 == null ? 0 : nulls1[i];
+            long n2 = nulls2 == null ? 0 : nulls2[i];
+            a[i] = (n1 & ~bits[i]) | (n2 & bits[i]);
+        }
+        return a;
+    }
+
+    // 常量分支的NULL位图，常量是NULL时mask为true的行都是NULL
+    protected long[] blendNulls(SingleValueVector vv, BooleanVector mask) {
+        if (vv.getValue() == ValueNull.INSTANCE)
+            return blendNulls(mask.getBits(), mask);
+        return blendNulls((long[]) null, mask);
+    }
+
+    protected static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // 子类没有实现时不做过滤，直接返回当前向量
     public ValueVector filter(ValueVector bvv) {
         return this;
     }
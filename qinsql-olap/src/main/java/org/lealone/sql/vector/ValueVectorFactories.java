@@ -0,0 +1,69 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lealone.common.util.Utils;
+import org.lealone.db.result.SimpleResultSet;
+
+// 按名字缓存ValueVectorFactory，不用每一批数据都通过反射创建一次，
+// session没有指定名字或者指定为auto时，根据运行环境在标量实现和SIMD实现之间自动选择
+public class ValueVectorFactories {
+
+    public static final String AUTO = "auto";
+
+    private static final String JDK16_FACTORY_NAME = "org.lealone.sql.vector.jdk16.Jdk16ValueVectorFactory";
+    private static final String VECTOR_MODULE_NAME = "jdk.incubator.vector";
+
+    // 只有64位的寄存器时没有SIMD可用，用SIMD实现反而更慢
+    private static final int MIN_VECTOR_BIT_SIZE = 128;
+
+    private static final ConcurrentHashMap<String, ValueVectorFactory> factories = new ConcurrentHashMap<>();
+    private static final ValueVectorFactory autoFactory = createAutoFactory();
+
+    private static ValueVectorFactory createAutoFactory() {
+        // 启动时没有加--add-modules jdk.incubator.vector就只能用标量实现
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE_NAME).isPresent())
+            return DefaultValueVectorFactory.INSTANCE;
+        try {
+            ValueVectorFactory factory = Utils.newInstance(JDK16_FACTORY_NAME);
+            if (factory.getVectorBitSize() >= MIN_VECTOR_BIT_SIZE)
+                return factory;
+        } catch (Throwable t) {
+            // 忽略，用标量实现
+        }
+        return DefaultValueVectorFactory.INSTANCE;
+    }
+
+    public static ValueVectorFactory getFactory(String name) {
+        if (name == null || AUTO.equalsIgnoreCase(name))
+            return autoFactory;
+        return factories.computeIfAbsent(name, n -> Utils.newInstance(n));
+    }
+
+    public static ValueVectorFactory getAutoFactory() {
+        return autoFactory;
+    }
+
+    // 可以用CREATE ALIAS VALUE_VECTOR_BACKEND FOR "org.lealone.sql.vector.ValueVectorFactories.getBackendInfo"
+    // 注册成表函数，然后用SELECT * FROM VALUE_VECTOR_BACKEND()查看自动选择的结果
+    public static ResultSet getBackendInfo() {
+        ValueVectorFactory factory = autoFactory;
+        int bitSize = factory.getVectorBitSize();
+        SimpleResultSet rs = new SimpleResultSet();
+        rs.addColumn("BACKEND", Types.VARCHAR, 255, 0);
+        rs.addColumn("FACTORY", Types.VARCHAR, 255, 0);
+        rs.addColumn("VECTOR_BIT_SIZE", Types.INTEGER, 10, 0);
+        rs.addColumn("INT_LANES", Types.INTEGER, 10, 0);
+        rs.addColumn("LONG_LANES", Types.INTEGER, 10, 0);
+        rs.addRow(bitSize > 0 ? "SIMD" : "SCALAR", factory.getClass().getName(), bitSize,
+                Math.max(bitSize / 32, 1), Math.max(bitSize / 64, 1));
+        return rs;
+    }
+}
@@ -14,4 +14,14 @@ public interface ValueVectorFactory {
 
     public ValueVector createValueVector(List<Row> batch, Column column);
 
+    // 表达式计算过程中生成的向量不一定是这个工厂创建的，需要时可以换成这个工厂对应的实现
+    public default ValueVector wrapValueVector(ValueVector vv) {
+        return vv;
+    }
+
+    // SIMD寄存器的位数，标量实现返回0
+    public default int getVectorBitSize() {
+        return 0;
+    }
+
 }
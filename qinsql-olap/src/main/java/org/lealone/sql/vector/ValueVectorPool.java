@@ -0,0 +1,167 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.lealone.db.result.Row;
+import org.lealone.db.table.Column;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+
+// 每个算子一个，列向量在批与批之间重用，同一列的向量和NULL位图只在第一批分配，之后的批直接覆盖底层数组。
+// 只重用INT、LONG、DOUBLE、FLOAT这几种定长的列，批的大小变了(通常是最后一批)才重新分配。
+// 注意: 调用nextBatch()之后上一批取出的列向量就失效了，不能把它们保存到批之外
+public class ValueVectorPool {
+
+    private static class Entry {
+        ValueVector vv;
+        Object values; // vv底层的基本类型数组
+        long[] nullBuffer; // 没有NULL时也保留着，下一批有NULL时接着用
+        boolean hasNulls;
+        int batchId;
+    }
+
+    private final HashMap<Column, Entry> entries = new HashMap<>();
+    private final Column[] oneColumn = new Column[1];
+    private Entry[] loadingEntries = new Entry[0];
+    private int batchId;
+
+    // 每开始一批新数据调用一次
+    public void nextBatch() {
+        batchId++;
+    }
+
+    public ValueVector getValueVector(ValueVectorFactory factory, List<Row> batch, Column column) {
+        if (!isReusable(column))
+            return factory.createValueVector(batch, column);
+        Entry e = entries.get(column);
+        if (e == null || e.batchId != batchId) { // 条件和select字段列表都用到同一列时这一批只装载一次
+            oneColumn[0] = column;
+            load(factory, batch, oneColumn);
+            e = entries.get(column);
+        }
+        return e.vv;
+    }
+
+    /**
+     * 按行一次性把多个列装载到列向量中，每一行只访问一次，不用像逐列装载那样每一列都遍历一次batch。
+     * 不能重用的列和这一批已经装载过的列会跳过，之后调用getValueVector时再按原来的方式创建。
+     */
+    public void load(ValueVectorFactory factory, List<Row> batch, Column[] columns) {
+        int size = batch.size();
+        int count = columns.length;
+        if (loadingEntries.length < count)
+            loadingEntries = new Entry[count];
+        Entry[] a = loadingEntries;
+        boolean loading = false;
+        for (int c = 0; c < count; c++) {
+            a[c] = prepare(factory, columns[c], size);
+            if (a[c] != null)
+                loading = true;
+        }
+        if (!loading)
+            return;
+        for (int i = 0; i < size; i++) {
+            Row row = batch.get(i);
+            for (int c = 0; c < count; c++) {
+                Entry e = a[c];
+                if (e == null)
+                    continue;
+                Column column = columns[c];
+                Value v = row.getValue(column.getColumnId());
+                boolean isNull = v == ValueNull.INSTANCE;
+                if (isNull) {
+                    e.nullBuffer = ValueVector.setNull(e.nullBuffer, i, size);
+                    e.hasNulls = true;
+                }
+                // NULL对应的位置跟DefaultValueVectorFactory一样填0
+                switch (column.getType()) {
+                case Value.INT:
+                    ((int[]) e.values)[i] = isNull ? 0 : v.getInt();
+                    break;
+                case Value.LONG:
+                    ((long[]) e.values)[i] = isNull ? 0 : v.getLong();
+                    break;
+                case Value.DOUBLE:
+                    ((double[]) e.values)[i] = isNull ? 0 : v.getDouble();
+                    break;
+                case Value.FLOAT:
+                    ((float[]) e.values)[i] = isNull ? 0 : v.getFloat();
+                    break;
+                }
+            }
+        }
+        for (int c = 0; c < count; c++) {
+            Entry e = a[c];
+            if (e != null) {
+                e.vv.setNulls(e.hasNulls ? e.nullBuffer : null);
+                a[c] = null;
+            }
+        }
+    }
+
+    // 返回null表示这一列不需要装载
+    private Entry prepare(ValueVectorFactory factory, Column column, int size) {
+        if (!isReusable(column))
+            return null;
+        Entry e = entries.get(column);
+        if (e == null) {
+            e = new Entry();
+            entries.put(column, e);
+        } else if (e.batchId == batchId && e.vv != null) {
+            return null;
+        }
+        if (e.vv == null || e.vv.size() != size) {
+            ValueVector vv = createValueVector(column.getType(), size);
+            e.values = getValues(vv);
+            e.vv = factory.wrapValueVector(vv); // 共享底层数组
+            e.nullBuffer = null;
+        } else if (e.nullBuffer != null) {
+            Arrays.fill(e.nullBuffer, 0);
+        }
+        e.hasNulls = false;
+        e.batchId = batchId;
+        return e;
+    }
+
+    private static boolean isReusable(Column column) {
+        switch (column.getType()) {
+        case Value.INT:
+        case Value.LONG:
+        case Value.DOUBLE:
+        case Value.FLOAT:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static ValueVector createValueVector(int type, int size) {
+        switch (type) {
+        case Value.INT:
+            return new IntVector(new int[size]);
+        case Value.LONG:
+            return new LongVector(new long[size]);
+        case Value.DOUBLE:
+            return new DoubleVector(new double[size]);
+        default:
+            return new FloatVector(new float[size]);
+        }
+    }
+
+    private static Object getValues(ValueVector vv) {
+        if (vv instanceof IntVector)
+            return ((IntVector) vv).getValues();
+        if (vv instanceof LongVector)
+            return ((LongVector) vv).getValues();
+        if (vv instanceof DoubleVector)
+            return ((DoubleVector) vv).getValues();
+        return ((FloatVector) vv).getValues();
+    }
+}
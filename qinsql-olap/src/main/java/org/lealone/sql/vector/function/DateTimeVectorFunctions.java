@@ -0,0 +1,65 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector.function;
+
+import org.lealone.sql.expression.function.Function;
+import org.lealone.sql.vector.DateVector;
+import org.lealone.sql.vector.IntVector;
+import org.lealone.sql.vector.TimestampVector;
+import org.lealone.sql.vector.ValueVector;
+
+class DateTimeVectorFunctions {
+
+    private static final int YEAR = 0;
+    private static final int MONTH = 1;
+    private static final int DAY_OF_MONTH = 2;
+    private static final int QUARTER = 3;
+
+    static void register() {
+        VectorFunctions.register(Function.YEAR, (f, args) -> extract(args[0], YEAR));
+        VectorFunctions.register(Function.MONTH, (f, args) -> extract(args[0], MONTH));
+        VectorFunctions.register(Function.DAY_OF_MONTH, (f, args) -> extract(args[0], DAY_OF_MONTH));
+        VectorFunctions.register(Function.QUARTER, (f, args) -> extract(args[0], QUARTER));
+    }
+
+    private static ValueVector extract(ValueVector vv, int field) {
+        if (vv instanceof DateVector) {
+            DateVector dv = (DateVector) vv;
+            switch (field) {
+            case YEAR:
+                return dv.year();
+            case MONTH:
+                return dv.month();
+            case DAY_OF_MONTH:
+                return dv.dayOfMonth();
+            default:
+                return toQuarter(dv.month());
+            }
+        }
+        if (vv instanceof TimestampVector) {
+            TimestampVector tv = (TimestampVector) vv;
+            switch (field) {
+            case YEAR:
+                return tv.year();
+            case MONTH:
+                return tv.month();
+            case DAY_OF_MONTH:
+                return tv.dayOfMonth();
+            default:
+                return toQuarter(tv.month());
+            }
+        }
+        return null;
+    }
+
+    private static IntVector toQuarter(IntVector month) {
+        int[] a = month.getValues();
+        for (int i = 0, len = a.length; i < len; i++) {
+            a[i] = (a[i] - 1) / 3 + 1; // month()每次都返回新的数组，可以直接修改
+        }
+        return month;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector.function;
+
+import java.math.BigDecimal;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.api.ErrorCode;
+import org.lealone.db.value.Value;
+import org.lealone.sql.expression.function.Function;
+import org.lealone.sql.vector.DecimalVector;
+import org.lealone.sql.vector.DoubleVector;
+import org.lealone.sql.vector.FloatVector;
+import org.lealone.sql.vector.IntVector;
+import org.lealone.sql.vector.LongVector;
+import org.lealone.sql.vector.ValueVector;
+
+class NumericVectorFunctions {
+
+    static void register() {
+        VectorFunctions.register(Function.ABS, NumericVectorFunctions::abs);
+        VectorFunctions.register(Function.SIGN, NumericVectorFunctions::sign);
+        VectorFunctions.register(Function.CEILING, (f, args) -> ceilOrFloor(args[0], true));
+        VectorFunctions.register(Function.FLOOR, (f, args) -> ceilOrFloor(args[0], false));
+        VectorFunctions.register(Function.SQRT, NumericVectorFunctions::sqrt);
+        VectorFunctions.register(Function.ROUND, NumericVectorFunctions::round);
+        VectorFunctions.register(Function.MOD, NumericVectorFunctions::mod);
+    }
+
+    private static DoubleVector toDoubleVector(ValueVector vv) {
+        ValueVector v = vv.convertTo(Value.DOUBLE);
+        return v instanceof DoubleVector ? (DoubleVector) v : null;
+    }
+
+    private static ValueVector abs(Function f, ValueVector[] args) {
+        ValueVector vv = args[0];
+        int[] intValues = VectorFunctions.getIntValues(vv);
+        if (intValues != null) {
+            int len = intValues.length;
+            int[] a = new int[len];
+            for (int i = 0; i < len; i++) {
+                int v = intValues[i];
+                if (v == Integer.MIN_VALUE && !vv.isNull(i))
+                    throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1, Integer.toString(v));
+                a[i] = Math.abs(v);
+            }
+            return new IntVector(a, vv.getNulls());
+        }
+        if (vv instanceof LongVector) {
+            long[] values = ((LongVector) vv).getValues();
+            int len = values.length;
+            long[] a = new long[len];
+            for (int i = 0; i < len; i++) {
+                long v = values[i];
+                if (v == Long.MIN_VALUE && !vv.isNull(i))
+                    throw DbException.get(ErrorCode.NUMERIC_VALUE_OUT_OF_RANGE_1, Long.toString(v));
+                a[i] = Math.abs(v);
+            }
+            return new LongVector(a, vv.getNulls());
+        }
+        if (vv instanceof DoubleVector) {
+            double[] values = ((DoubleVector) vv).getValues();
+            int len = values.length;
+            double[] a = new double[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = Math.abs(values[i]);
+            }
+            return new DoubleVector(a, vv.getNulls());
+        }
+        if (vv instanceof FloatVector) {
+            float[] values = ((FloatVector) vv).getValues();
+            int len = values.length;
+            float[] a = new float[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = Math.abs(values[i]);
+            }
+            return new FloatVector(a, vv.getNulls());
+        }
+        if (vv instanceof DecimalVector) {
+            DecimalVector dv = (DecimalVector) vv;
+            long[] unscaledValues = dv.getUnscaledValues();
+            DecimalVector result;
+            if (unscaledValues != null) {
+                // unscaled value不超过18位数字，取绝对值不会溢出
+                int len = unscaledValues.length;
+                long[] a = new long[len];
+                for (int i = 0; i < len; i++) {
+                    a[i] = Math.abs(unscaledValues[i]);
+                }
+                result = new DecimalVector(a, dv.getScale());
+            } else {
+                int len = dv.size();
+                BigDecimal[] a = new BigDecimal[len];
+                for (int i = 0; i < len; i++) {
+                    if (!dv.isNull(i))
+                        a[i] = dv.getValue(i).getBigDecimal().abs();
+                }
+                result = new DecimalVector(a);
+            }
+            result.setNulls(dv.getNulls());
+            return result;
+        }
+        return null;
+    }
+
+    private static ValueVector sign(Function f, ValueVector[] args) {
+        ValueVector vv = args[0];
+        int len = vv.size();
+        int[] a = new int[len];
+        int[] intValues = VectorFunctions.getIntValues(vv);
+        if (intValues != null) {
+            for (int i = 0; i < len; i++) {
+                a[i] = Integer.signum(intValues[i]);
+            }
+        } else if (vv instanceof LongVector) {
+            long[] values = ((LongVector) vv).getValues();
+            for (int i = 0; i < len; i++) {
+                a[i] = Long.signum(values[i]);
+            }
+        } else if (vv instanceof DoubleVector) {
+            double[] values = ((DoubleVector) vv).getValues();
+            for (int i = 0; i < len; i++) {
+                a[i] = (int) Math.signum(values[i]);
+            }
+        } else if (vv instanceof FloatVector) {
+            float[] values = ((FloatVector) vv).getValues();
+            for (int i = 0; i < len; i++) {
+                a[i] = (int) Math.signum(values[i]);
+            }
+        } else {
+            return null;
+        }
+        return new IntVector(a, vv.getNulls());
+    }
+
+    private static ValueVector ceilOrFloor(ValueVector vv, boolean ceil) {
+        DoubleVector dv = toDoubleVector(vv);
+        if (dv == null)
+            return null;
+        double[] values = dv.getValues();
+        int len = values.length;
+        double[] a = new double[len];
+        if (ceil) {
+            for (int i = 0; i < len; i++) {
+                a[i] = Math.ceil(values[i]);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                a[i] = Math.floor(values[i]);
+            }
+        }
+        return new DoubleVector(a, dv.getNulls());
+    }
+
+    private static ValueVector sqrt(Function f, ValueVector[] args) {
+        DoubleVector dv = toDoubleVector(args[0]);
+        if (dv == null)
+            return null;
+        double[] values = dv.getValues();
+        int len = values.length;
+        double[] a = new double[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = Math.sqrt(values[i]);
+        }
+        return new DoubleVector(a, dv.getNulls());
+    }
+
+    // 跟Function中ROUND的算法保持一致，结果是DOUBLE
+    private static ValueVector round(Function f, ValueVector[] args) {
+        if (f.getType() != Value.DOUBLE)
+            return null;
+        double factor = 1.;
+        if (args.length > 1) {
+            Value digits = VectorFunctions.getConstant(args[1]);
+            if (digits == null)
+                return null;
+            factor = Math.pow(10., digits.getDouble());
+        }
+        DoubleVector dv = toDoubleVector(args[0]);
+        if (dv == null)
+            return null;
+        double[] values = dv.getValues();
+        int len = values.length;
+        double[] a = new double[len];
+        for (int i = 0; i < len; i++) {
+            double middleResult = values[i] * factor;
+            int oneWithSymbol = middleResult > 0 ? 1 : -1;
+            a[i] = Math.round(Math.abs(middleResult)) / factor * oneWithSymbol;
+        }
+        return new DoubleVector(a, dv.getNulls());
+    }
+
+    // MOD的结果是LONG，除数为0时由LongVector.modulus抛出DIVISION_BY_ZERO_1
+    private static ValueVector mod(Function f, ValueVector[] args) {
+        ValueVector l = args[0].convertTo(Value.LONG);
+        ValueVector r = args[1].convertTo(Value.LONG);
+        if (!(l instanceof LongVector) || r.getValueType() != Value.LONG)
+            return null;
+        return l.modulus(r);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector.function;
+
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+import org.lealone.db.value.Value;
+import org.lealone.sql.expression.function.Function;
+import org.lealone.sql.vector.DictionaryStringVector;
+import org.lealone.sql.vector.IntVector;
+import org.lealone.sql.vector.StringVector;
+import org.lealone.sql.vector.ValueVector;
+
+// 字典编码的向量只需要对字典中的每个值计算一次
+class StringVectorFunctions {
+
+    static void register() {
+        VectorFunction upper = (f, args) -> map(args[0], String::toUpperCase);
+        VectorFunction lower = (f, args) -> map(args[0], String::toLowerCase);
+        VectorFunction length = (f, args) -> mapToInt(f, args[0], String::length);
+        VectorFunctions.register(Function.UPPER, upper);
+        VectorFunctions.register(Function.UCASE, upper);
+        VectorFunctions.register(Function.LOWER, lower);
+        VectorFunctions.register(Function.LCASE, lower);
+        VectorFunctions.register(Function.LENGTH, length);
+        VectorFunctions.register(Function.CHAR_LENGTH, length);
+        VectorFunctions.register(Function.SUBSTRING, StringVectorFunctions::substring);
+        VectorFunctions.register(Function.SUBSTR, StringVectorFunctions::substring);
+        VectorFunctions.register(Function.LEFT, StringVectorFunctions::left);
+        VectorFunctions.register(Function.RIGHT, StringVectorFunctions::right);
+    }
+
+    // NULL的位置存放的是空串，也可以直接参与计算
+    private static ValueVector map(ValueVector vv, UnaryOperator<String> op) {
+        if (vv instanceof DictionaryStringVector) {
+            DictionaryStringVector dsv = (DictionaryStringVector) vv;
+            return dsv.withDictionary(map(dsv.getDictionary(), op));
+        }
+        if (vv instanceof StringVector)
+            return new StringVector(map(((StringVector) vv).getValues(), op), vv.getNulls());
+        return null;
+    }
+
+    private static String[] map(String[] values, UnaryOperator<String> op) {
+        int len = values.length;
+        String[] a = new String[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = op.apply(values[i]);
+        }
+        return a;
+    }
+
+    private static ValueVector mapToInt(Function f, ValueVector vv, ToIntFunction<String> op) {
+        int[] a;
+        if (vv instanceof DictionaryStringVector) {
+            DictionaryStringVector dsv = (DictionaryStringVector) vv;
+            int[] dictionaryResult = mapToInt(dsv.getDictionary(), op);
+            int[] codes = dsv.getCodes();
+            int len = codes.length;
+            a = new int[len];
+            for (int i = 0; i < len; i++) {
+                a[i] = dictionaryResult[codes[i]];
+            }
+        } else if (vv instanceof StringVector) {
+            a = mapToInt(((StringVector) vv).getValues(), op);
+        } else {
+            return null;
+        }
+        // LENGTH的结果类型是LONG
+        ValueVector result = new IntVector(a, vv.getNulls()).convertTo(f.getType());
+        return result.getValueType() == f.getType() ? result : null;
+    }
+
+    private static int[] mapToInt(String[] values, ToIntFunction<String> op) {
+        int len = values.length;
+        int[] a = new int[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = op.applyAsInt(values[i]);
+        }
+        return a;
+    }
+
+    // 以下几个函数的位置和长度参数只支持常量，跟Function中的算法保持一致
+    private static ValueVector substring(Function f, ValueVector[] args) {
+        Value v1 = VectorFunctions.getConstant(args[1]);
+        if (v1 == null)
+            return null;
+        int offset = v1.getInt();
+        int length = -1;
+        if (args.length > 2) {
+            Value v2 = VectorFunctions.getConstant(args[2]);
+            if (v2 == null)
+                return null;
+            length = Math.max(v2.getInt(), 0);
+        }
+        int len0 = length;
+        return map(args[0], s -> {
+            int len = s.length();
+            int start = offset < 0 ? len + offset : offset - 1;
+            if (start < 0)
+                start = 0;
+            else if (start > len)
+                start = len;
+            int n = len0 < 0 ? len : len0;
+            if (start + n > len)
+                n = len - start;
+            return s.substring(start, start + n);
+        });
+    }
+
+    private static ValueVector left(Function f, ValueVector[] args) {
+        Value v1 = VectorFunctions.getConstant(args[1]);
+        if (v1 == null)
+            return null;
+        int count = Math.max(v1.getInt(), 0);
+        return map(args[0], s -> count >= s.length() ? s : s.substring(0, count));
+    }
+
+    private static ValueVector right(Function f, ValueVector[] args) {
+        Value v1 = VectorFunctions.getConstant(args[1]);
+        if (v1 == null)
+            return null;
+        int count = Math.max(v1.getInt(), 0);
+        return map(args[0], s -> count >= s.length() ? s : s.substring(s.length() - count));
+    }
+}
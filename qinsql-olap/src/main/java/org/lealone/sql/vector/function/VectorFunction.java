@@ -0,0 +1,15 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector.function;
+
+import org.lealone.sql.expression.function.Function;
+import org.lealone.sql.vector.ValueVector;
+
+// 向量化的内置函数，遇到不支持的参数类型时返回null，由调用者退回到逐行计算
+public interface VectorFunction {
+
+    ValueVector call(Function f, ValueVector[] args);
+}
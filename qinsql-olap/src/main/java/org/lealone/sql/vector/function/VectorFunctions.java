@@ -0,0 +1,49 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.lealone.sql.vector.function;
+
+import java.util.HashMap;
+
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.vector.IntVector;
+import org.lealone.sql.vector.SingleValueVector;
+import org.lealone.sql.vector.ValueVector;
+
+// 按Function的id注册向量化的实现，没有注册的函数继续逐行计算
+public class VectorFunctions {
+
+    private static final HashMap<Integer, VectorFunction> FUNCTIONS = new HashMap<>();
+
+    static {
+        NumericVectorFunctions.register();
+        StringVectorFunctions.register();
+        DateTimeVectorFunctions.register();
+    }
+
+    public static void register(int functionType, VectorFunction f) {
+        FUNCTIONS.put(functionType, f);
+    }
+
+    public static VectorFunction get(int functionType) {
+        return FUNCTIONS.get(functionType);
+    }
+
+    static int[] getIntValues(ValueVector vv) {
+        if (vv instanceof IntVector)
+            return ((IntVector) vv).getValues();
+        return null;
+    }
+
+    // 参数是非NULL的常量时返回它的值，否则返回null
+    static Value getConstant(ValueVector vv) {
+        if (vv instanceof SingleValueVector) {
+            Value v = ((SingleValueVector) vv).getValue();
+            return v == ValueNull.INSTANCE ? null : v;
+        }
+        return null;
+    }
+}
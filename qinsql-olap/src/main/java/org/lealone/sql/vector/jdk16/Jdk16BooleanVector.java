@@ -5,40 +5,20 @@
  */
 package org.lealone.sql.vector.jdk16;
 
-import org.lealone.db.value.Value;
-import org.lealone.db.value.ValueBoolean;
+import org.lealone.sql.vector.BooleanVector;
 
-public class Jdk16BooleanVector extends Jdk16ValueVector {
-
-    private boolean[] values;
+// VectorMask先写到boolean[]，再压缩成跟BooleanVector一样的位图，这样AND/OR/NOT和过滤都可以共用
+public class Jdk16BooleanVector extends BooleanVector {
 
     public Jdk16BooleanVector() {
     }
 
     public Jdk16BooleanVector(boolean[] values) {
-        this.values = values;
-    }
-
-    public boolean[] getValues() {
-        return values;
-    }
-
-    public void setValues(boolean[] values) {
-        this.values = values;
-    }
-
-    @Override
-    public boolean isTrue(int index) {
-        return values[index];
-    }
-
-    @Override
-    public int size() {
-        return values.length;
+        super(values);
     }
 
-    @Override
-    public Value getValue(int index) {
-        return ValueBoolean.get(values[index]);
+    // 结果为NULL的行在where条件中不成立，直接清成false
+    public Jdk16BooleanVector(boolean[] values, long[] nulls) {
+        super(values, nulls);
     }
 }
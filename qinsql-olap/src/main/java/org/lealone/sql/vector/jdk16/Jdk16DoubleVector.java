@@ -5,6 +5,316 @@
  */
 package org.lealone.sql.vector.jdk16;
 
-public class Jdk16DoubleVector extends Jdk16ValueVector {
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDouble;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.vector.BooleanVector;
+import org.lealone.sql.vector.SingleValueVector;
+import org.lealone.sql.vector.ValueVector;
 
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// 逐个lane的浮点运算跟标量运算的结果完全一样，但是SUM改变累加顺序后结果会不同，所以SUM还是用父类的实现
+public class Jdk16DoubleVector extends org.lealone.sql.vector.DoubleVector {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    public Jdk16DoubleVector(double[] values) {
+        super(values);
+    }
+
+    public Jdk16DoubleVector(double[] values, long[] nulls) {
+        super(values, nulls);
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        return Jdk16ValueVectorFactory.wrap(super.convertTo(targetType));
+    }
+
+    // SIMD按IEEE的规则比较，NaN跟任何值比较都是false，遇到NaN时交给父类按row模式的规则比较
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        double[] values1 = getValues();
+        int len = values1.length;
+        long[] bits = new long[(len + 63) >>> 6];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            VectorOperators.Comparison op = Jdk16IntVector.getOperator(compareType);
+            double v = v0.getDouble();
+            if (Double.isNaN(v))
+                return super.compare(vv, compareType);
+            boolean hasNaN = false;
+            for (; i < upperBound; i += SPECIES.length()) {
+                DoubleVector va = DoubleVector.fromArray(SPECIES, values1, i);
+                bits[i >>> 6] |= va.compare(op, v).toLong() << (i & 63);
+                hasNaN |= va.test(VectorOperators.IS_NAN).anyTrue();
+            }
+            if (i < len) {
+                VectorMask<Double> m = SPECIES.indexInRange(i, len);
+                DoubleVector va = DoubleVector.fromArray(SPECIES, values1, i, m);
+                bits[i >>> 6] |= va.compare(op, v, m).toLong() << (i & 63);
+                hasNaN |= va.test(VectorOperators.IS_NAN, m).anyTrue();
+            }
+            if (hasNaN)
+                return super.compare(vv, compareType);
+            return createBooleanVector(bits, len, nulls, null, compareType);
+        }
+        ValueVector vv2 = vv.convertTo(Value.DOUBLE);
+        if (!(vv2 instanceof org.lealone.sql.vector.DoubleVector))
+            return super.compare(vv, compareType);
+        VectorOperators.Comparison op = Jdk16IntVector.getOperator(compareType);
+        double[] values2 = ((org.lealone.sql.vector.DoubleVector) vv2).getValues();
+        boolean hasNaN = false;
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, values1, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, values2, i);
+            bits[i >>> 6] |= va.compare(op, vb).toLong() << (i & 63);
+            hasNaN |= va.test(VectorOperators.IS_NAN).or(vb.test(VectorOperators.IS_NAN)).anyTrue();
+        }
+        if (i < len) {
+            VectorMask<Double> m = SPECIES.indexInRange(i, len);
+            DoubleVector va = DoubleVector.fromArray(SPECIES, values1, i, m);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, values2, i, m);
+            bits[i >>> 6] |= va.compare(op, vb, m).toLong() << (i & 63);
+            hasNaN |= va.test(VectorOperators.IS_NAN, m).or(vb.test(VectorOperators.IS_NAN, m)).anyTrue();
+        }
+        if (hasNaN)
+            return super.compare(vv, compareType);
+        return createBooleanVector(bits, len, nulls, vv2.getNulls(), compareType);
+    }
+
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        double[] values1 = getValues();
+        int len = values1.length;
+        long[] bits = mask.getBits();
+        double[] values = new double[len];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        if (vv instanceof SingleValueVector) {
+            SingleValueVector sv = (SingleValueVector) vv;
+            double v = sv.getValue() == ValueNull.INSTANCE ? 0 : sv.getValue().getDouble();
+            for (; i < upperBound; i += SPECIES.length()) {
+                VectorMask<Double> m = getMask(bits, i);
+                DoubleVector.fromArray(SPECIES, values1, i).blend(v, m).intoArray(values, i);
+            }
+            for (; i < len; i++) {
+                values[i] = isSet(bits, i) ? v : values1[i];
+            }
+            return new Jdk16DoubleVector(values, blendNulls(sv, mask));
+        }
+        if (!(vv instanceof org.lealone.sql.vector.DoubleVector))
+            return super.blend(vv, mask);
+        double[] values2 = ((org.lealone.sql.vector.DoubleVector) vv).getValues();
+        for (; i < upperBound; i += SPECIES.length()) {
+            VectorMask<Double> m = getMask(bits, i);
+            DoubleVector va = DoubleVector.fromArray(SPECIES, values1, i);
+            va.blend(DoubleVector.fromArray(SPECIES, values2, i), m).intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            values[i] = isSet(bits, i) ? values2[i] : values1[i];
+        }
+        return new Jdk16DoubleVector(values, blendNulls(vv.getNulls(), mask));
+    }
+
+    @Override
+    public ValueVector negate() {
+        double[] values1 = getValues();
+        int len = values1.length;
+        double[] values = new double[len];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, values1, i).neg().intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            values[i] = -values1[i];
+        }
+        return new Jdk16DoubleVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        return lanewise(vv, VectorOperators.ADD);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        return lanewise(vv, VectorOperators.SUB);
+    }
+
+    @Override
+    public ValueVector multiply(ValueVector vv) {
+        return lanewise(vv, VectorOperators.MUL);
+    }
+
+    // 除数中有0时交给父类，由它对非NULL的行抛出异常
+    @Override
+    public ValueVector divide(ValueVector vv) {
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 != ValueNull.INSTANCE && v0.getDouble() == 0)
+                return super.divide(vv);
+        } else if (vv instanceof org.lealone.sql.vector.DoubleVector) {
+            if (hasZero(((org.lealone.sql.vector.DoubleVector) vv).getValues(), getValues().length))
+                return Jdk16ValueVectorFactory.wrap(super.divide(vv));
+        }
+        return lanewise(vv, VectorOperators.DIV);
+    }
+
+    private static boolean hasZero(double[] values, int len) {
+        len = Math.min(len, values.length);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        for (; i < upperBound; i += SPECIES.length()) {
+            if (DoubleVector.fromArray(SPECIES, values, i).compare(VectorOperators.EQ, 0).anyTrue())
+                return true;
+        }
+        for (; i < len; i++) {
+            if (values[i] == 0)
+                return true;
+        }
+        return false;
+    }
+
+    private ValueVector lanewise(ValueVector vv, VectorOperators.Binary op) {
+        double[] values1 = getValues();
+        double[] values2 = null;
+        double v = 0;
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new Jdk16DoubleVector(new double[values1.length], allNulls(values1.length));
+            v = v0.getDouble();
+        } else if (vv instanceof org.lealone.sql.vector.DoubleVector) {
+            values2 = ((org.lealone.sql.vector.DoubleVector) vv).getValues();
+        } else if (op == VectorOperators.ADD) {
+            return Jdk16ValueVectorFactory.wrap(super.add(vv));
+        } else if (op == VectorOperators.SUB) {
+            return Jdk16ValueVectorFactory.wrap(super.subtract(vv));
+        } else if (op == VectorOperators.MUL) {
+            return Jdk16ValueVectorFactory.wrap(super.multiply(vv));
+        } else {
+            return Jdk16ValueVectorFactory.wrap(super.divide(vv));
+        }
+        double[] values = new double[values1.length];
+        int len = values2 == null ? values1.length : Math.min(values1.length, values2.length);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        DoubleVector vb = DoubleVector.broadcast(SPECIES, v);
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, values1, i);
+            if (values2 != null)
+                vb = DoubleVector.fromArray(SPECIES, values2, i);
+            va.lanewise(op, vb).intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            double x = values1[i];
+            double y = values2 == null ? v : values2[i];
+            if (op == VectorOperators.ADD)
+                values[i] = x + y;
+            else if (op == VectorOperators.SUB)
+                values[i] = x - y;
+            else if (op == VectorOperators.MUL)
+                values[i] = x * y;
+            else
+                values[i] = x / y;
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new Jdk16DoubleVector(values, values2 == null ? nulls : orNulls(nulls, vv.getNulls()));
+    }
+
+    @Override
+    public ValueVector modulus(ValueVector vv) {
+        return Jdk16ValueVectorFactory.wrap(super.modulus(vv));
+    }
+
+    // 没有NULL也不需要过滤时直接归约，否则把有效行的位图逐段转成VectorMask做带mask的运算
+    // SIMD的MIN/MAX会返回NaN，并且认为-0.0比0.0小，遇到这两种情况时交给父类，保证结果跟父类完全一样
+    @Override
+    public Value min(ValueVector bvv) {
+        double[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.min(va);
+            else
+                acc = acc.lanewise(VectorOperators.MIN, va, getMask(valid, i));
+        }
+        double min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                min = Math.min(min, values[i]);
+        }
+        if (min == 0 || Double.isNaN(min))
+            return super.min(bvv);
+        return ValueDouble.get(min);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        double[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.max(va);
+            else
+                acc = acc.lanewise(VectorOperators.MAX, va, getMask(valid, i));
+        }
+        double max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                max = Math.max(max, values[i]);
+        }
+        if (max == 0 || Double.isNaN(max))
+            return super.max(bvv);
+        return ValueDouble.get(max);
+    }
+
+    private static VectorMask<Double> getMask(long[] bits, int i) {
+        return VectorMask.fromLong(SPECIES, bits[i >>> 6] >>> (i & 63));
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        double[] values1 = getValues();
+        if (bvv == null)
+            return new Jdk16DoubleVector(values1, nulls);
+        int[] sel = getSelection(bvv);
+        int size = sel.length;
+        double[] a = new double[size];
+        int k = 0;
+        int upperBound = SPECIES.loopBound(size);
+        for (; k < upperBound; k += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, values1, 0, sel, k).intoArray(a, k);
+        }
+        for (; k < size; k++) {
+            a[k] = values1[sel[k]];
+        }
+        return new Jdk16DoubleVector(a, filterNulls(bvv));
+    }
 }
@@ -5,6 +5,281 @@
  */
 package org.lealone.sql.vector.jdk16;
 
-public class Jdk16FloatVector extends Jdk16ValueVector {
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueFloat;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.vector.BooleanVector;
+import org.lealone.sql.vector.SingleValueVector;
+import org.lealone.sql.vector.ValueVector;
 
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// 跟Jdk16DoubleVector一样，SUM用父类的实现
+public class Jdk16FloatVector extends org.lealone.sql.vector.FloatVector {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    public Jdk16FloatVector(float[] values) {
+        super(values);
+    }
+
+    public Jdk16FloatVector(float[] values, long[] nulls) {
+        super(values, nulls);
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        return Jdk16ValueVectorFactory.wrap(super.convertTo(targetType));
+    }
+
+    // SIMD按IEEE的规则比较，NaN跟任何值比较都是false，遇到NaN时交给父类按row模式的规则比较
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        float[] values1 = getValues();
+        int len = values1.length;
+        long[] bits = new long[(len + 63) >>> 6];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            VectorOperators.Comparison op = Jdk16IntVector.getOperator(compareType);
+            float v = v0.getFloat();
+            if (Float.isNaN(v))
+                return super.compare(vv, compareType);
+            boolean hasNaN = false;
+            for (; i < upperBound; i += SPECIES.length()) {
+                FloatVector va = FloatVector.fromArray(SPECIES, values1, i);
+                bits[i >>> 6] |= va.compare(op, v).toLong() << (i & 63);
+                hasNaN |= va.test(VectorOperators.IS_NAN).anyTrue();
+            }
+            if (i < len) {
+                VectorMask<Float> m = SPECIES.indexInRange(i, len);
+                FloatVector va = FloatVector.fromArray(SPECIES, values1, i, m);
+                bits[i >>> 6] |= va.compare(op, v, m).toLong() << (i & 63);
+                hasNaN |= va.test(VectorOperators.IS_NAN, m).anyTrue();
+            }
+            if (hasNaN)
+                return super.compare(vv, compareType);
+            return createBooleanVector(bits, len, nulls, null, compareType);
+        }
+        ValueVector vv2 = vv.convertTo(Value.FLOAT);
+        if (!(vv2 instanceof org.lealone.sql.vector.FloatVector))
+            return super.compare(vv, compareType);
+        VectorOperators.Comparison op = Jdk16IntVector.getOperator(compareType);
+        float[] values2 = ((org.lealone.sql.vector.FloatVector) vv2).getValues();
+        boolean hasNaN = false;
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, values1, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, values2, i);
+            bits[i >>> 6] |= va.compare(op, vb).toLong() << (i & 63);
+            hasNaN |= va.test(VectorOperators.IS_NAN).or(vb.test(VectorOperators.IS_NAN)).anyTrue();
+        }
+        if (i < len) {
+            VectorMask<Float> m = SPECIES.indexInRange(i, len);
+            FloatVector va = FloatVector.fromArray(SPECIES, values1, i, m);
+            FloatVector vb = FloatVector.fromArray(SPECIES, values2, i, m);
+            bits[i >>> 6] |= va.compare(op, vb, m).toLong() << (i & 63);
+            hasNaN |= va.test(VectorOperators.IS_NAN, m).or(vb.test(VectorOperators.IS_NAN, m)).anyTrue();
+        }
+        if (hasNaN)
+            return super.compare(vv, compareType);
+        return createBooleanVector(bits, len, nulls, vv2.getNulls(), compareType);
+    }
+
+    @Override
+    public ValueVector negate() {
+        float[] values1 = getValues();
+        int len = values1.length;
+        float[] values = new float[len];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, values1, i).neg().intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            values[i] = -values1[i];
+        }
+        return new Jdk16FloatVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        return lanewise(vv, VectorOperators.ADD);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        return lanewise(vv, VectorOperators.SUB);
+    }
+
+    @Override
+    public ValueVector multiply(ValueVector vv) {
+        return lanewise(vv, VectorOperators.MUL);
+    }
+
+    @Override
+    public ValueVector divide(ValueVector vv) {
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 != ValueNull.INSTANCE && v0.getFloat() == 0)
+                return super.divide(vv);
+        } else if (vv instanceof org.lealone.sql.vector.FloatVector) {
+            if (hasZero(((org.lealone.sql.vector.FloatVector) vv).getValues(), getValues().length))
+                return Jdk16ValueVectorFactory.wrap(super.divide(vv));
+        }
+        return lanewise(vv, VectorOperators.DIV);
+    }
+
+    private static boolean hasZero(float[] values, int len) {
+        len = Math.min(len, values.length);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        for (; i < upperBound; i += SPECIES.length()) {
+            if (FloatVector.fromArray(SPECIES, values, i).compare(VectorOperators.EQ, 0).anyTrue())
+                return true;
+        }
+        for (; i < len; i++) {
+            if (values[i] == 0)
+                return true;
+        }
+        return false;
+    }
+
+    private ValueVector lanewise(ValueVector vv, VectorOperators.Binary op) {
+        float[] values1 = getValues();
+        float[] values2 = null;
+        float v = 0;
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new Jdk16FloatVector(new float[values1.length], allNulls(values1.length));
+            v = v0.getFloat();
+        } else if (vv instanceof org.lealone.sql.vector.FloatVector) {
+            values2 = ((org.lealone.sql.vector.FloatVector) vv).getValues();
+        } else if (op == VectorOperators.ADD) {
+            return Jdk16ValueVectorFactory.wrap(super.add(vv));
+        } else if (op == VectorOperators.SUB) {
+            return Jdk16ValueVectorFactory.wrap(super.subtract(vv));
+        } else if (op == VectorOperators.MUL) {
+            return Jdk16ValueVectorFactory.wrap(super.multiply(vv));
+        } else {
+            return Jdk16ValueVectorFactory.wrap(super.divide(vv));
+        }
+        float[] values = new float[values1.length];
+        int len = values2 == null ? values1.length : Math.min(values1.length, values2.length);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        FloatVector vb = FloatVector.broadcast(SPECIES, v);
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, values1, i);
+            if (values2 != null)
+                vb = FloatVector.fromArray(SPECIES, values2, i);
+            va.lanewise(op, vb).intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            float x = values1[i];
+            float y = values2 == null ? v : values2[i];
+            if (op == VectorOperators.ADD)
+                values[i] = x + y;
+            else if (op == VectorOperators.SUB)
+                values[i] = x - y;
+            else if (op == VectorOperators.MUL)
+                values[i] = x * y;
+            else
+                values[i] = x / y;
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new Jdk16FloatVector(values, values2 == null ? nulls : orNulls(nulls, vv.getNulls()));
+    }
+
+    @Override
+    public ValueVector modulus(ValueVector vv) {
+        return Jdk16ValueVectorFactory.wrap(super.modulus(vv));
+    }
+
+    // 没有NULL也不需要过滤时直接归约，否则把有效行的位图逐段转成VectorMask做带mask的运算
+    // SIMD的MIN/MAX会返回NaN，并且认为-0.0比0.0小，遇到这两种情况时交给父类，保证结果跟父类完全一样
+    @Override
+    public Value min(ValueVector bvv) {
+        float[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        FloatVector acc = FloatVector.broadcast(SPECIES, Float.POSITIVE_INFINITY);
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.min(va);
+            else
+                acc = acc.lanewise(VectorOperators.MIN, va, getMask(valid, i));
+        }
+        float min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                min = Math.min(min, values[i]);
+        }
+        if (min == 0 || Float.isNaN(min))
+            return super.min(bvv);
+        return ValueFloat.get(min);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        float[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        FloatVector acc = FloatVector.broadcast(SPECIES, Float.NEGATIVE_INFINITY);
+        for (; i < upperBound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.max(va);
+            else
+                acc = acc.lanewise(VectorOperators.MAX, va, getMask(valid, i));
+        }
+        float max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                max = Math.max(max, values[i]);
+        }
+        if (max == 0 || Float.isNaN(max))
+            return super.max(bvv);
+        return ValueFloat.get(max);
+    }
+
+    private static VectorMask<Float> getMask(long[] bits, int i) {
+        return VectorMask.fromLong(SPECIES, bits[i >>> 6] >>> (i & 63));
+    }
+
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        float[] values1 = getValues();
+        if (bvv == null)
+            return new Jdk16FloatVector(values1, nulls);
+        int[] sel = getSelection(bvv);
+        int size = sel.length;
+        float[] a = new float[size];
+        int k = 0;
+        int upperBound = SPECIES.loopBound(size);
+        for (; k < upperBound; k += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, values1, 0, sel, k).intoArray(a, k);
+        }
+        for (; k < size; k++) {
+            a[k] = values1[sel[k]];
+        }
+        return new Jdk16FloatVector(a, filterNulls(bvv));
+    }
 }
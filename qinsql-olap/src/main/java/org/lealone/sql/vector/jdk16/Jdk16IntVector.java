@@ -8,171 +8,402 @@ package org.lealone.sql.vector.jdk16;
 import org.lealone.common.exceptions.DbException;
 import org.lealone.db.value.Value;
 import org.lealone.db.value.ValueInt;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
 import org.lealone.sql.expression.condition.Comparison;
+import org.lealone.sql.vector.BooleanVector;
 import org.lealone.sql.vector.SingleValueVector;
 import org.lealone.sql.vector.ValueVector;
 
 import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
 import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorOperators;
 import jdk.incubator.vector.VectorSpecies;
 
-public class Jdk16IntVector extends Jdk16ValueVector {
+// 用SIMD实现热点操作，其他操作以及溢出、除0这些需要逐行判断的情况都交给作为参考实现的父类
+public class Jdk16IntVector extends org.lealone.sql.vector.IntVector {
 
     private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
-
-    private int[] values;
+    // 跟SPECIES的位数相同，用来把int扩展成long
+    private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED;
 
     public Jdk16IntVector(int[] values) {
-        this.values = values;
+        super(values);
     }
 
-    @Override
-    public Jdk16BooleanVector compare(ValueVector vv, int compareType) {
-        switch (compareType) {
-        case Comparison.EQUAL: {
-            if (vv instanceof SingleValueVector) {
-                int[] values1 = this.values;
-                int v = ((SingleValueVector) vv).getValue().getInt();
-                boolean[] values = new boolean[values1.length];
-                int i = 0;
-                int upperBound = SPECIES.loopBound(values.length);
-                for (; i < upperBound; i += SPECIES.length()) {
-                    IntVector va = IntVector.fromArray(SPECIES, this.values, i);
-                    VectorMask<Integer> mask = va.compare(VectorOperators.EQ, v);
-                    mask.intoArray(values, i);
-                }
-
-                for (; i < this.values.length; i++) {
-                    values[i] = values1[i] == v;
-                }
-                return new Jdk16BooleanVector(values);
-            }
-            int[] values1 = this.values;
-            int[] values2 = ((Jdk16IntVector) vv).values;
-            boolean[] values = new boolean[values1.length];
-            for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i] == values2[i];
-            }
-            int i = 0;
-            int upperBound = SPECIES.loopBound(values.length);
-            for (; i < upperBound; i += SPECIES.length()) {
-                IntVector va = IntVector.fromArray(SPECIES, this.values, i);
-                IntVector vb = IntVector.fromArray(SPECIES, values2, i);
-                VectorMask<Integer> mask = va.compare(VectorOperators.EQ, vb);
-                mask.intoArray(values, i);
-            }
+    public Jdk16IntVector(int[] values, long[] nulls) {
+        super(values, nulls);
+    }
 
-            for (; i < this.values.length; i++) {
-                values[i] = values1[i] == values2[i];
-            }
-            return new Jdk16BooleanVector(values);
-        }
+    static VectorOperators.Comparison getOperator(int compareType) {
+        switch (compareType) {
+        case Comparison.EQUAL:
         case Comparison.EQUAL_NULL_SAFE:
-            return null;
+            return VectorOperators.EQ;
         case Comparison.BIGGER_EQUAL:
-            return null;
-        case Comparison.BIGGER: {
-            if (vv instanceof SingleValueVector) {
-                int[] values1 = this.values;
-                int v = ((SingleValueVector) vv).getValue().getInt();
-                boolean[] values = new boolean[values1.length];
-                int i = 0;
-                int upperBound = SPECIES.loopBound(values.length);
-                for (; i < upperBound; i += SPECIES.length()) {
-                    IntVector va = IntVector.fromArray(SPECIES, this.values, i);
-                    VectorMask<Integer> mask = va.compare(VectorOperators.GT, v);
-                    mask.intoArray(values, i);
-                }
-
-                for (; i < this.values.length; i++) {
-                    values[i] = values1[i] > v;
-                }
-                return new Jdk16BooleanVector(values);
-            }
-            return null;
-        }
+            return VectorOperators.GE;
+        case Comparison.BIGGER:
+            return VectorOperators.GT;
         case Comparison.SMALLER_EQUAL:
-            return null;
+            return VectorOperators.LE;
         case Comparison.SMALLER:
-            return null;
+            return VectorOperators.LT;
         case Comparison.NOT_EQUAL:
-            return null;
         case Comparison.NOT_EQUAL_NULL_SAFE:
-            return null;
+            return VectorOperators.NE;
         default:
             throw DbException.getInternalError("compareType=" + compareType);
         }
     }
 
     @Override
-    public ValueVector add(ValueVector vv) {
+    public ValueVector convertTo(int targetType) {
+        return Jdk16ValueVectorFactory.wrap(super.convertTo(targetType));
+    }
+
+    // 比较结果直接用VectorMask.toLong()写到位图中，SPECIES的长度总是能整除64
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        int[] values1 = getValues();
+        int len = values1.length;
+        long[] bits = new long[(len + 63) >>> 6];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            VectorOperators.Comparison op = getOperator(compareType);
+            int v = v0.getInt();
+            for (; i < upperBound; i += SPECIES.length()) {
+                IntVector va = IntVector.fromArray(SPECIES, values1, i);
+                bits[i >>> 6] |= va.compare(op, v).toLong() << (i & 63);
+            }
+            // 剩下不够一个SPECIES的部分用带mask的方式处理
+            if (i < len) {
+                VectorMask<Integer> m = SPECIES.indexInRange(i, len);
+                IntVector va = IntVector.fromArray(SPECIES, values1, i, m);
+                bits[i >>> 6] |= va.compare(op, v, m).toLong() << (i & 63);
+            }
+            return createBooleanVector(bits, len, nulls, null, compareType);
+        }
+        ValueVector vv2 = vv.convertTo(Value.INT);
+        if (!(vv2 instanceof org.lealone.sql.vector.IntVector))
+            return super.compare(vv, compareType);
+        VectorOperators.Comparison op = getOperator(compareType);
+        int[] values2 = ((org.lealone.sql.vector.IntVector) vv2).getValues();
+        for (; i < upperBound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, values1, i);
+            IntVector vb = IntVector.fromArray(SPECIES, values2, i);
+            bits[i >>> 6] |= va.compare(op, vb).toLong() << (i & 63);
+        }
+        if (i < len) {
+            VectorMask<Integer> m = SPECIES.indexInRange(i, len);
+            IntVector va = IntVector.fromArray(SPECIES, values1, i, m);
+            IntVector vb = IntVector.fromArray(SPECIES, values2, i, m);
+            bits[i >>> 6] |= va.compare(op, vb, m).toLong() << (i & 63);
+        }
+        return createBooleanVector(bits, len, nulls, vv2.getNulls(), compareType);
+    }
+
+    // mask中每一段跟SPECIES等长的位直接转成VectorMask，再用IntVector.blend合并
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        int[] values1 = getValues();
+        int len = values1.length;
+        long[] bits = mask.getBits();
+        int[] values = new int[len];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
         if (vv instanceof SingleValueVector) {
-            int[] values1 = this.values;
-            int v = ((SingleValueVector) vv).getValue().getInt();
-            int[] values = new int[values1.length];
-            for (int i = 0; i < values1.length; i++) {
-                values[i] = values1[i] + v;
+            SingleValueVector sv = (SingleValueVector) vv;
+            int v = sv.getValue() == ValueNull.INSTANCE ? 0 : sv.getValue().getInt();
+            for (; i < upperBound; i += SPECIES.length()) {
+                VectorMask<Integer> m = getMask(bits, i);
+                IntVector.fromArray(SPECIES, values1, i).blend(v, m).intoArray(values, i);
+            }
+            for (; i < len; i++) {
+                values[i] = isSet(bits, i) ? v : values1[i];
             }
-            return new Jdk16IntVector(values);
+            return new Jdk16IntVector(values, blendNulls(sv, mask));
+        }
+        if (!(vv instanceof org.lealone.sql.vector.IntVector))
+            return super.blend(vv, mask);
+        int[] values2 = ((org.lealone.sql.vector.IntVector) vv).getValues();
+        for (; i < upperBound; i += SPECIES.length()) {
+            VectorMask<Integer> m = getMask(bits, i);
+            IntVector va = IntVector.fromArray(SPECIES, values1, i);
+            va.blend(IntVector.fromArray(SPECIES, values2, i), m).intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            values[i] = isSet(bits, i) ? values2[i] : values1[i];
+        }
+        return new Jdk16IntVector(values, blendNulls(vv.getNulls(), mask));
+    }
+
+    @Override
+    public ValueVector negate() {
+        int[] values1 = getValues();
+        int len = values1.length;
+        int[] values = new int[len];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        IntVector acc = IntVector.zero(SPECIES);
+        for (; i < upperBound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, values1, i);
+            IntVector vc = va.neg();
+            vc.intoArray(values, i);
+            acc = acc.or(va.and(vc)); // 只有MIN_VALUE取反后还是负数
+        }
+        int overflow = acc.reduceLanes(VectorOperators.OR);
+        for (; i < len; i++) {
+            int x = values1[i];
+            values[i] = -x;
+            overflow |= x & -x;
+        }
+        if (overflow < 0) // 由父类找出溢出的非NULL行
+            return Jdk16ValueVectorFactory.wrap(super.negate());
+        return new Jdk16IntVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        return addOrSubtract(vv, true);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        return addOrSubtract(vv, false);
+    }
+
+    // 每个lane各自累积溢出标志，最后再归约成一个，有溢出时交给父类逐行检查
+    private ValueVector addOrSubtract(ValueVector vv, boolean add) {
+        int[] values1 = getValues();
+        int[] values2 = null;
+        int v = 0;
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new Jdk16IntVector(new int[values1.length], allNulls(values1.length));
+            v = v0.getInt();
+        } else if (vv instanceof org.lealone.sql.vector.IntVector) {
+            values2 = ((org.lealone.sql.vector.IntVector) vv).getValues();
+        } else {
+            return Jdk16ValueVectorFactory.wrap(add ? super.add(vv) : super.subtract(vv));
         }
-        int[] values1 = this.values;
-        int[] values2 = ((Jdk16IntVector) vv).values;
         int[] values = new int[values1.length];
+        int len = values2 == null ? values1.length : Math.min(values1.length, values2.length);
         int i = 0;
-        int len = Math.min(values1.length, values2.length);
         int upperBound = SPECIES.loopBound(len);
+        IntVector vb = IntVector.broadcast(SPECIES, v);
+        IntVector acc = IntVector.zero(SPECIES);
         for (; i < upperBound; i += SPECIES.length()) {
-            IntVector va = IntVector.fromArray(SPECIES, this.values, i);
-            IntVector vb = IntVector.fromArray(SPECIES, values2, i);
-            IntVector vc = va.add(vb);
+            IntVector va = IntVector.fromArray(SPECIES, values1, i);
+            if (values2 != null)
+                vb = IntVector.fromArray(SPECIES, values2, i);
+            IntVector vc;
+            if (add) {
+                vc = va.add(vb);
+                acc = acc.or(va.lanewise(VectorOperators.XOR, vc).and(vb.lanewise(VectorOperators.XOR, vc)));
+            } else {
+                vc = va.sub(vb);
+                acc = acc.or(va.lanewise(VectorOperators.XOR, vb).and(va.lanewise(VectorOperators.XOR, vc)));
+            }
             vc.intoArray(values, i);
         }
+        int overflow = acc.reduceLanes(VectorOperators.OR);
         for (; i < len; i++) {
-            values[i] = values1[i] + values2[i];
+            int x = values1[i];
+            int y = values2 == null ? v : values2[i];
+            int r = add ? x + y : x - y;
+            values[i] = r;
+            overflow |= add ? (x ^ r) & (y ^ r) : (x ^ y) & (x ^ r);
         }
+        if (overflow < 0)
+            return Jdk16ValueVectorFactory.wrap(add ? super.add(vv) : super.subtract(vv));
         for (; i < values1.length; i++) {
             values[i] = values1[i];
         }
-        return new Jdk16IntVector(values);
+        return new Jdk16IntVector(values, values2 == null ? nulls : orNulls(nulls, vv.getNulls()));
     }
 
+    // 跟父类一样先用两边绝对值的最大值判断乘积会不会溢出，可能溢出时交给父类用long计算
     @Override
-    public ValueVector subtract(ValueVector vv) {
-        return null;
+    public ValueVector multiply(ValueVector vv) {
+        int[] values1 = getValues();
+        int[] values2 = null;
+        int v = 0;
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new Jdk16IntVector(new int[values1.length], allNulls(values1.length));
+            v = v0.getInt();
+        } else if (vv instanceof org.lealone.sql.vector.IntVector) {
+            values2 = ((org.lealone.sql.vector.IntVector) vv).getValues();
+        } else {
+            return Jdk16ValueVectorFactory.wrap(super.multiply(vv));
+        }
+        int len = values2 == null ? values1.length : Math.min(values1.length, values2.length);
+        long maxAbs2 = values2 == null ? Math.abs((long) v) : maxAbs(values2, len);
+        if (maxAbs(values1, len) * maxAbs2 > Integer.MAX_VALUE)
+            return Jdk16ValueVectorFactory.wrap(super.multiply(vv));
+        int[] values = new int[values1.length];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        IntVector vb = IntVector.broadcast(SPECIES, v);
+        for (; i < upperBound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, values1, i);
+            if (values2 != null)
+                vb = IntVector.fromArray(SPECIES, values2, i);
+            va.mul(vb).intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            values[i] = values1[i] * (values2 == null ? v : values2[i]);
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new Jdk16IntVector(values, values2 == null ? nulls : orNulls(nulls, vv.getNulls()));
     }
 
-    @Override
-    public ValueVector multiply(ValueVector vv) {
-        return null;
+    // 绝对值的最大值，用来判断乘积是否可能溢出
+    private static long maxAbs(int[] values, int len) {
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        IntVector vmin = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+        IntVector vmax = IntVector.broadcast(SPECIES, Integer.MIN_VALUE);
+        for (; i < upperBound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, values, i);
+            vmin = vmin.min(va);
+            vmax = vmax.max(va);
+        }
+        int min = vmin.reduceLanes(VectorOperators.MIN);
+        int max = vmax.reduceLanes(VectorOperators.MAX);
+        for (; i < len; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        return Math.max(Math.abs((long) min), Math.abs((long) max));
     }
 
+    // 整数除法没有对应的SIMD指令，直接用父类的实现
     @Override
     public ValueVector divide(ValueVector vv) {
-        return null;
+        return Jdk16ValueVectorFactory.wrap(super.divide(vv));
     }
 
     @Override
     public ValueVector modulus(ValueVector vv) {
-        return null;
+        return Jdk16ValueVectorFactory.wrap(super.modulus(vv));
     }
 
     @Override
-    public int size() {
-        return values.length;
+    public Value sum() {
+        return sum(null);
     }
 
+    // SUM(INT)的结果是LONG，每段int先把无效的行清成0，再扩展成long累加，这样就不会溢出
     @Override
-    public Value getValue(int index) {
-        return ValueInt.get(values[index]);
+    public Value sum(ValueVector bvv) {
+        int[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        int parts = SPECIES.length() / LONG_SPECIES.length();
+        LongVector acc = LongVector.zero(LONG_SPECIES);
+        IntVector zero = IntVector.zero(SPECIES);
+        for (; i < upperBound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, values, i);
+            if (valid != null)
+                va = zero.blend(va, getMask(valid, i));
+            for (int part = 0; part < parts; part++) {
+                acc = acc.add((LongVector) va.convertShape(VectorOperators.I2L, LONG_SPECIES, part));
+            }
+        }
+        long sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                sum += values[i];
+        }
+        return ValueLong.get(sum);
     }
 
+    // 没有NULL也不需要过滤时直接归约，否则把有效行的位图逐段转成VectorMask做带mask的运算
     @Override
-    public Value sum() {
-        int sum = 0;
-        for (int i = 0, len = values.length; i < len; i++) {
-            sum += values[i];
+    public Value min(ValueVector bvv) {
+        int[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        IntVector acc = IntVector.broadcast(SPECIES, Integer.MAX_VALUE);
+        for (; i < upperBound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.min(va);
+            else
+                acc = acc.lanewise(VectorOperators.MIN, va, getMask(valid, i));
+        }
+        int min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                min = Math.min(min, values[i]);
+        }
+        return ValueInt.get(min);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        int[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        IntVector acc = IntVector.broadcast(SPECIES, Integer.MIN_VALUE);
+        for (; i < upperBound; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.max(va);
+            else
+                acc = acc.lanewise(VectorOperators.MAX, va, getMask(valid, i));
+        }
+        int max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                max = Math.max(max, values[i]);
+        }
+        return ValueInt.get(max);
+    }
+
+    private static VectorMask<Integer> getMask(long[] bits, int i) {
+        return VectorMask.fromLong(SPECIES, bits[i >>> 6] >>> (i & 63));
+    }
+
+    // 用gather按选中的位置取值
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        int[] values1 = getValues();
+        if (bvv == null)
+            return new Jdk16IntVector(values1, nulls);
+        int[] sel = getSelection(bvv);
+        int size = sel.length;
+        int[] a = new int[size];
+        int k = 0;
+        int upperBound = SPECIES.loopBound(size);
+        for (; k < upperBound; k += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, values1, 0, sel, k).intoArray(a, k);
+        }
+        for (; k < size; k++) {
+            a[k] = values1[sel[k]];
         }
-        return ValueInt.get(sum);
+        return new Jdk16IntVector(a, filterNulls(bvv));
     }
 }
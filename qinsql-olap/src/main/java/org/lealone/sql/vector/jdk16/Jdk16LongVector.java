@@ -5,6 +5,394 @@
  */
 package org.lealone.sql.vector.jdk16;
 
-public class Jdk16LongVector extends Jdk16ValueVector {
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.vector.BooleanVector;
+import org.lealone.sql.vector.SingleValueVector;
+import org.lealone.sql.vector.ValueVector;
 
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class Jdk16LongVector extends org.lealone.sql.vector.LongVector {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    public Jdk16LongVector(long[] values) {
+        super(values);
+    }
+
+    public Jdk16LongVector(long[] values, long[] nulls) {
+        super(values, nulls);
+    }
+
+    @Override
+    public ValueVector convertTo(int targetType) {
+        return Jdk16ValueVectorFactory.wrap(super.convertTo(targetType));
+    }
+
+    // 比较结果直接用VectorMask.toLong()写到位图中，SPECIES的长度总是能整除64
+    @Override
+    public BooleanVector compare(ValueVector vv, int compareType) {
+        long[] values1 = getValues();
+        int len = values1.length;
+        long[] bits = new long[(len + 63) >>> 6];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return compareNull(compareType);
+            VectorOperators.Comparison op = Jdk16IntVector.getOperator(compareType);
+            long v = v0.getLong();
+            for (; i < upperBound; i += SPECIES.length()) {
+                LongVector va = LongVector.fromArray(SPECIES, values1, i);
+                bits[i >>> 6] |= va.compare(op, v).toLong() << (i & 63);
+            }
+            // 剩下不够一个SPECIES的部分用带mask的方式处理
+            if (i < len) {
+                VectorMask<Long> m = SPECIES.indexInRange(i, len);
+                LongVector va = LongVector.fromArray(SPECIES, values1, i, m);
+                bits[i >>> 6] |= va.compare(op, v, m).toLong() << (i & 63);
+            }
+            return createBooleanVector(bits, len, nulls, null, compareType);
+        }
+        ValueVector vv2 = vv.convertTo(Value.LONG);
+        if (!(vv2 instanceof org.lealone.sql.vector.LongVector))
+            return super.compare(vv, compareType);
+        VectorOperators.Comparison op = Jdk16IntVector.getOperator(compareType);
+        long[] values2 = ((org.lealone.sql.vector.LongVector) vv2).getValues();
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values1, i);
+            LongVector vb = LongVector.fromArray(SPECIES, values2, i);
+            bits[i >>> 6] |= va.compare(op, vb).toLong() << (i & 63);
+        }
+        if (i < len) {
+            VectorMask<Long> m = SPECIES.indexInRange(i, len);
+            LongVector va = LongVector.fromArray(SPECIES, values1, i, m);
+            LongVector vb = LongVector.fromArray(SPECIES, values2, i, m);
+            bits[i >>> 6] |= va.compare(op, vb, m).toLong() << (i & 63);
+        }
+        return createBooleanVector(bits, len, nulls, vv2.getNulls(), compareType);
+    }
+
+    // mask中每一段跟SPECIES等长的位直接转成VectorMask，再用LongVector.blend合并
+    @Override
+    public ValueVector blend(ValueVector vv, BooleanVector mask) {
+        long[] values1 = getValues();
+        int len = values1.length;
+        long[] bits = mask.getBits();
+        long[] values = new long[len];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        if (vv instanceof SingleValueVector) {
+            SingleValueVector sv = (SingleValueVector) vv;
+            long v = sv.getValue() == ValueNull.INSTANCE ? 0 : sv.getValue().getLong();
+            for (; i < upperBound; i += SPECIES.length()) {
+                VectorMask<Long> m = getMask(bits, i);
+                LongVector.fromArray(SPECIES, values1, i).blend(v, m).intoArray(values, i);
+            }
+            for (; i < len; i++) {
+                values[i] = isSet(bits, i) ? v : values1[i];
+            }
+            return new Jdk16LongVector(values, blendNulls(sv, mask));
+        }
+        if (!(vv instanceof org.lealone.sql.vector.LongVector))
+            return super.blend(vv, mask);
+        long[] values2 = ((org.lealone.sql.vector.LongVector) vv).getValues();
+        for (; i < upperBound; i += SPECIES.length()) {
+            VectorMask<Long> m = getMask(bits, i);
+            LongVector va = LongVector.fromArray(SPECIES, values1, i);
+            va.blend(LongVector.fromArray(SPECIES, values2, i), m).intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            values[i] = isSet(bits, i) ? values2[i] : values1[i];
+        }
+        return new Jdk16LongVector(values, blendNulls(vv.getNulls(), mask));
+    }
+
+    @Override
+    public ValueVector negate() {
+        long[] values1 = getValues();
+        int len = values1.length;
+        long[] values = new long[len];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        LongVector acc = LongVector.zero(SPECIES);
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values1, i);
+            LongVector vc = va.neg();
+            vc.intoArray(values, i);
+            acc = acc.or(va.and(vc)); // 只有MIN_VALUE取反后还是负数
+        }
+        long overflow = acc.reduceLanes(VectorOperators.OR);
+        for (; i < len; i++) {
+            long x = values1[i];
+            values[i] = -x;
+            overflow |= x & -x;
+        }
+        if (overflow < 0) // 由父类找出溢出的非NULL行
+            return Jdk16ValueVectorFactory.wrap(super.negate());
+        return new Jdk16LongVector(values, nulls);
+    }
+
+    @Override
+    public ValueVector add(ValueVector vv) {
+        return addOrSubtract(vv, true);
+    }
+
+    @Override
+    public ValueVector subtract(ValueVector vv) {
+        return addOrSubtract(vv, false);
+    }
+
+    // 每个lane各自累积溢出标志，最后再归约成一个，有溢出时交给父类逐行检查
+    private ValueVector addOrSubtract(ValueVector vv, boolean add) {
+        long[] values1 = getValues();
+        long[] values2 = null;
+        long v = 0;
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new Jdk16LongVector(new long[values1.length], allNulls(values1.length));
+            v = v0.getLong();
+        } else if (vv instanceof org.lealone.sql.vector.LongVector) {
+            values2 = ((org.lealone.sql.vector.LongVector) vv).getValues();
+        } else {
+            return Jdk16ValueVectorFactory.wrap(add ? super.add(vv) : super.subtract(vv));
+        }
+        long[] values = new long[values1.length];
+        int len = values2 == null ? values1.length : Math.min(values1.length, values2.length);
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        LongVector vb = LongVector.broadcast(SPECIES, v);
+        LongVector acc = LongVector.zero(SPECIES);
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values1, i);
+            if (values2 != null)
+                vb = LongVector.fromArray(SPECIES, values2, i);
+            LongVector vc;
+            if (add) {
+                vc = va.add(vb);
+                acc = acc.or(va.lanewise(VectorOperators.XOR, vc).and(vb.lanewise(VectorOperators.XOR, vc)));
+            } else {
+                vc = va.sub(vb);
+                acc = acc.or(va.lanewise(VectorOperators.XOR, vb).and(va.lanewise(VectorOperators.XOR, vc)));
+            }
+            vc.intoArray(values, i);
+        }
+        long overflow = acc.reduceLanes(VectorOperators.OR);
+        for (; i < len; i++) {
+            long x = values1[i];
+            long y = values2 == null ? v : values2[i];
+            long r = add ? x + y : x - y;
+            values[i] = r;
+            overflow |= add ? (x ^ r) & (y ^ r) : (x ^ y) & (x ^ r);
+        }
+        if (overflow < 0)
+            return Jdk16ValueVectorFactory.wrap(add ? super.add(vv) : super.subtract(vv));
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new Jdk16LongVector(values, values2 == null ? nulls : orNulls(nulls, vv.getNulls()));
+    }
+
+    // 先直接相乘，两边绝对值的最大值相乘可能溢出时再交给父类逐行检查
+    @Override
+    public ValueVector multiply(ValueVector vv) {
+        long[] values1 = getValues();
+        long[] values2 = null;
+        long v = 0;
+        if (vv instanceof SingleValueVector) {
+            Value v0 = ((SingleValueVector) vv).getValue();
+            if (v0 == ValueNull.INSTANCE)
+                return new Jdk16LongVector(new long[values1.length], allNulls(values1.length));
+            v = v0.getLong();
+        } else if (vv instanceof org.lealone.sql.vector.LongVector) {
+            values2 = ((org.lealone.sql.vector.LongVector) vv).getValues();
+        } else {
+            return Jdk16ValueVectorFactory.wrap(super.multiply(vv));
+        }
+        int len = values2 == null ? values1.length : Math.min(values1.length, values2.length);
+        long abs = Math.abs(v);
+        long maxAbs2 = values2 == null ? (abs < 0 ? Long.MAX_VALUE : abs) : maxAbs(values2, len);
+        if (mayOverflow(maxAbs(values1, len), maxAbs2))
+            return Jdk16ValueVectorFactory.wrap(super.multiply(vv));
+        long[] values = new long[values1.length];
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        LongVector vb = LongVector.broadcast(SPECIES, v);
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values1, i);
+            if (values2 != null)
+                vb = LongVector.fromArray(SPECIES, values2, i);
+            va.mul(vb).intoArray(values, i);
+        }
+        for (; i < len; i++) {
+            values[i] = values1[i] * (values2 == null ? v : values2[i]);
+        }
+        for (; i < values1.length; i++) {
+            values[i] = values1[i];
+        }
+        return new Jdk16LongVector(values, values2 == null ? nulls : orNulls(nulls, vv.getNulls()));
+    }
+
+    // 绝对值的最大值，有MIN_VALUE时返回Long.MAX_VALUE，用来判断乘积是否可能溢出
+    private static long maxAbs(long[] values, int len) {
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        LongVector vmin = LongVector.broadcast(SPECIES, Long.MAX_VALUE);
+        LongVector vmax = LongVector.broadcast(SPECIES, Long.MIN_VALUE);
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values, i);
+            vmin = vmin.min(va);
+            vmax = vmax.max(va);
+        }
+        long min = vmin.reduceLanes(VectorOperators.MIN);
+        long max = vmax.reduceLanes(VectorOperators.MAX);
+        for (; i < len; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        if (min == Long.MIN_VALUE)
+            return Long.MAX_VALUE;
+        return Math.max(Math.abs(min), Math.abs(max));
+    }
+
+    private static boolean mayOverflow(long maxAbs1, long maxAbs2) {
+        return Math.multiplyHigh(maxAbs1, maxAbs2) != 0 || maxAbs1 * maxAbs2 < 0;
+    }
+
+    // 整数除法没有对应的SIMD指令，直接用父类的实现
+    @Override
+    public ValueVector divide(ValueVector vv) {
+        return Jdk16ValueVectorFactory.wrap(super.divide(vv));
+    }
+
+    @Override
+    public ValueVector modulus(ValueVector vv) {
+        return Jdk16ValueVectorFactory.wrap(super.modulus(vv));
+    }
+
+    // 每个lane各自累加并累积溢出标志，有溢出时交给父类改用BigDecimal重新累加
+    @Override
+    public Value sum(ValueVector bvv) {
+        long[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        LongVector acc = LongVector.zero(SPECIES);
+        LongVector overflow = LongVector.zero(SPECIES);
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values, i);
+            if (valid != null)
+                va = LongVector.zero(SPECIES).blend(va, getMask(valid, i));
+            LongVector r = acc.add(va);
+            LongVector x = acc.lanewise(VectorOperators.XOR, r);
+            overflow = overflow.or(x.and(va.lanewise(VectorOperators.XOR, r)));
+            acc = r;
+        }
+        if (overflow.reduceLanes(VectorOperators.OR) < 0)
+            return super.sum(bvv);
+        // 再把各个lane的和以及尾部的行逐个加起来
+        long sum = 0;
+        long overflow2 = 0;
+        for (long x : acc.toArray()) {
+            long r = sum + x;
+            overflow2 |= (sum ^ r) & (x ^ r);
+            sum = r;
+        }
+        for (; i < len; i++) {
+            if (valid != null && !isSet(valid, i))
+                continue;
+            long x = values[i];
+            long r = sum + x;
+            overflow2 |= (sum ^ r) & (x ^ r);
+            sum = r;
+        }
+        if (overflow2 < 0)
+            return super.sum(bvv);
+        return ValueLong.get(sum);
+    }
+
+    // 没有NULL也不需要过滤时直接归约，否则把有效行的位图逐段转成VectorMask做带mask的运算
+    @Override
+    public Value min(ValueVector bvv) {
+        long[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        LongVector acc = LongVector.broadcast(SPECIES, Long.MAX_VALUE);
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.min(va);
+            else
+                acc = acc.lanewise(VectorOperators.MIN, va, getMask(valid, i));
+        }
+        long min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                min = Math.min(min, values[i]);
+        }
+        return ValueLong.get(min);
+    }
+
+    @Override
+    public Value max(ValueVector bvv) {
+        long[] values = getValues();
+        int len = values.length;
+        long[] valid = getValidBits(bvv);
+        if (len == 0 || valid != null && cardinality(valid) == 0)
+            return ValueNull.INSTANCE;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(len);
+        LongVector acc = LongVector.broadcast(SPECIES, Long.MIN_VALUE);
+        for (; i < upperBound; i += SPECIES.length()) {
+            LongVector va = LongVector.fromArray(SPECIES, values, i);
+            if (valid == null)
+                acc = acc.max(va);
+            else
+                acc = acc.lanewise(VectorOperators.MAX, va, getMask(valid, i));
+        }
+        long max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < len; i++) {
+            if (valid == null || isSet(valid, i))
+                max = Math.max(max, values[i]);
+        }
+        return ValueLong.get(max);
+    }
+
+    private static VectorMask<Long> getMask(long[] bits, int i) {
+        return VectorMask.fromLong(SPECIES, bits[i >>> 6] >>> (i & 63));
+    }
+
+    // 用gather按选中的位置取值
+    @Override
+    public ValueVector filter(ValueVector bvv) {
+        long[] values1 = getValues();
+        if (bvv == null)
+            return new Jdk16LongVector(values1, nulls);
+        int[] sel = getSelection(bvv);
+        int size = sel.length;
+        long[] a = new long[size];
+        int k = 0;
+        int upperBound = SPECIES.loopBound(size);
+        for (; k < upperBound; k += SPECIES.length()) {
+            LongVector.fromArray(SPECIES, values1, 0, sel, k).intoArray(a, k);
+        }
+        for (; k < size; k++) {
+            a[k] = values1[sel[k]];
+        }
+        return new Jdk16LongVector(a, filterNulls(bvv));
+    }
 }
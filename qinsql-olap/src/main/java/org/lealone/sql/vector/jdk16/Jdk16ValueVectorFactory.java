@@ -9,28 +9,46 @@ import java.util.List;
 
 import org.lealone.db.result.Row;
 import org.lealone.db.table.Column;
-import org.lealone.db.value.Value;
 import org.lealone.sql.vector.DefaultValueVectorFactory;
+import org.lealone.sql.vector.DoubleVector;
+import org.lealone.sql.vector.FloatVector;
+import org.lealone.sql.vector.IntVector;
+import org.lealone.sql.vector.LongVector;
 import org.lealone.sql.vector.ValueVector;
 import org.lealone.sql.vector.ValueVectorFactory;
 
+// 加上--add-modules jdk.incubator.vector启动时由ValueVectorFactories自动选择，
+// 也可以把session的value_vector_factory_name设为这个类的全名强制使用
 public class Jdk16ValueVectorFactory implements ValueVectorFactory {
 
     @Override
     public ValueVector createValueVector(List<Row> batch, Column column) {
-        int size = batch.size();
-        int columnId = column.getColumnId();
-        switch (column.getType()) {
-        case Value.INT: {
-            int[] values = new int[size];
-            for (int i = 0; i < size; i++) {
-                values[i] = batch.get(i).getValue(columnId).getInt();
-            }
-            return new Jdk16IntVector(values);
-        }
-        default:
-            return DefaultValueVectorFactory.createDefaultValueVector(batch, column);
-        }
+        return wrap(DefaultValueVectorFactory.INSTANCE.createValueVector(batch, column));
     }
 
+    @Override
+    public int getVectorBitSize() {
+        return jdk.incubator.vector.IntVector.SPECIES_PREFERRED.vectorBitSize();
+    }
+
+    @Override
+    public ValueVector wrapValueVector(ValueVector vv) {
+        return wrap(vv);
+    }
+
+    // 把标量实现的向量换成对应的SIMD实现，共享底层数组，其他类型的向量原样返回
+    public static ValueVector wrap(ValueVector vv) {
+        if (vv == null)
+            return null;
+        Class<?> c = vv.getClass();
+        if (c == IntVector.class)
+            return new Jdk16IntVector(((IntVector) vv).getValues(), vv.getNulls());
+        if (c == LongVector.class)
+            return new Jdk16LongVector(((LongVector) vv).getValues(), vv.getNulls());
+        if (c == DoubleVector.class)
+            return new Jdk16DoubleVector(((DoubleVector) vv).getValues(), vv.getNulls());
+        if (c == FloatVector.class)
+            return new Jdk16FloatVector(((FloatVector) vv).getValues(), vv.getNulls());
+        return vv;
+    }
 }
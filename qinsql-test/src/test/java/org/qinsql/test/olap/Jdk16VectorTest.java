@@ -0,0 +1,375 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.lealone.common.exceptions.DbException;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDouble;
+import org.lealone.db.value.ValueFloat;
+import org.lealone.db.value.ValueInt;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.expression.condition.Comparison;
+import org.lealone.sql.vector.BooleanVector;
+import org.lealone.sql.vector.DoubleVector;
+import org.lealone.sql.vector.FloatVector;
+import org.lealone.sql.vector.IntVector;
+import org.lealone.sql.vector.LongVector;
+import org.lealone.sql.vector.SelectionVector;
+import org.lealone.sql.vector.SingleValueVector;
+import org.lealone.sql.vector.ValueVector;
+import org.lealone.sql.vector.jdk16.Jdk16DoubleVector;
+import org.lealone.sql.vector.jdk16.Jdk16FloatVector;
+import org.lealone.sql.vector.jdk16.Jdk16IntVector;
+import org.lealone.sql.vector.jdk16.Jdk16LongVector;
+
+// 用标量实现作为参考，检查SIMD实现的每个结果是否逐位相同，运行时需要加上--add-modules jdk.incubator.vector
+public class Jdk16VectorTest {
+
+    private static final int[] COMPARE_TYPES = { Comparison.EQUAL, Comparison.EQUAL_NULL_SAFE,
+            Comparison.BIGGER_EQUAL, Comparison.BIGGER, Comparison.SMALLER_EQUAL, Comparison.SMALLER,
+            Comparison.NOT_EQUAL, Comparison.NOT_EQUAL_NULL_SAFE };
+
+    private static final Random random = new Random(100);
+
+    public static void main(String[] args) {
+        // 长度特意包含不是SPECIES长度整数倍的情况，用来测试尾部的处理
+        for (int size : new int[] { 1, 7, 63, 64, 65, 100, 1000, 1025 }) {
+            for (int i = 0; i < 10; i++) {
+                testInt(size);
+                testLong(size);
+                testDouble(size);
+                testFloat(size);
+            }
+        }
+        testIntOverflow();
+        testLongOverflow();
+        System.out.println("ok");
+    }
+
+    private static long[] randomNulls(int size) {
+        if (random.nextInt(3) == 0)
+            return null;
+        long[] nulls = null;
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(10) == 0)
+                nulls = ValueVector.setNull(nulls, i, size);
+        }
+        return nulls;
+    }
+
+    private static BooleanVector randomSelection(int size) {
+        boolean[] a = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = random.nextBoolean();
+        }
+        return new BooleanVector(a);
+    }
+
+    private static void testInt(int size) {
+        int[] a = new int[size];
+        int[] b = new int[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = random.nextInt(20000) - 10000;
+            b[i] = random.nextInt(20000) - 10000;
+            if (b[i] == 0)
+                b[i] = 1;
+        }
+        long[] nulls1 = randomNulls(size);
+        long[] nulls2 = randomNulls(size);
+        ValueVector s1 = new IntVector(a, nulls1);
+        ValueVector s2 = new IntVector(b, nulls2);
+        ValueVector v1 = new Jdk16IntVector(a, nulls1);
+        ValueVector v2 = new Jdk16IntVector(b, nulls2);
+        ValueVector c = new SingleValueVector(ValueInt.get(a[size / 2]));
+        testOperations(s1, s2, v1, v2, c);
+    }
+
+    private static void testLong(int size) {
+        long[] a = new long[size];
+        long[] b = new long[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = random.nextInt() * 3L;
+            b[i] = random.nextInt(2000000) - 1000000;
+            if (b[i] == 0)
+                b[i] = 1;
+        }
+        long[] nulls1 = randomNulls(size);
+        long[] nulls2 = randomNulls(size);
+        ValueVector s1 = new LongVector(a, nulls1);
+        ValueVector s2 = new LongVector(b, nulls2);
+        ValueVector v1 = new Jdk16LongVector(a, nulls1);
+        ValueVector v2 = new Jdk16LongVector(b, nulls2);
+        ValueVector c = new SingleValueVector(ValueLong.get(b[size / 2]));
+        testOperations(s1, s2, v1, v2, c);
+    }
+
+    private static void testDouble(int size) {
+        double[] a = new double[size];
+        double[] b = new double[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = randomDouble();
+            b[i] = randomDouble();
+        }
+        long[] nulls1 = randomNulls(size);
+        long[] nulls2 = randomNulls(size);
+        ValueVector s1 = new DoubleVector(a, nulls1);
+        ValueVector s2 = new DoubleVector(b, nulls2);
+        ValueVector v1 = new Jdk16DoubleVector(a, nulls1);
+        ValueVector v2 = new Jdk16DoubleVector(b, nulls2);
+        ValueVector c = new SingleValueVector(ValueDouble.get(a[size / 2]));
+        testOperations(s1, s2, v1, v2, c);
+        testRowSemantics(s1, s2, c);
+    }
+
+    private static void testFloat(int size) {
+        float[] a = new float[size];
+        float[] b = new float[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = (float) randomDouble();
+            b[i] = (float) randomDouble();
+        }
+        long[] nulls1 = randomNulls(size);
+        long[] nulls2 = randomNulls(size);
+        ValueVector s1 = new FloatVector(a, nulls1);
+        ValueVector s2 = new FloatVector(b, nulls2);
+        ValueVector v1 = new Jdk16FloatVector(a, nulls1);
+        ValueVector v2 = new Jdk16FloatVector(b, nulls2);
+        ValueVector c = new SingleValueVector(ValueFloat.get(a[size / 2]));
+        testOperations(s1, s2, v1, v2, c);
+        testRowSemantics(s1, s2, c);
+    }
+
+    // 包含0.0、-0.0、NaN和无穷大这些容易出错的值
+    private static double randomDouble() {
+        switch (random.nextInt(40)) {
+        case 0:
+            return 0.0;
+        case 1:
+            return -0.0;
+        case 2:
+            return Double.NaN;
+        case 3:
+            return Double.NEGATIVE_INFINITY;
+        default:
+            return (random.nextDouble() - 0.5) * 1000;
+        }
+    }
+
+    private static void testOperations(ValueVector s1, ValueVector s2, ValueVector v1, ValueVector v2,
+            ValueVector c) {
+        for (int compareType : COMPARE_TYPES) {
+            assertEquals(() -> s1.compare(s2, compareType), () -> v1.compare(v2, compareType));
+            assertEquals(() -> s1.compare(c, compareType), () -> v1.compare(c, compareType));
+        }
+        assertEquals(() -> s1.negate(), () -> v1.negate());
+        assertEquals(() -> s1.add(s2), () -> v1.add(v2));
+        assertEquals(() -> s1.add(c), () -> v1.add(c));
+        assertEquals(() -> s1.subtract(s2), () -> v1.subtract(v2));
+        assertEquals(() -> s1.subtract(c), () -> v1.subtract(c));
+        assertEquals(() -> s1.multiply(s2), () -> v1.multiply(v2));
+        assertEquals(() -> s1.multiply(c), () -> v1.multiply(c));
+        assertEquals(() -> s1.divide(s2), () -> v1.divide(v2));
+        assertEquals(() -> s1.divide(c), () -> v1.divide(c));
+
+        BooleanVector selection = randomSelection(s1.size());
+        assertEquals(() -> s1.filter(selection), () -> v1.filter(selection));
+        assertEquals(() -> s1.blend(s2, selection), () -> v1.blend(v2, selection));
+        assertEquals(() -> s1.blend(c, selection), () -> v1.blend(c, selection));
+
+        assertEquals(s1.sum(), v1.sum());
+        assertEquals(s1.min(), v1.min());
+        assertEquals(s1.max(), v1.max());
+        // 聚合时传入的是SelectionVector
+        for (ValueVector bvv : new ValueVector[] { selection, SelectionVector.valueOf(selection) }) {
+            assertEquals(s1.sum(bvv), v1.sum(bvv));
+            assertEquals(s1.min(bvv), v1.min(bvv));
+            assertEquals(s1.max(bvv), v1.max(bvv));
+        }
+    }
+
+    // 标量实现本身也要跟row模式一样：NaN比其他值都大并且等于自身，0.0和-0.0相等(加上0.0就把-0.0变成了0.0)
+    private static int compareAsRow(double a, double b) {
+        return Double.compare(a + 0.0, b + 0.0);
+    }
+
+    private static void testRowSemantics(ValueVector s1, ValueVector s2, ValueVector c) {
+        double cv = ((SingleValueVector) c).getValue().getDouble();
+        for (int compareType : COMPARE_TYPES) {
+            BooleanVector r1 = s1.compare(s2, compareType);
+            BooleanVector r2 = s1.compare(c, compareType);
+            for (int i = 0, size = s1.size(); i < size; i++) {
+                if (s1.isNull(i))
+                    continue;
+                double x = s1.getValue(i).getDouble();
+                if (!s2.isNull(i))
+                    assertCompare(compareType, compareAsRow(x, s2.getValue(i).getDouble()), r1.isTrue(i), i);
+                assertCompare(compareType, compareAsRow(x, cv), r2.isTrue(i), i);
+            }
+        }
+        Double min = null;
+        Double max = null;
+        for (int i = 0, size = s1.size(); i < size; i++) {
+            if (s1.isNull(i))
+                continue;
+            double x = s1.getValue(i).getDouble();
+            if (min == null || compareAsRow(x, min) < 0)
+                min = x;
+            if (max == null || compareAsRow(x, max) > 0)
+                max = x;
+        }
+        assertSameDouble(min, s1.min());
+        assertSameDouble(max, s1.max());
+    }
+
+    private static void assertCompare(int compareType, int c, boolean actual, int i) {
+        boolean expected;
+        switch (compareType) {
+        case Comparison.EQUAL:
+        case Comparison.EQUAL_NULL_SAFE:
+            expected = c == 0;
+            break;
+        case Comparison.BIGGER_EQUAL:
+            expected = c >= 0;
+            break;
+        case Comparison.BIGGER:
+            expected = c > 0;
+            break;
+        case Comparison.SMALLER_EQUAL:
+            expected = c <= 0;
+            break;
+        case Comparison.SMALLER:
+            expected = c < 0;
+            break;
+        default:
+            expected = c != 0;
+        }
+        if (expected != actual)
+            throw new AssertionError("compareType " + compareType + " mismatch at row " + i);
+    }
+
+    private static void assertSameDouble(Double expected, Value actual) {
+        if (expected == null ? actual != ValueNull.INSTANCE
+                : actual == ValueNull.INSTANCE || compareAsRow(expected, actual.getDouble()) != 0)
+            throw new AssertionError("expected: " + expected + ", actual: " + actual);
+    }
+
+    // 只有NULL的行溢出时不抛异常，非NULL的行溢出时两种实现都要抛异常
+    private static void testIntOverflow() {
+        int size = 100;
+        int[] a = new int[size];
+        int[] b = new int[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = i;
+            b[i] = i;
+        }
+        a[70] = Integer.MAX_VALUE;
+        b[70] = Integer.MAX_VALUE;
+        long[] nulls = ValueVector.setNull(null, 70, size);
+        testOverflow(new IntVector(a, nulls), new IntVector(b), new Jdk16IntVector(a, nulls),
+                new Jdk16IntVector(b));
+        testOverflow(new IntVector(a), new IntVector(b), new Jdk16IntVector(a), new Jdk16IntVector(b));
+        a[70] = Integer.MIN_VALUE;
+        assertEquals(() -> new IntVector(a, nulls).negate(), () -> new Jdk16IntVector(a, nulls).negate());
+        assertEquals(() -> new IntVector(a).negate(), () -> new Jdk16IntVector(a).negate());
+    }
+
+    private static void testLongOverflow() {
+        int size = 100;
+        long[] a = new long[size];
+        long[] b = new long[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = i;
+            b[i] = i;
+        }
+        a[70] = Long.MAX_VALUE;
+        b[70] = Long.MAX_VALUE;
+        long[] nulls = ValueVector.setNull(null, 70, size);
+        testOverflow(new LongVector(a, nulls), new LongVector(b), new Jdk16LongVector(a, nulls),
+                new Jdk16LongVector(b));
+        testOverflow(new LongVector(a), new LongVector(b), new Jdk16LongVector(a), new Jdk16LongVector(b));
+        // 溢出的行被过滤掉或者是NULL时SUM的结果还是LONG，否则是DECIMAL
+        a[71] = Long.MAX_VALUE;
+        BooleanVector selection = randomSelection(size);
+        assertEquals(new LongVector(a).sum(), new Jdk16LongVector(a).sum());
+        assertEquals(new LongVector(a, nulls).sum(), new Jdk16LongVector(a, nulls).sum());
+        assertEquals(new LongVector(a).sum(selection), new Jdk16LongVector(a).sum(selection));
+        a[70] = Long.MIN_VALUE;
+        assertEquals(() -> new LongVector(a, nulls).negate(), () -> new Jdk16LongVector(a, nulls).negate());
+        assertEquals(() -> new LongVector(a).negate(), () -> new Jdk16LongVector(a).negate());
+    }
+
+    private static void testOverflow(ValueVector s1, ValueVector s2, ValueVector v1, ValueVector v2) {
+        assertEquals(() -> s1.add(s2), () -> v1.add(v2));
+        assertEquals(() -> s1.multiply(s2), () -> v1.multiply(v2));
+        assertEquals(() -> s1.subtract(s2.negate()), () -> v1.subtract(v2.negate()));
+    }
+
+    // 两边都抛出异常时也认为是相同的
+    private static void assertEquals(Supplier<ValueVector> expected, Supplier<ValueVector> actual) {
+        DbException e1 = null;
+        DbException e2 = null;
+        ValueVector vv1 = null;
+        ValueVector vv2 = null;
+        try {
+            vv1 = expected.get();
+        } catch (DbException e) {
+            e1 = e;
+        }
+        try {
+            vv2 = actual.get();
+        } catch (DbException e) {
+            e2 = e;
+        }
+        if (e1 != null || e2 != null) {
+            if (e1 == null || e2 == null || e1.getErrorCode() != e2.getErrorCode())
+                throw new AssertionError("expected exception: " + e1 + ", actual exception: " + e2);
+            return;
+        }
+        assertEquals(vv1, vv2);
+    }
+
+    private static void assertEquals(ValueVector expected, ValueVector actual) {
+        if (expected.size() != actual.size())
+            throw new AssertionError("expected size: " + expected.size() + ", actual: " + actual.size());
+        for (int i = 0, size = expected.size(); i < size; i++) {
+            if (expected.isNull(i) != actual.isNull(i))
+                throw new AssertionError("null mismatch at row " + i);
+            if (getBits(expected, i) != getBits(actual, i))
+                throw new AssertionError("value mismatch at row " + i + ", expected: "
+                        + expected.getValue(i) + ", actual: " + actual.getValue(i));
+        }
+    }
+
+    // 浮点数按原始的位来比较，这样0.0和-0.0以及不同的NaN都能区分开
+    private static long getBits(ValueVector vv, int i) {
+        if (vv.isNull(i) && !(vv instanceof BooleanVector))
+            return 0;
+        if (vv instanceof IntVector)
+            return ((IntVector) vv).getValues()[i];
+        if (vv instanceof LongVector)
+            return ((LongVector) vv).getValues()[i];
+        if (vv instanceof DoubleVector)
+            return Double.doubleToRawLongBits(((DoubleVector) vv).getValues()[i]);
+        if (vv instanceof FloatVector)
+            return Float.floatToRawIntBits(((FloatVector) vv).getValues()[i]);
+        if (vv instanceof BooleanVector)
+            return ((BooleanVector) vv).isTrue(i) ? 1 : 0;
+        Value v = vv.getValue(i);
+        return v.getString().hashCode();
+    }
+
+    private static void assertEquals(Value expected, Value actual) {
+        if (expected == actual)
+            return;
+        if (expected == null || actual == null || expected.getType() != actual.getType()
+                || !expected.getString().equals(actual.getString()))
+            throw new AssertionError("expected: " + expected + ", actual: " + actual);
+    }
+}
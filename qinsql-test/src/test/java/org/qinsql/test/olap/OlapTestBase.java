@@ -0,0 +1,161 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.lealone.test.sql.SqlTestBase;
+
+// 同一条SQL先完全用row模式执行，再让向量化引擎从第一行开始接管，两次的结果必须完全一样
+public abstract class OlapTestBase extends SqlTestBase {
+
+    // 远大于表中的行数，查询从头到尾都用row模式执行
+    private static final int ROW_MODE_THRESHOLD = Integer.MAX_VALUE;
+    // 批次小一些，每个查询都要处理很多批，也会出现整批都被过滤掉的情况
+    private static final int BATCH_SIZE = 16;
+
+    protected static final String TABLE = "olap_test";
+    protected static final int ROW_COUNT = 200;
+    private static final String[] DICTIONARY_VALUES = { "a", "B", "c" };
+    private static final String[] IGNORECASE_VALUES = { "Apple", "APPLE", "apple", "Pear" };
+    private static final LocalDate START_DATE = LocalDate.of(2020, 1, 1);
+
+    @Before
+    public void setUpOlap() throws Exception {
+        stmt.executeUpdate("SET QUERY_CACHE_SIZE 0");
+        stmt.executeUpdate("SET olap_batch_size " + BATCH_SIZE);
+        stmt.executeUpdate("DROP TABLE IF EXISTS " + TABLE);
+        // i、d这些列每隔几行有一个NULL，d和f还有NaN，s、si、b只有几个不同的值(按字典编码)，name每一行都不一样
+        stmt.executeUpdate("CREATE TABLE " + TABLE + "(id INT PRIMARY KEY, k INT, i INT, l BIGINT, big BIGINT,"
+                + " d DOUBLE, f REAL, dec DECIMAL(10, 2), s VARCHAR(20), si VARCHAR_IGNORECASE(20),"
+                + " name VARCHAR(20), b BOOLEAN, dt DATE, ts TIMESTAMP)");
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_olap_test_k ON " + TABLE + "(k)");
+        PreparedStatement ps = conn
+                .prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+        for (int id = 1; id <= ROW_COUNT; id++) {
+            ps.setInt(1, id);
+            ps.setInt(2, id / 10);
+            setInt(ps, 3, id % 7 == 0 ? null : id - ROW_COUNT / 2);
+            setLong(ps, 4, id % 11 == 0 ? null : id * 100_000_000_000L);
+            setLong(ps, 5, Long.MAX_VALUE - id);
+            setDouble(ps, 6, id % 5 == 0 ? null : id % 17 == 0 ? Double.NaN : id * 0.5);
+            if (id % 6 == 0)
+                ps.setNull(7, Types.REAL);
+            else
+                ps.setFloat(7, id % 19 == 0 ? Float.NaN : id * 0.25f);
+            ps.setBigDecimal(8, id % 9 == 0 ? null : BigDecimal.valueOf(id * 7 - 300, 2));
+            ps.setString(9, id % 8 == 0 ? null : DICTIONARY_VALUES[id % DICTIONARY_VALUES.length]);
+            ps.setString(10, id % 13 == 0 ? null : IGNORECASE_VALUES[id % IGNORECASE_VALUES.length]);
+            ps.setString(11, "n" + id);
+            if (id % 10 == 0)
+                ps.setNull(12, Types.BOOLEAN);
+            else
+                ps.setBoolean(12, id % 3 == 0);
+            ps.setDate(13, id % 12 == 0 ? null : Date.valueOf(START_DATE.plusDays(id)));
+            ps.setTimestamp(14, Timestamp.valueOf(START_DATE.atStartOfDay().plusHours(id * 7)));
+            ps.executeUpdate();
+        }
+        ps.close();
+    }
+
+    private static void setInt(PreparedStatement ps, int index, Integer v) throws SQLException {
+        if (v == null)
+            ps.setNull(index, Types.INTEGER);
+        else
+            ps.setInt(index, v);
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long v) throws SQLException {
+        if (v == null)
+            ps.setNull(index, Types.BIGINT);
+        else
+            ps.setLong(index, v);
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double v) throws SQLException {
+        if (v == null)
+            ps.setNull(index, Types.DOUBLE);
+        else
+            ps.setDouble(index, v);
+    }
+
+    private void setOlapThreshold(int threshold) throws SQLException {
+        stmt.executeUpdate("SET olap_threshold " + threshold);
+    }
+
+    protected List<String> query(String sql) throws SQLException {
+        ArrayList<String> rows = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            int columnCount = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder buff = new StringBuilder();
+                for (int i = 1; i <= columnCount; i++) {
+                    if (i > 1)
+                        buff.append(", ");
+                    buff.append(rs.getString(i));
+                }
+                rows.add(buff.toString());
+            }
+        }
+        return rows;
+    }
+
+    protected List<String> assertSameResult(String sql) throws SQLException {
+        return assertSameResult(sql, 1);
+    }
+
+    /**
+     * 先用row模式执行，再在row模式处理完threshold行之后切换到向量化引擎，比较两次的结果，
+     * 没有ORDER BY时两种模式的输出顺序可以不一样，排序后再比较。
+     */
+    protected List<String> assertSameResult(String sql, int threshold) throws SQLException {
+        setOlapThreshold(ROW_MODE_THRESHOLD);
+        List<String> expected = query(sql);
+        setOlapThreshold(threshold);
+        List<String> actual = query(sql);
+        if (!sql.toUpperCase().contains("ORDER BY")) {
+            Collections.sort(expected);
+            Collections.sort(actual);
+        }
+        assertEquals(sql, expected, actual);
+        return actual;
+    }
+
+    /**
+     * 两种模式都要报同样的错误。
+     */
+    protected void assertSameError(String sql) throws SQLException {
+        setOlapThreshold(ROW_MODE_THRESHOLD);
+        int expected = getErrorCode(sql);
+        setOlapThreshold(1);
+        int actual = getErrorCode(sql);
+        assertEquals(sql, expected, actual);
+    }
+
+    private int getErrorCode(String sql) {
+        try {
+            query(sql);
+        } catch (SQLException e) {
+            return e.getErrorCode();
+        }
+        fail("expected an error: " + sql);
+        return 0;
+    }
+}
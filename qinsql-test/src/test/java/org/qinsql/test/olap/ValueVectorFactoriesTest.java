@@ -0,0 +1,47 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.lealone.sql.vector.DefaultValueVectorFactory;
+import org.lealone.sql.vector.ValueVectorFactories;
+
+public class ValueVectorFactoriesTest extends OlapTestBase {
+
+    @Test
+    public void testGetFactory() {
+        assertSame(ValueVectorFactories.getAutoFactory(), ValueVectorFactories.getFactory(null));
+        assertSame(ValueVectorFactories.getAutoFactory(), ValueVectorFactories.getFactory("auto"));
+        assertSame(ValueVectorFactories.getAutoFactory(), ValueVectorFactories.getFactory("AUTO"));
+        // 同一个名字只创建一次
+        String name = DefaultValueVectorFactory.class.getName();
+        assertSame(ValueVectorFactories.getFactory(name), ValueVectorFactories.getFactory(name));
+    }
+
+    @Test
+    public void testSessionFactory() throws Exception {
+        String sql = "SELECT s, COUNT(*), SUM(i), MAX(d) FROM " + TABLE + " WHERE i > -30 GROUP BY s";
+        stmt.executeUpdate("SET value_vector_factory_name '" + DefaultValueVectorFactory.class.getName() + "'");
+        List<String> scalar = assertSameResult(sql);
+        stmt.executeUpdate("SET value_vector_factory_name 'auto'");
+        List<String> auto = assertSameResult(sql);
+        assertEquals(scalar, auto);
+    }
+
+    @Test
+    public void testBackendInfo() throws Exception {
+        stmt.executeUpdate("CREATE ALIAS IF NOT EXISTS VALUE_VECTOR_BACKEND FOR \""
+                + ValueVectorFactories.class.getName() + ".getBackendInfo\"");
+        List<String> rows = query("SELECT FACTORY FROM VALUE_VECTOR_BACKEND()");
+        assertEquals(1, rows.size());
+        assertEquals(ValueVectorFactories.getAutoFactory().getClass().getName(), rows.get(0));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import org.junit.Test;
+
+// 聚合查询和分组查询，每一批16行，组数比批次大也比批次小，覆盖VAggregate、VGroup和VGroupSorted的各种分支
+public class VectorAggregateTest extends OlapTestBase {
+
+    private static final String AGGREGATES = "COUNT(*), COUNT(i), SUM(i), MIN(i), MAX(i), AVG(d), SUM(l),"
+            + " MIN(d), MAX(f), SUM(dec), MIN(dt), MAX(ts), MIN(name), MAX(s), COUNT(si)";
+
+    @Test
+    public void testLongAggregate() throws Exception {
+        assertSameResult("SELECT COUNT(*), MIN(big), MAX(big), SUM(big - 9223372036854775000) FROM " + TABLE);
+        assertSameResult("SELECT MIN(big), MAX(big), SUM(big - 9223372036854775000) FROM " + TABLE
+                + " WHERE id % 3 = 1");
+        assertSameResult("SELECT MIN(big), MAX(big) FROM " + TABLE + " WHERE id > 1000"); // 没有选中任何行
+    }
+
+    @Test
+    public void testDoubleAggregate() throws Exception {
+        assertSameResult("SELECT SUM(d), MIN(d), MAX(d), AVG(d), SUM(f), MIN(f), MAX(f) FROM " + TABLE
+                + " WHERE id % 30 = 1");
+        // 跟row模式一样，MIN和MAX都把NaN当成最大的值，id % 17 = 0这一组全是NaN
+        assertSameResult("SELECT id % 17, MIN(d), MAX(d), SUM(d) FROM " + TABLE + " WHERE id % 5 = 2"
+                + " GROUP BY id % 17");
+        assertSameResult("SELECT id % 19, MIN(f), MAX(f) FROM " + TABLE + " WHERE id % 6 = 1 GROUP BY id % 19");
+    }
+
+    @Test
+    public void testDecimalAggregate() throws Exception {
+        assertSameResult("SELECT SUM(id * 0.01), AVG(id * 1.25), MIN(id - 0.75), MAX(id * 0.5) FROM " + TABLE);
+        assertSameResult("SELECT id % 3, SUM(id * 0.01), AVG(id * 1.25) FROM " + TABLE + " GROUP BY id % 3");
+        assertSameResult("SELECT SUM(big * 1.5) FROM " + TABLE); // 超出18位时改用BigDecimal累加
+    }
+
+    @Test
+    public void testTimestampAggregate() throws Exception {
+        assertSameResult("SELECT MIN(ts), MAX(ts) FROM " + TABLE);
+        assertSameResult("SELECT MIN(ts), MAX(ts) FROM " + TABLE + " WHERE id % 3 = 1");
+        assertSameResult("SELECT id % 4, MIN(ts), MAX(ts) FROM " + TABLE + " GROUP BY id % 4");
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        assertSameResult("SELECT " + AGGREGATES + " FROM " + TABLE);
+        assertSameResult("SELECT " + AGGREGATES + " FROM " + TABLE + " WHERE i > 0 AND s IS NOT NULL");
+        assertSameResult("SELECT " + AGGREGATES + " FROM " + TABLE + " WHERE id > 1000"); // 没有选中任何行
+        assertSameResult("SELECT " + AGGREGATES + " FROM " + TABLE + " WHERE i IS NULL"); // 全是NULL
+        assertSameResult("SELECT SUM(i) * 2 + COUNT(*), MAX(d) - MIN(d) FROM " + TABLE);
+        assertSameResult("SELECT COUNT(DISTINCT s), COUNT(DISTINCT si), SUM(DISTINCT k) FROM " + TABLE);
+        assertSameResult("SELECT BOOL_AND(b), BOOL_OR(b) FROM " + TABLE);
+    }
+
+    @Test
+    public void testQuickAggregate() throws Exception {
+        // 不用扫描的聚合查询直接用行数和索引的第一个、最后一个值，不会交给向量化引擎
+        assertSameResult("SELECT COUNT(*) FROM " + TABLE);
+        assertSameResult("SELECT MIN(id), MAX(id) FROM " + TABLE);
+        assertSameResult("SELECT COUNT(*), MIN(k), MAX(k) FROM " + TABLE);
+        assertSameResult("SELECT COUNT(*), MIN(id), MAX(id) FROM " + TABLE, 50);
+        // 有条件时要扫描
+        assertSameResult("SELECT COUNT(*), MIN(id), MAX(id) FROM " + TABLE + " WHERE i > 0");
+    }
+
+    @Test
+    public void testAggregateOverflow() throws Exception {
+        // BIGINT的SUM和AVG超出long的范围时要转成DECIMAL继续累加
+        assertSameResult("SELECT SUM(big), AVG(big), MAX(big) FROM " + TABLE);
+        assertSameResult("SELECT id % 3, SUM(big), AVG(big) FROM " + TABLE + " GROUP BY id % 3");
+        assertSameResult("SELECT s, SUM(big) FROM " + TABLE + " GROUP BY s");
+        // INT的SUM用long累加
+        assertSameResult("SELECT SUM(i * 20000000), AVG(i * 20000000) FROM " + TABLE);
+    }
+
+    @Test
+    public void testGroupByIntegerKeys() throws Exception {
+        // 分组字段都是整数类型，用GroupAggregator按组号更新聚合状态
+        assertSameResult("SELECT id % 5, " + AGGREGATES + " FROM " + TABLE + " GROUP BY id % 5");
+        assertSameResult("SELECT i, COUNT(*) FROM " + TABLE + " GROUP BY i"); // 组数比批次大，有NULL组
+        assertSameResult("SELECT id % 3, b, SUM(d), COUNT(*) FROM " + TABLE + " GROUP BY id % 3, b");
+        assertSameResult("SELECT l, MIN(id) FROM " + TABLE + " WHERE i < 0 GROUP BY l");
+        assertSameResult("SELECT id % 4, COUNT(*), SUM(i) FROM " + TABLE + " GROUP BY id % 4 HAVING SUM(i) > 0");
+        // 跟row模式一样，MIN和MAX都把NaN当成最大的值，id % 17 = 0这一组除了NULL全是NaN
+        assertSameResult("SELECT id % 17, MIN(d), MAX(d), MIN(f), MAX(f) FROM " + TABLE + " GROUP BY id % 17");
+    }
+
+    @Test
+    public void testGroupByStrings() throws Exception {
+        // 字典编码的字符串按这一批的字典下标分组
+        assertSameResult("SELECT s, " + AGGREGATES + " FROM " + TABLE + " GROUP BY s");
+        assertSameResult("SELECT s, id % 2, COUNT(*), SUM(i) FROM " + TABLE + " GROUP BY s, id % 2");
+        // 不区分大小写时'Apple'、'APPLE'、'apple'是同一组
+        assertSameResult("SELECT COUNT(*), SUM(id), MIN(name) FROM " + TABLE + " GROUP BY si");
+        assertSameResult("SELECT si, s, COUNT(*) FROM " + TABLE + " WHERE i > -50 GROUP BY si, s"
+                + " ORDER BY COUNT(*), si, s");
+        // 每一行都不一样的字符串
+        assertSameResult("SELECT name, SUM(i), MAX(d) FROM " + TABLE + " GROUP BY name");
+        assertSameResult("SELECT UPPER(s), COUNT(*) FROM " + TABLE + " GROUP BY UPPER(s)");
+    }
+
+    @Test
+    public void testGroupByOtherTypes() throws Exception {
+        // DECIMAL、DOUBLE、DATE这些类型的分组字段按key逐行查找组号
+        assertSameResult("SELECT dec, COUNT(*), SUM(i) FROM " + TABLE + " WHERE id % 9 < 3 GROUP BY dec");
+        assertSameResult("SELECT FLOOR(d / 10), COUNT(*), MAX(i) FROM " + TABLE + " GROUP BY FLOOR(d / 10)");
+        assertSameResult("SELECT MONTH(dt), COUNT(*), MIN(name) FROM " + TABLE + " GROUP BY MONTH(dt)");
+        assertSameResult("SELECT dt, COUNT(*) FROM " + TABLE + " GROUP BY dt");
+        assertSameResult("SELECT s, dec, COUNT(*) FROM " + TABLE + " GROUP BY s, dec");
+    }
+
+    @Test
+    public void testGroupConcat() throws Exception {
+        assertSameResult("SELECT id % 4, GROUP_CONCAT(name ORDER BY id) FROM " + TABLE + " GROUP BY id % 4");
+        assertSameResult("SELECT s, GROUP_CONCAT(id ORDER BY id DESC SEPARATOR ';') FROM " + TABLE + " GROUP BY s");
+        assertSameResult("SELECT GROUP_CONCAT(name ORDER BY name) FROM " + TABLE + " WHERE i > 90");
+    }
+
+    @Test
+    public void testColumnsOutsideAggregates() throws Exception {
+        // HAVING中直接引用了列，只能按key缓存每一组的行
+        assertSameResult("SELECT s, SUM(i), COUNT(*) FROM " + TABLE + " GROUP BY s HAVING s <> 'c'");
+        assertSameResult("SELECT id % 5, MAX(d) FROM " + TABLE + " GROUP BY id % 5 HAVING id % 5 > 1");
+    }
+
+    @Test
+    public void testGroupSorted() throws Exception {
+        // k上有索引，按k的顺序扫描
+        assertSameResult("SELECT k, COUNT(*), SUM(i), MAX(s) FROM " + TABLE + " GROUP BY k ORDER BY k");
+        assertSameResult("SELECT k, SUM(d) FROM " + TABLE + " WHERE i > 0 GROUP BY k ORDER BY k");
+    }
+
+    @Test
+    public void testThresholdHandoff() throws Exception {
+        // row模式已经更新过一部分组之后再切换到向量化引擎
+        assertSameResult("SELECT " + AGGREGATES + " FROM " + TABLE, 40);
+        assertSameResult("SELECT id % 5, COUNT(*), SUM(i), AVG(d) FROM " + TABLE + " GROUP BY id % 5", 40);
+        assertSameResult("SELECT k, COUNT(*), SUM(i) FROM " + TABLE + " GROUP BY k ORDER BY k", 33);
+        assertSameResult("SELECT s, COUNT(*), SUM(i) FROM " + TABLE + " GROUP BY s", 23);
+        assertSameResult("SELECT dec, COUNT(*) FROM " + TABLE + " GROUP BY dec", 57);
+    }
+}
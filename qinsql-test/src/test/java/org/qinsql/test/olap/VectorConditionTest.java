@@ -0,0 +1,196 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+// 向量化计算where条件，结果要跟row模式一样，特别是有NULL、整批都被过滤掉、不区分大小写这些情况
+public class VectorConditionTest extends OlapTestBase {
+
+    private void assertSameCondition(String condition) throws Exception {
+        assertSameResult("SELECT id FROM " + TABLE + " WHERE " + condition);
+        assertSameResult("SELECT COUNT(*) FROM " + TABLE + " WHERE " + condition);
+    }
+
+    @Test
+    public void testLongComparison() throws Exception {
+        // big是Long.MAX_VALUE - id，没有NULL
+        assertSameCondition("big > 9223372036854775700");
+        assertSameCondition("big >= 9223372036854775800");
+        assertSameCondition("big < 9223372036854775650");
+        assertSameCondition("big <= 9223372036854775650");
+        assertSameCondition("big = 9223372036854775800");
+        assertSameCondition("big <> 9223372036854775800");
+        assertSameCondition("big > id"); // INT转成BIGINT后再比较
+    }
+
+    @Test
+    public void testDoubleComparison() throws Exception {
+        assertSameCondition("d > 20.5");
+        assertSameCondition("d >= 50");
+        assertSameCondition("d = 9.5");
+        assertSameCondition("f > 10");
+        assertSameCondition("d > id"); // INT转成DOUBLE后再比较
+        // 跟row模式一样，NaN比其他值都大并且等于自身
+        assertSameCondition("d = CAST('NaN' AS DOUBLE)");
+        assertSameCondition("d >= CAST('NaN' AS DOUBLE)");
+        assertSameCondition("f = CAST('NaN' AS REAL)");
+        assertSameCondition("f > 40");
+    }
+
+    @Test
+    public void testDecimalComparison() throws Exception {
+        // INT转成DECIMAL后按scaled long比较
+        assertSameCondition("id * 0.25 > 10.5");
+        assertSameCondition("id * 0.25 <= 10.5");
+        assertSameCondition("id - 0.5 = 99.5");
+        assertSameCondition("id * 0.1 < id * 0.25 - 10");
+    }
+
+    @Test
+    public void testTimestampComparison() throws Exception {
+        assertSameCondition("ts < TIMESTAMP '2020-01-20 12:00:00'");
+        assertSameCondition("ts >= TIMESTAMP '2020-02-01 00:00:00'");
+        assertSameCondition("ts = TIMESTAMP '2020-01-01 07:00:00'");
+        assertSameCondition("ts <> TIMESTAMP '2020-01-01 07:00:00'");
+        assertSameCondition("ts > DATE '2020-02-10'"); // DATE转成TIMESTAMP后再比较
+    }
+
+    @Test
+    public void testNull() throws Exception {
+        assertSameCondition("i IS NULL");
+        assertSameCondition("i IS NOT NULL");
+        assertSameCondition("i = NULL");
+        assertSameCondition("i > 0");
+        assertSameCondition("d < 20.5");
+        assertSameCondition("l >= 5000000000000");
+        assertSameCondition("dec > 1.5");
+        assertSameCondition("dt >= DATE '2020-03-01'");
+        assertSameCondition("i IS NOT DISTINCT FROM NULL");
+        assertSameCondition("i IS DISTINCT FROM 3");
+    }
+
+    @Test
+    public void testBoolean() throws Exception {
+        assertSameCondition("b");
+        assertSameCondition("NOT b");
+        assertSameCondition("b IS NULL");
+        assertSameCondition("b IS NOT NULL");
+        assertSameCondition("NOT (i > 0)"); // NULL取反之后还是NULL
+        assertSameCondition("b = TRUE");
+        assertSameCondition("b = FALSE");
+        assertSameCondition("b = (i > 0)");
+    }
+
+    @Test
+    public void testSelection() throws Exception {
+        // 选中的行少时会压缩列向量，多时按位置读取，全部选中时跟没有条件一样
+        assertSameResult("SELECT id, i, i + 1, i * 2, d, d * i FROM " + TABLE + " WHERE id % 10 = 1");
+        assertSameResult("SELECT id, i, i + 1, i * 2, d, d * i FROM " + TABLE + " WHERE id % 10 > 1");
+        assertSameResult("SELECT id, i + 1 FROM " + TABLE + " WHERE id > 0");
+        assertSameCondition("id > 1000"); // 所有批次都被过滤掉
+        // 没选中的行就算除数是0也不报错
+        assertSameResult("SELECT id, 100 / (id % 7) FROM " + TABLE + " WHERE id % 7 = 3");
+    }
+
+    @Test
+    public void testAndOr() throws Exception {
+        assertSameCondition("i > 0 AND d < 50");
+        assertSameCondition("i > 0 OR d < 10");
+        assertSameCondition("d IS NULL OR i IS NULL");
+        assertSameCondition("(i > 0 OR b) AND dec > 0");
+        assertSameCondition("i > 0 AND (d IS NULL OR NOT b)");
+        assertSameCondition("NOT (d > 10 AND i < 0)");
+        assertSameCondition("id > 1000 AND 1 / (id - id) > 0"); // 左边都是false时右边不用计算
+    }
+
+    @Test
+    public void testComparison() throws Exception {
+        assertSameCondition("i <= -10");
+        assertSameCondition("i = 3");
+        assertSameCondition("i <> 3");
+        assertSameCondition("l < 5000000000000");
+        assertSameCondition("d <> 20.5");
+        assertSameCondition("f <= 10");
+        assertSameCondition("dec <> 1.5");
+        assertSameCondition("dt < DATE '2020-03-01'");
+        assertSameCondition("dt = DATE '2020-01-05'");
+        assertSameCondition("i > id - 60"); // 两个列比较
+        assertSameCondition("d > i");
+        assertSameCondition("s < 'b'");
+        assertSameCondition("name >= 'n150'");
+        assertSameCondition("0 < i"); // 常量在左边
+        assertSameCondition("-10 >= i");
+    }
+
+    @Test
+    public void testIgnoreCase() throws Exception {
+        assertSameCondition("si = 'apple'");
+        assertSameCondition("si = 'APPLE'");
+        assertSameCondition("si <> 'Apple'");
+        assertSameCondition("si > 'apple'");
+        assertSameCondition("'APPLE' = si");
+        assertSameCondition("si = s");
+        assertSameCondition("si IN('apple')");
+        assertSameCondition("si IN('PEAR', 'x')");
+        assertSameCondition("si NOT IN('aPPle')");
+        assertSameCondition("si LIKE 'app%'");
+        // 按字典编码之后'Apple'、'APPLE'、'apple'三种写法还是都要选中
+        int count = 0;
+        for (int id = 1; id <= ROW_COUNT; id++) {
+            if (id % 13 != 0 && id % 4 != 3)
+                count++;
+        }
+        assertEquals("[" + count + "]", assertSameResult("SELECT COUNT(*) FROM " + TABLE + " WHERE si = 'aPPLe'")
+                .toString());
+    }
+
+    @Test
+    public void testIn() throws Exception {
+        assertSameCondition("i IN(1, 3, 5, -7)");
+        assertSameCondition("i NOT IN(1, 3, 5, -7)");
+        assertSameCondition("i IN(1, NULL)");
+        assertSameCondition("l IN(100000000000, 300000000000)");
+        assertSameCondition("d IN(1.5, 2.0, 99.5)");
+        assertSameCondition("s IN('a', 'c')");
+        assertSameCondition("s NOT IN('a')");
+        assertSameCondition("name IN('n1', 'n20', 'n199', 'x')");
+        assertSameCondition("dt IN(DATE '2020-01-05', DATE '2020-02-01')");
+    }
+
+    @Test
+    public void testLike() throws Exception {
+        assertSameCondition("name LIKE 'n1%'");
+        assertSameCondition("name LIKE '%5'");
+        assertSameCondition("name LIKE '%1%'");
+        assertSameCondition("name LIKE 'n_5'");
+        assertSameCondition("name LIKE 'n100'");
+        assertSameCondition("name NOT LIKE '%9'");
+        assertSameCondition("s LIKE 'B%'");
+        assertSameCondition("s LIKE 'b%'");
+    }
+
+    @Test
+    public void testDictionary() throws Exception {
+        // s和si只有几个不同的值，按字典编码后比较编码
+        assertSameCondition("s = 'a'");
+        assertSameCondition("s <> 'B'");
+        assertSameCondition("s IN('a', 'c')");
+        assertSameCondition("s = 'x'"); // 字典中没有的值
+        assertSameCondition("si = 'PEAR'");
+        assertSameCondition("si IN('APPLE', 'x')");
+        assertSameResult("SELECT s, si, COUNT(*) FROM " + TABLE + " WHERE i > 0 GROUP BY s, si");
+    }
+
+    @Test
+    public void testThresholdHandoff() throws Exception {
+        // row模式处理完一部分行之后再切换到向量化引擎
+        assertSameResult("SELECT id, i FROM " + TABLE + " WHERE i > 0 OR si = 'apple'", 50);
+        assertSameResult("SELECT COUNT(*), SUM(i) FROM " + TABLE + " WHERE s IN('a', 'c')", 37);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import org.junit.Test;
+
+// SELECT DISTINCT，有NULL、不区分大小写、按索引扫描和从row模式切换过来时，输出的值都要跟row模式一样
+public class VectorDistinctTest extends OlapTestBase {
+
+    @Test
+    public void testIntegerColumns() throws Exception {
+        assertSameResult("SELECT DISTINCT id % 7 FROM " + TABLE);
+        assertSameResult("SELECT DISTINCT i FROM " + TABLE); // 有NULL
+        assertSameResult("SELECT DISTINCT id % 3, b FROM " + TABLE);
+        assertSameResult("SELECT DISTINCT l / 1000000000000 FROM " + TABLE + " WHERE i > 0");
+        assertSameResult("SELECT DISTINCT id FROM " + TABLE + " WHERE id > 1000");
+    }
+
+    @Test
+    public void testStringColumns() throws Exception {
+        assertSameResult("SELECT DISTINCT s FROM " + TABLE);
+        assertSameResult("SELECT DISTINCT s, id % 2 FROM " + TABLE);
+        assertSameResult("SELECT DISTINCT name FROM " + TABLE + " WHERE id % 4 = 0");
+        assertSameResult("SELECT DISTINCT UPPER(s), LOWER(s) FROM " + TABLE);
+        // 不区分大小写时'Apple'、'APPLE'、'apple'只输出一个
+        assertSameResult("SELECT COUNT(*) FROM (SELECT DISTINCT si FROM " + TABLE + ")");
+        assertSameResult("SELECT DISTINCT UPPER(si) FROM " + TABLE);
+        assertSameResult("SELECT COUNT(*) FROM (SELECT DISTINCT si, s FROM " + TABLE + ")");
+    }
+
+    @Test
+    public void testOtherTypes() throws Exception {
+        assertSameResult("SELECT DISTINCT dec FROM " + TABLE + " WHERE id % 9 < 2");
+        assertSameResult("SELECT DISTINCT FLOOR(d / 10) FROM " + TABLE);
+        assertSameResult("SELECT DISTINCT MONTH(dt), s FROM " + TABLE);
+    }
+
+    @Test
+    public void testOrderByAndLimit() throws Exception {
+        assertSameResult("SELECT DISTINCT s FROM " + TABLE + " ORDER BY s");
+        assertSameResult("SELECT DISTINCT id % 7 FROM " + TABLE + " ORDER BY id % 7 DESC");
+        assertSameResult("SELECT COUNT(*) FROM (SELECT DISTINCT id % 7 FROM " + TABLE + " LIMIT 3)");
+    }
+
+    @Test
+    public void testIndexedColumn() throws Exception {
+        // k上有索引，按索引顺序扫描
+        assertSameResult("SELECT DISTINCT k FROM " + TABLE);
+        assertSameResult("SELECT DISTINCT k FROM " + TABLE + " ORDER BY k");
+        assertSameResult("SELECT DISTINCT k FROM " + TABLE, 25);
+    }
+
+    @Test
+    public void testThresholdHandoff() throws Exception {
+        // row模式已经输出过的值不能再输出一次
+        assertSameResult("SELECT DISTINCT id % 7 FROM " + TABLE, 30);
+        assertSameResult("SELECT DISTINCT s FROM " + TABLE, 5);
+        assertSameResult("SELECT DISTINCT dec FROM " + TABLE, 77);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import org.junit.Test;
+
+// 向量化计算select字段中的表达式，结果和报错都要跟row模式一样
+public class VectorExpressionTest extends OlapTestBase {
+
+    private void assertSameExpression(String expression) throws Exception {
+        assertSameResult("SELECT id, " + expression + " FROM " + TABLE);
+        // 只有一部分行被选中时，没选中的行不能影响结果
+        assertSameResult("SELECT id, " + expression + " FROM " + TABLE + " WHERE id % 3 = 1");
+    }
+
+    @Test
+    public void testLongArithmetic() throws Exception {
+        assertSameExpression("big - id, big - id * 3, -big");
+        assertSameExpression("big / 7, big % 1000, big / id, big % id");
+        assertSameExpression("(big - 9223372036854775000) * 1000 + id"); // INT转成BIGINT后再计算
+    }
+
+    @Test
+    public void testDoubleArithmetic() throws Exception {
+        String where = " FROM " + TABLE + " WHERE id % 30 = 1";
+        assertSameResult("SELECT id, d + 1, d - id, d * f, d / 3, -d" + where);
+        assertSameResult("SELECT id, f + 1, f * 2, f / 4, f - id, -f" + where);
+        assertSameResult("SELECT id, d + f, big + d, id * 0.5e0" + where); // 都转成DOUBLE
+        // NaN参与计算的结果还是NaN
+        assertSameResult("SELECT id, d + 1, d * 0, -d, d / 2 FROM " + TABLE + " WHERE id % 85 = 17");
+    }
+
+    @Test
+    public void testDecimalArithmetic() throws Exception {
+        assertSameExpression("id * 1.25, id * 0.01 + 3.5, id - 0.75, -(id * 0.5)");
+        assertSameExpression("id * 0.25 / 3, id * 1.5 % 4"); // 除法和求余按ValueDecimal的规则计算
+        assertSameExpression("big * 1.5, big + 0.25"); // 超出18位时改用BigDecimal
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        assertSameExpression("i + 1, i - id, i * 2");
+        assertSameExpression("i / 3, i % 4");
+        assertSameExpression("l + id, l - 1, l * 3, l / 7");
+        assertSameExpression("d + 1, d - i, d * f, d / 3");
+        assertSameExpression("f + 1, f * 2, f / 4");
+        assertSameExpression("dec + 1, dec * 2, dec - d, dec / 3");
+        assertSameExpression("i + l + d + dec");
+    }
+
+    @Test
+    public void testNullDividend() throws Exception {
+        // 被除数都是NULL时不报错，结果都是NULL
+        assertSameExpression("CAST(NULL AS INT) / 0");
+        assertSameResult("SELECT i / 0 FROM " + TABLE + " WHERE i IS NULL");
+        assertSameResult("SELECT d / 0 FROM " + TABLE + " WHERE d IS NULL");
+        assertSameResult("SELECT l / 0, l % 0 FROM " + TABLE + " WHERE l IS NULL");
+    }
+
+    @Test
+    public void testDateTime() throws Exception {
+        assertSameExpression("dt, ts");
+        assertSameExpression("DATEADD('DAY', 3, dt), DATEADD('HOUR', id, ts)");
+        assertSameExpression("DATEDIFF('DAY', dt, ts)");
+        assertSameExpression("YEAR(dt), MONTH(ts), DAY_OF_WEEK(dt)");
+        assertSameExpression("dt + 1");
+    }
+
+    @Test
+    public void testNumericFunctions() throws Exception {
+        assertSameExpression("ABS(i), ABS(d), ABS(l)");
+        assertSameExpression("ROUND(d), ROUND(d, 1), ROUND(dec, 1)");
+        assertSameExpression("FLOOR(d), CEILING(f), SIGN(i)");
+        assertSameExpression("MOD(id, 7), POWER(i, 2), SQRT(id)");
+    }
+
+    @Test
+    public void testStringFunctions() throws Exception {
+        assertSameExpression("UPPER(s), LOWER(si), LENGTH(name)");
+        assertSameExpression("CONCAT(s, name), s || '-' || si");
+        assertSameExpression("SUBSTRING(name, 2), LEFT(name, 2), TRIM(si)");
+    }
+
+    @Test
+    public void testCast() throws Exception {
+        assertSameExpression("CAST(i AS BIGINT), CAST(d AS INT), CAST(dec AS DOUBLE)");
+        assertSameExpression("CAST(id AS VARCHAR), CAST(dt AS VARCHAR), CAST(b AS INT)");
+    }
+
+    @Test
+    public void testCase() throws Exception {
+        assertSameExpression("CASE WHEN i > 0 THEN 'p' WHEN i < 0 THEN 'n' ELSE 'z' END");
+        assertSameExpression("CASE WHEN d IS NULL THEN -1 ELSE d END");
+        assertSameExpression("CASE s WHEN 'a' THEN 1 WHEN 'B' THEN 2 END");
+        assertSameExpression("CASE si WHEN 'apple' THEN 1 WHEN 'PEAR' THEN 2 ELSE 3 END");
+        assertSameExpression("CASE i % 3 WHEN 0 THEN i WHEN 1 THEN i * 2 END");
+        assertSameExpression("CASE WHEN b THEN 100 / i END"); // 只有选中的分支才计算
+        assertSameResult("SELECT id FROM " + TABLE + " WHERE CASE WHEN i > 0 THEN d ELSE f END > 10");
+    }
+
+    @Test
+    public void testCoalesceAndNullIf() throws Exception {
+        assertSameExpression("COALESCE(i, 0), COALESCE(d, f, -1), COALESCE(s, si, name)");
+        assertSameExpression("IFNULL(l, id)");
+        assertSameExpression("NULLIF(i, 3), NULLIF(s, 'a'), NULLIF(si, 'apple')");
+        assertSameResult("SELECT id FROM " + TABLE + " WHERE COALESCE(i, 0) = 0");
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        assertSameError("SELECT big + id * 2 FROM " + TABLE);
+        assertSameError("SELECT big * 2 FROM " + TABLE);
+        assertSameError("SELECT -(big - " + Long.MAX_VALUE + ") - " + Long.MAX_VALUE + " - 10 FROM " + TABLE);
+        assertSameError("SELECT CAST(l AS INT) FROM " + TABLE);
+        assertSameExpression("big + id"); // 刚好等于Long.MAX_VALUE，不会溢出
+        assertSameExpression("-i, -(i - id)");
+        assertSameExpression("i * 10000000"); // 乘积的最大值没有超出INT的范围
+        assertSameError("SELECT i * 100000000 FROM " + TABLE); // INT乘INT的结果还是INT，溢出时报错
+    }
+
+    @Test
+    public void testDivisionByZero() throws Exception {
+        assertSameError("SELECT i / 0 FROM " + TABLE);
+        assertSameError("SELECT l % 0 FROM " + TABLE);
+        assertSameError("SELECT i / (id - id) FROM " + TABLE);
+        // 没选中的行就算除数是0也不报错
+        assertSameResult("SELECT 100 / i FROM " + TABLE + " WHERE i <> 0");
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.lealone.db.result.Row;
+import org.lealone.db.table.Column;
+import org.lealone.db.value.Value;
+import org.lealone.db.value.ValueDouble;
+import org.lealone.db.value.ValueFloat;
+import org.lealone.db.value.ValueInt;
+import org.lealone.db.value.ValueLong;
+import org.lealone.db.value.ValueNull;
+import org.lealone.sql.vector.DefaultValueVectorFactory;
+import org.lealone.sql.vector.ValueVector;
+import org.lealone.sql.vector.ValueVectorFactory;
+import org.lealone.sql.vector.ValueVectorPool;
+
+// 统计每一批数据分配了多少字节，分两部分:
+// 1. 只构建列向量，用ValueVectorPool重用之后预热完应该是0，columnar load对应VOperator按行一次性装载所有列的方式
+// 2. 用嵌入模式执行SQL，走完VFlat、VAggregate、VGroup的完整循环，统计所有线程分配的字节数，
+// 同一条SQL分别在小表和大表上执行，两者之差除以多出来的批数，查询本身(解析、结果集)的开销就抵消了，
+// 剩下的是存储层读出的行、条件和表达式的结果向量、分组的key以及每一组选中的行这些每一批都要分配的对象
+public class VectorGcBenchmark {
+
+    private static final int BATCH_SIZE = 128;
+    private static final int WARMUP_COUNT = 20000;
+    private static final int BATCH_COUNT = 20000;
+
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final Random random = new Random(100);
+    private static final Column[] columns = { createColumn("I", Value.INT, 0),
+            createColumn("L", Value.LONG, 1), createColumn("D", Value.DOUBLE, 2),
+            createColumn("F", Value.FLOAT, 3) };
+
+    private static final int SMALL_ROW_COUNT = 100 * BATCH_SIZE;
+    private static final int LARGE_ROW_COUNT = 1000 * BATCH_SIZE;
+    private static final int QUERY_COUNT = 20;
+    // 结果集的大小跟表的大小无关，第一条SQL没有选中任何行，可以看作只有扫描和装载列向量的开销
+    private static final String[] QUERIES = { //
+            "SELECT f1 FROM %s WHERE f1 < 0", // VFlat
+            "SELECT f1 FROM %s WHERE (f4 < 5 OR f2 % 3 = 1) AND f1 < 0", // VFlat，AND/OR短路
+            "SELECT f1 FROM %s WHERE CASE WHEN f1 % 2 = 0 THEN f2 ELSE f1 + f2 END < 0", // VFlat，CASE
+            "SELECT COUNT(*), SUM(f1 + f2), MAX(f3) FROM %s WHERE f4 > 10", // VAggregate
+            "SELECT f1 % 16, COUNT(*), SUM(f2) FROM %s GROUP BY f1 % 16", // VGroup，GroupAggregator
+            "SELECT name, COUNT(*), SUM(f2) FROM %s GROUP BY name" // VGroup，按组更新
+    };
+
+    public static void main(String[] args) throws Exception {
+        // 两批数据轮流装载，既能检查重用后的数据是否正确，也跟真实的扫描一样每一批的内容都不同
+        ArrayList<Row> batch1 = createBatch();
+        ArrayList<Row> batch2 = createBatch();
+        ValueVectorFactory factory = DefaultValueVectorFactory.INSTANCE;
+        ValueVectorPool pool = new ValueVectorPool();
+        check(factory, pool, batch1, false);
+        check(factory, pool, batch2, true);
+
+        run("new vectors", factory, null, batch1, batch2, false);
+        run("pooled vectors", factory, pool, batch1, batch2, false);
+        run("columnar load", factory, pool, batch1, batch2, true);
+        check(factory, pool, batch1, true);
+        System.out.println("ok");
+
+        runQueries();
+    }
+
+    private static void runQueries() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:lealone:embed:VectorGcBenchmark", "root", "");
+                Statement stmt = conn.createStatement()) {
+            createTable(conn, stmt, "VectorGcSmall", SMALL_ROW_COUNT);
+            createTable(conn, stmt, "VectorGcLarge", LARGE_ROW_COUNT);
+            stmt.executeUpdate("SET olap_threshold 1"); // 从第一行开始就用向量化引擎
+            stmt.executeUpdate("SET olap_batch_size " + BATCH_SIZE);
+            int batchCount = (LARGE_ROW_COUNT - SMALL_ROW_COUNT) / BATCH_SIZE;
+            for (String sql : QUERIES) {
+                query(stmt, sql, "VectorGcSmall", QUERY_COUNT); // 预热
+                query(stmt, sql, "VectorGcLarge", QUERY_COUNT);
+                long small = query(stmt, sql, "VectorGcSmall", QUERY_COUNT);
+                long large = query(stmt, sql, "VectorGcLarge", QUERY_COUNT);
+                System.out.println(sql + ": " + (large - small) / QUERY_COUNT / batchCount + " bytes/batch");
+            }
+        }
+    }
+
+    private static void createTable(Connection conn, Statement stmt, String table, int rowCount)
+            throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS " + table);
+        stmt.executeUpdate("CREATE TABLE " + table + "(name varchar(20), f1 int, f2 int, f3 int, f4 int)");
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + table + " VALUES(?,?,?,?,?)")) {
+            for (int i = 1; i <= rowCount; i++) {
+                ps.setString(1, "n" + (i % 10));
+                ps.setInt(2, i);
+                ps.setInt(3, i * 10);
+                ps.setInt(4, i % 100 - 50);
+                ps.setInt(5, i % 20);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    // 返回执行count次查询时所有线程一共分配的字节数
+    private static long query(Statement stmt, String sql, String table, int count) throws Exception {
+        sql = String.format(sql, table);
+        long bytes = getAllocatedBytes();
+        long sum = 0;
+        for (int n = 0; n < count; n++) {
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next())
+                    sum += rs.getLong(1);
+            }
+        }
+        bytes = getAllocatedBytes() - bytes;
+        if (sum == Long.MIN_VALUE) // 避免循环被优化掉
+            System.out.println(sum);
+        return bytes;
+    }
+
+    private static long getAllocatedBytes() {
+        long bytes = 0;
+        for (long b : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (b > 0) // 已经结束的线程返回-1
+                bytes += b;
+        }
+        return bytes;
+    }
+
+    private static Column createColumn(String name, int type, int columnId) {
+        Column column = new Column(name, type);
+        column.setTable(null, columnId);
+        return column;
+    }
+
+    private static ArrayList<Row> createBatch() {
+        ArrayList<Row> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Value[] data = new Value[columns.length];
+            data[0] = random.nextInt(10) == 0 ? ValueNull.INSTANCE : ValueInt.get(random.nextInt());
+            data[1] = random.nextInt(10) == 0 ? ValueNull.INSTANCE : ValueLong.get(random.nextLong());
+            data[2] = random.nextInt(10) == 0 ? ValueNull.INSTANCE : ValueDouble.get(random.nextDouble());
+            data[3] = random.nextInt(10) == 0 ? ValueNull.INSTANCE : ValueFloat.get(random.nextFloat());
+            batch.add(new Row(data, 0));
+        }
+        return batch;
+    }
+
+    private static void run(String name, ValueVectorFactory factory, ValueVectorPool pool,
+            ArrayList<Row> batch1, ArrayList<Row> batch2, boolean columnar) {
+        run(factory, pool, batch1, batch2, columnar, WARMUP_COUNT);
+        long t1 = System.nanoTime();
+        long bytes = run(factory, pool, batch1, batch2, columnar, BATCH_COUNT);
+        long t2 = System.nanoTime();
+        System.out.println(name + ": " + bytes / BATCH_COUNT + " bytes/batch, "
+                + (t2 - t1) / BATCH_COUNT + " ns/batch");
+        if (pool != null && bytes != 0)
+            throw new AssertionError(name + " allocated " + bytes + " bytes");
+    }
+
+    private static long run(ValueVectorFactory factory, ValueVectorPool pool, ArrayList<Row> batch1,
+            ArrayList<Row> batch2, boolean columnar, int count) {
+        long threadId = Thread.currentThread().getId();
+        long sum = 0;
+        long bytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int n = 0; n < count; n++) {
+            ArrayList<Row> batch = (n & 1) == 0 ? batch1 : batch2;
+            if (pool != null) {
+                pool.nextBatch();
+                if (columnar) // 跟VOperator.nextBatch一样先按行一次性装载所有的列
+                    pool.load(factory, batch, columns);
+            }
+            for (Column column : columns) {
+                ValueVector vv = pool == null ? factory.createValueVector(batch, column)
+                        : pool.getValueVector(factory, batch, column);
+                sum += vv.nullCount();
+            }
+        }
+        bytes = threadMXBean.getThreadAllocatedBytes(threadId) - bytes;
+        if (sum < 0) // 避免循环被优化掉
+            System.out.println(sum);
+        return bytes;
+    }
+
+    private static void check(ValueVectorFactory factory, ValueVectorPool pool, ArrayList<Row> batch,
+            boolean columnar) {
+        pool.nextBatch();
+        if (columnar)
+            pool.load(factory, batch, columns);
+        for (Column column : columns) {
+            ValueVector expected = factory.createValueVector(batch, column);
+            ValueVector actual = pool.getValueVector(factory, batch, column);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                if (expected.isNull(i) != actual.isNull(i) || !expected.isNull(i)
+                        && !expected.getValue(i).getString().equals(actual.getValue(i).getString()))
+                    throw new AssertionError(column.getName() + "[" + i + "]");
+            }
+            if (expected.hasNulls() != actual.hasNulls())
+                throw new AssertionError(column.getName() + " nulls");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright Lealone Database Group.
+ * Licensed under the Server Side Public License, v 1.
+ * Initial Developer: zhh
+ */
+package org.qinsql.test.olap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// 把@OLAP_GROUP_MEMORY_LIMIT设得很小，分组查询的聚合状态会溢出到磁盘，按分区合并后的结果要跟row模式一样
+public class VectorGroupSpillTest extends OlapTestBase {
+
+    @Before
+    public void setUpMemoryLimit() throws Exception {
+        stmt.executeUpdate("SET @OLAP_GROUP_MEMORY_LIMIT 64");
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        assertSameResult("SELECT id % 50, COUNT(*), COUNT(i), SUM(i), MIN(i), MAX(i), AVG(d), SUM(l), MAX(f)"
+                + " FROM " + TABLE + " GROUP BY id % 50");
+        assertSameResult("SELECT i, COUNT(*), SUM(d) FROM " + TABLE + " GROUP BY i"); // 包括NULL组
+        assertSameResult("SELECT id % 40, b, SUM(big), AVG(big) FROM " + TABLE + " GROUP BY id % 40, b");
+        assertSameResult("SELECT id % 50, SUM(i) FROM " + TABLE + " WHERE d > 10 GROUP BY id % 50"
+                + " HAVING COUNT(*) > 1");
+        assertSameResult("SELECT id % 50, COUNT(*) FROM " + TABLE + " GROUP BY id % 50 ORDER BY id % 50 DESC");
+    }
+
+    @Test
+    public void testSpillAfterThresholdHandoff() throws Exception {
+        // row模式已经建好的组跟溢出到磁盘的组要合并到一起
+        assertSameResult("SELECT id % 50, COUNT(*), SUM(i), MAX(d) FROM " + TABLE + " GROUP BY id % 50", 45);
+        assertSameResult("SELECT i, COUNT(*) FROM " + TABLE + " GROUP BY i", 100);
+    }
+
+    @Test
+    public void testSpillRepeated() throws Exception {
+        // 同一个session中多次溢出，每次用完都要删掉临时文件，不能互相影响
+        for (int n = 0; n < 3; n++) {
+            assertSameResult("SELECT id % 50, SUM(i) FROM " + TABLE + " GROUP BY id % 50");
+        }
+    }
+}